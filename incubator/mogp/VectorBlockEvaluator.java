@@ -0,0 +1,92 @@
+package mogp;
+
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * VectorBlockEvaluator is the Vector API backend of the BlockEvaluator, whose gate
+ * and comparison kernels process the words of a block in lanes of 256 or 512 bits
+ * (4 or 8 words, so 256 or 512 test cases, at once). The lane width is that preferred
+ * by the platform, unless set with -Dmogp.vector.bits=256 or 512.
+ *
+ * It requires the jdk.incubator.vector module, so is kept apart from the rest of the
+ * package and built and run with --add-modules jdk.incubator.vector. BlockEvaluator
+ * loads it by name, falling back to the scalar kernels if it is absent.
+ *
+ * @author Jonathan Fieldsend
+ * @version 1.0
+ */
+class VectorBlockEvaluator extends BlockEvaluator
+{
+    private static final VectorSpecies<Long> SPECIES = LongVector.SPECIES_PREFERRED.withShape(
+        VectorShape.forBitSize(Integer.getInteger("mogp.vector.bits", LongVector.SPECIES_PREFERRED.vectorBitSize())));
+    // masks of the bit counting of each lane, as the JDK 17 Vector API has no lane bit count
+    private static final long M1 = 0x5555555555555555L, M2 = 0x3333333333333333L, M4 = 0x0f0f0f0f0f0f0f0fL, H01 = 0x0101010101010101L;
+
+    /**
+     * Constructs the evaluator, whose blocks are a multiple of the lanes of a vector
+     *
+     * @param problem problem whose test cases are run
+     */
+    VectorBlockEvaluator(Problem problem) {
+        super(problem, SPECIES.length());
+    }
+
+    /**
+     * @InheritDoc
+     */
+    @Override
+    String getDescription() {
+        return "Vector API backend, " + SPECIES.vectorBitSize() + " bit lanes";
+    }
+
+    /**
+     * @InheritDoc
+     */
+    @Override
+    void gate(int g, long[] a, long[] b, long[] out, int from, int to) {
+        long both = -((g >>> 3) & 1L), first = -((g >>> 2) & 1L), second = -((g >>> 1) & 1L), neither = -(g & 1L);
+        int k = from;
+        for (int end = from + SPECIES.loopBound(to-from); k<end; k+=SPECIES.length()) {
+            LongVector va = LongVector.fromArray(SPECIES, a, k);
+            LongVector vb = LongVector.fromArray(SPECIES, b, k);
+            va.and(vb).and(both)
+                .or(va.and(vb.not()).and(first))
+                .or(va.not().and(vb).and(second))
+                .or(va.or(vb).not().and(neither))
+                .intoArray(out, k);
+        }
+        super.gate(g, a, b, out, k, to);
+    }
+
+    /**
+     * @InheritDoc
+     */
+    @Override
+    int compare(long[] out, long negation, int first, int o, long[] results, int from, int to) {
+        if (outputs.length > 1) // targets of each output are interleaved, so not contiguous
+            return super.compare(out, negation, first, o, results, from, to);
+        LongVector counts = LongVector.zero(SPECIES);
+        int k = from;
+        for (int end = from + SPECIES.loopBound(to-from); k<end; k+=SPECIES.length()) {
+            LongVector passed = LongVector.fromArray(SPECIES, out, k)
+                .lanewise(VectorOperators.XOR, LongVector.fromArray(SPECIES, problem.targetWords, first+k))
+                .lanewise(VectorOperators.XOR, ~negation); // xnor
+            passed.intoArray(results, first+k);
+            counts = counts.add(bitCount(passed));
+        }
+        return (int) counts.reduceLanes(VectorOperators.ADD) + super.compare(out, negation, first, o, results, k, to);
+    }
+
+    /*
+     * Helper method returning the number of bits set in each lane
+     */
+    private static LongVector bitCount(LongVector v) {
+        v = v.sub(v.lanewise(VectorOperators.LSHR, 1).and(M1));
+        v = v.and(M2).add(v.lanewise(VectorOperators.LSHR, 2).and(M2));
+        v = v.add(v.lanewise(VectorOperators.LSHR, 4)).and(M4);
+        return v.mul(H01).lanewise(VectorOperators.LSHR, 56);
+    }
+}
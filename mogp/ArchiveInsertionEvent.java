@@ -0,0 +1,38 @@
+package mogp;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event of a solution being inserted into the estimated Pareto set
+ * of DominationMaintenance, with its duration covering the removal of the members
+ * the solution dominates.
+ *
+ * @author Jonathan Fieldsend
+ * @version 1.0
+ */
+@Name("mogp.ArchiveInsertion")
+@Label("Archive Insertion")
+@Category("MOGP")
+@Description("Nondominated solution inserted into the estimated Pareto set")
+class ArchiveInsertionEvent extends Event
+{
+    @Label("Fitness")
+    @Description("Number of test cases failed by the solution inserted")
+    int fitness;
+
+    @Label("Tree Size")
+    @Description("Size of the solution inserted")
+    int treeSize;
+
+    @Label("Removed")
+    @Description("Number of set members dominated by the solution, and so removed")
+    int removed;
+
+    @Label("Archive Size")
+    @Description("Size of the estimated Pareto set after insertion")
+    int archiveSize;
+}
@@ -1,27 +1,42 @@
 package mogp;
 
+import java.nio.ByteBuffer;
 
 /**
  * ArraySolution class represents GP tree solutions as arrays, and
  * allows their processing.
  * 
+ * For a problem of several outputs, the program is a forest of a tree for 
+ * each output, held one after another in the same array, so all outputs
+ * are evaluated in a single pass through it. Variation acts on the forest
+ * as on a single tree, as any subtree of it may be replaced by another.
+ * 
  * Note this class has a natural ordering which is inconsistent with 
  * equals.
  * 
  * @author Jonathan Fieldsend 
- * @version 1.1
+ * @version 2.0
  */
 public class ArraySolution implements Comparable<ArraySolution>
 {
+    private static volatile long blackhole; // publishes the outputs of timed processing, so it cannot be optimised away
+
     private int[] program; // program represented as an array with elements refering to terminals or operators
     private int pointer; // reference to current element in program being processed
     private Parameters parameters; // object representing meta parameters of optimiser
     private Problem problem; // object representing problem to be solved
     private NodeSet nodeSet; // legal set of nodes used in this optimisation
     private int usedLength; // effective number of tree elements in this solution
+    private SimplifiedProgram simplified; // simplified evaluation form of program, null if not simplified
+    private int[] subtreeEnds; // index after the end of the subtree rooted at each element, built when first needed
+    private boolean subtreeEndsValid; // true if subtreeEnds is of the current program
+    private boolean subtreeEndsShared; // true if subtreeEnds may be shared with clones, so must not be rebuilt in place
     
     private int sumOfTestsFailed = -1;
-    private boolean[] testsPassed;
+    private long[] testsPassed; // tests passed packed into words, as the test cases of the problem
+    private boolean[] unpackedTestsPassed; // testsPassed as an array of booleans, built when first requested
+    private boolean partiallyEvaluated; // true if evaluation was abandoned before all tests were run
+    private boolean failedVerification; // true if all tests of a mini-batch were passed, but not those of the complete problem
     
     /**
      * Constructs an initial solution with the corresponding algorithm parameters, 
@@ -36,7 +51,14 @@ public class ArraySolution implements Comparable<ArraySolution>
         this.problem = problem;
         this.nodeSet = nodeSet;
         program = new int[parameters.MAX_LENGTH];
-        usedLength = growProgram(0,0);
+        if (parameters.MAX_LENGTH < 3*problem.outputNumber) // each tree has an operator at its root
+            throw new IllegalArgumentException("Maximum tree size " + parameters.MAX_LENGTH + " is too small for " 
+                + problem.outputNumber + " trees of at least 3 elements");
+        do { // a tree for each output, regrowing them all if any grows too long
+            usedLength = 0;
+            for (int o=0; (o<problem.outputNumber) && (usedLength >= 0); o++)
+                usedLength = growProgram(usedLength,0);
+        } while (usedLength < 0);
     }
  
     /**
@@ -54,13 +76,117 @@ public class ArraySolution implements Comparable<ArraySolution>
         program = new int[s.program.length];
         for (int i=0; i<program.length; i++) // only need to copy the elements in use
             program[i] = s.program[i];
+        // same shape, so share the subtree ends until either is crossed over, building them
+        // once for a solution cloned many times (e.g. a parent) rather than for each clone
+        if (!s.subtreeEndsValid)
+            s.indexSubtrees();
+        shareSubtreeEnds(s);
+    }
+
+    /*
+     * Constructs a child of parent, whose program has already been written to program
+     */
+    private ArraySolution(ArraySolution parent, int[] program, int usedLength) {
+        parameters = parent.parameters;
+        problem = parent.problem;
+        nodeSet = parent.nodeSet;
+        this.program = program;
+        this.usedLength = usedLength;
     }
 
     /**
-     * Remove the program represented by the current solution
+     * Constructs a solution from its state in a checkpoint, as written by writeState
+     * 
+     * @param parameters parameters used by the optimiser, which uses the solution 
+     * @param problem problem to be solved by the solution
+     * @param nodeSet node set to be employed by the solution
+     * @param buffer buffer positioned at the solution state
      */
-    void clean() {
+    ArraySolution(Parameters parameters, Problem problem, NodeSet nodeSet, ByteBuffer buffer) {
+        this.parameters = parameters;
+        this.problem = problem;
+        this.nodeSet = nodeSet;
+        usedLength = buffer.getInt();
+        if (buffer.get() != 0) { // otherwise program was cleaned before the checkpoint
+            program = new int[parameters.MAX_LENGTH];
+            for (int i=0; i<usedLength; i++)
+                program[i] = buffer.getInt();
+        }
+        sumOfTestsFailed = buffer.getInt();
+        byte flags = buffer.get();
+        partiallyEvaluated = (flags & 1) != 0;
+        failedVerification = (flags & 2) != 0;
+        int tests = buffer.getInt();
+        if (tests >= 0) {
+            testsPassed = new long[problem.getNumberOfTestWords()];
+            for (int i=0; i<testsPassed.length; i++)
+                testsPassed[i] = buffer.getLong();
+        }
+    }
+    
+    /**
+     * Writes the state of this solution to a buffer, with tests passed packed into bits
+     * 
+     * @param buffer buffer to write to, which must have stateSize() bytes remaining
+     */
+    void writeState(ByteBuffer buffer) {
+        buffer.putInt(usedLength);
+        if (program == null) {
+            buffer.put((byte) 0);
+        } else {
+            buffer.put((byte) 1);
+            for (int i=0; i<usedLength; i++)
+                buffer.putInt(program[i]);
+        }
+        buffer.putInt(sumOfTestsFailed);
+        buffer.put((byte) ((partiallyEvaluated ? 1 : 0) | (failedVerification ? 2 : 0)));
+        if (testsPassed == null) {
+            buffer.putInt(-1);
+        } else {
+            buffer.putInt(problem.fitnessCases);
+            for (long word : testsPassed)
+                buffer.putLong(word);
+        }
+    }
+    
+    /**
+     * Returns the number of bytes written by writeState
+     * 
+     * @return size of solution state in bytes
+     */
+    int stateSize() {
+        int size = 14;
+        if (program != null)
+            size += 4*usedLength;
+        if (testsPassed != null)
+            size += 8*testsPassed.length;
+        return size;
+    }
+    
+    /**
+     * Remove the program represented by the current solution, returning its array so it
+     * may hold the program of another solution
+     * 
+     * @return program array, null if already removed
+     */
+    int[] release() {
+        int[] released = program;
         program = null;
+        simplified = null;
+        return released;
+    }
+    
+    /**
+     * Remove the subtree ends of the current solution, once its program has been removed,
+     * returning their array so it may hold those of another solution
+     * 
+     * @return subtree ends array, null if none or if shared with a clone
+     */
+    int[] releaseSubtreeEnds() {
+        int[] released = subtreeEndsShared ? null : subtreeEnds;
+        subtreeEnds = null;
+        subtreeEndsValid = false;
+        return released;
     }
     
     /**
@@ -73,18 +199,19 @@ public class ArraySolution implements Comparable<ArraySolution>
     }
    
     /*
-     * Helper method to grow initial tree
+     * Helper method to grow initial tree, returning the position after it, or -1 if it
+     * would not fit in the program array
      */
     private int growProgram(int position, int depth) {
         // 50/50 terminal or operator
         depth++;
         int nodeType = RandomNumberGenerator.getRandom().nextInt(2);
-        if (position == 0) // first node always an operator
-            nodeType = 1; 
-        else if (position > parameters.MAX_LENGTH){
+        if (position >= parameters.MAX_LENGTH){
             System.out.println("Growing too LONG!!!!");
             return -1;
         }
+        if (depth == 1) // root node of each tree always an operator
+            nodeType = 1; 
         else if ( depth > parameters.MAX_DEPTH ) // do not grow beyond max depth initially
             nodeType = 0;
         if (nodeType == 0) {
@@ -93,33 +220,100 @@ public class ArraySolution implements Comparable<ArraySolution>
         } else {
             program[position] = nodeSet.getRandomOperatorValue();
             int positionAfterSubTreeGrown = growProgram(++position,depth);
-            if (positionAfterSubTreeGrown < 0){
-                System.out.println("Growing too LONG!!!!");
+            if (positionAfterSubTreeGrown < 0)
                 return -1;
-            }
             return growProgram(positionAfterSubTreeGrown,depth);
         }
     }
 
     /**
-     * Run the tree program and get the output
+     * Run the tree program on the 64 test cases packed into each input word and get the outputs
+     * of the first (for a problem of one output, the only) tree
+     * 
+     * @param inputs input values, one word per terminal (see Problem.getInputWords)
+     * @return outputs of the tree program stored in this ArraySolution, packed into a word
+     */
+    public long process(long[] inputs) {
+        if (simplified != null)
+            return simplified.process(inputs);
+        pointer = 0;
+        return runProgram(inputs);
+    }
+
+    /**
+     * Run the program forest on the 64 test cases packed into each input word and get the 
+     * outputs of each tree, in a single pass through the program
      * 
-     * @return output of the tree program stored in this ArraySolution
+     * @param inputs input values, one word per terminal (see Problem.getInputWords)
+     * @param outputs array to fill with the outputs packed into a word, one word per output
      */
-    public boolean process() {
+    public void process(long[] inputs, long[] outputs) {
+        if (simplified != null) {
+            simplified.process(inputs, outputs);
+            return;
+        }
         pointer = 0;
-        return runProgram();
+        for (int o=0; o<problem.outputNumber; o++)
+            outputs[o] = runProgram(inputs);
+    }
+    
+    /**
+     * Run the program (or its simplified form) on the block of words of test cases loaded
+     * by an evaluator, leaving the rows holding each output in the evaluator's outputs
+     * 
+     * @param evaluator evaluator holding the inputs of the block
+     * @param words number of words in the block
+     */
+    void processBlock(BlockEvaluator evaluator, int words) {
+        if (simplified != null)
+            simplified.processBlock(evaluator, words);
+        else
+            evaluator.runProgram(program, usedLength, words);
+    }
+    
+    /**
+     * Builds the simplified evaluation form of the program, which is then used by process
+     * until the program is next varied. The program itself is left unchanged.
+     */
+    void simplify() {
+        if (simplified != null)
+            return;
+        simplified = ProgramSimplifier.simplify(program, usedLength, nodeSet, problem.outputNumber);
+        if (parameters.SIMPLIFY_SAMPLING && ProgramSimplifier.isSampleDue())
+            ProgramSimplifier.recordSample(timeProcessing(null), timeProcessing(simplified));
+    }
+    
+    /*
+     * Helper method returning the nanoseconds taken to process all test cases of the problem 
+     * using the given evaluation form (null for the program itself)
+     */
+    private long timeProcessing(SimplifiedProgram form) {
+        SimplifiedProgram current = simplified;
+        simplified = form;
+        long[] inputs = new long[problem.variableNumber];
+        long[] outputs = new long[problem.outputNumber];
+        long sink = 0L;
+        long start = System.nanoTime();
+        for (int w=0; w<problem.getNumberOfWords(); w++) {
+            problem.getInputWords(w, inputs);
+            process(inputs, outputs);
+            sink ^= outputs[0];
+        }
+        long time = System.nanoTime() - start;
+        simplified = current;
+        blackhole = sink; // published so processing is not optimised away
+        return time;
     }
 
     /*
      * Helper method to recursively process tree branches represented in the array
      */
-    private boolean runProgram() {
+    private long runProgram(long[] inputs) {
         int nodeValue = program[pointer++];
         if (nodeSet.isOperator(nodeValue)){
-            return nodeSet.processOperator(nodeValue, runProgram(), runProgram());
+            return nodeSet.processOperator(nodeValue, runProgram(inputs), runProgram(inputs));
         }
-        return nodeSet.processTerminal(nodeValue);
+        return inputs[nodeValue];
     }
     
     /**
@@ -137,30 +331,72 @@ public class ArraySolution implements Comparable<ArraySolution>
      * @param probabilityToMutate probability of element mutation
      */
     void mutation(double probabilityToMutate) {
+        simplified = null;
+        mutateInto(probabilityToMutate, program, program);
+    }
+    
+    /**
+     * Returns a mutant of this solution (as mutation would leave a clone of this solution),
+     * copied and mutated into childProgram in a single pass. This solution is unchanged.
+     * 
+     * @param probabilityToMutate probability of element mutation
+     * @param childProgram array of MAX_LENGTH elements to hold the program of the child, 
+     * e.g. recycled from a solution which has left the population
+     * @param childSubtreeEnds array of MAX_LENGTH elements to hold the subtree ends of the
+     * child, or null to allocate one when they are needed
+     * @return child solution
+     */
+    ArraySolution mutation(double probabilityToMutate, int[] childProgram, int[] childSubtreeEnds) {
+        mutateInto(probabilityToMutate, program, childProgram);
+        ArraySolution child = new ArraySolution(this, childProgram, usedLength);
+        child.subtreeEnds = childSubtreeEnds;
+        // point mutation keeps the shape of the program, so keeps any subtree ends built
+        if (subtreeEndsValid && (childSubtreeEnds != null)) {
+            System.arraycopy(subtreeEnds, 0, childSubtreeEnds, 0, usedLength);
+            child.subtreeEndsValid = true;
+        }
+        return child;
+    }
+    
+    /*
+     * Helper method writing the elements of source, each mutated with probabilityToMutate,
+     * to target (which may be source). Rather than a draw for every element, the number of
+     * elements skipped before each mutated one is drawn, from the geometric distribution, 
+     * so the draws taken are proportional to the number of mutations
+     */
+    private void mutateInto(double probabilityToMutate, int[] source, int[] target) {
+        if (target != source)
+            System.arraycopy(source, 0, target, 0, usedLength);
         int mutations = 0;
-        for (int i=0; i<usedLength; i++)  {
-            if (RandomNumberGenerator.getRandom().nextDouble() < probabilityToMutate ) {
-                mutate(i);
+        if (probabilityToMutate > 0.0) {
+            double logNotMutated = Math.log1p(-probabilityToMutate); // log of probability each element is skipped
+            int i = -1; // last element mutated
+            while (true) {
+                double skipped = Math.floor(Math.log(1.0 - RandomNumberGenerator.getRandom().nextDouble()) / logNotMutated);
+                if (skipped >= usedLength-1-i) // compared as a double, as may be infinite
+                    break;
+                i += 1 + (int) skipped;
+                target[i] = mutate(target[i]);
                 mutations++;
             }
         }
         // ensure at least one mutation occurs always
-        if (mutations == 0 )  
-            mutate(RandomNumberGenerator.getRandom().nextInt(size()));
+        if (mutations == 0 ) {
+            int index = RandomNumberGenerator.getRandom().nextInt(size());
+            target[index] = mutate(target[index]);
+        }
     }
 
     /*
-     * Helper method which mutates the index element of the array
+     * Helper method returning a mutation of element value
      */
-    private void mutate(int index) {
-        if (nodeSet.isOperator(program[index])) {
-            program[index] = nodeSet.mutateToOtherOperator(program[index]);
-        } else {
-            int val = program[index];
-            while (val == program[index]) // ensure not mutated into itself
-                val = nodeSet.getRandomTerminalValue();
-            program[index] = val;
-        }
+    private int mutate(int value) {
+        if (nodeSet.isOperator(value))
+            return nodeSet.mutateToOtherOperator(value);
+        int val = value;
+        while (val == value) // ensure not mutated into itself
+            val = nodeSet.getRandomTerminalValue();
+        return val;
     }
     
     /**
@@ -170,14 +406,35 @@ public class ArraySolution implements Comparable<ArraySolution>
      * @param breedingPartner the solution to crossover this solution with
      */
     void crossover(ArraySolution breedingPartner) {
+        ArraySolution child = crossover(breedingPartner, new int[program.length], null);
+        program = child.program;
+        usedLength = child.usedLength;
+        simplified = null;
+        subtreeEndsValid = false;
+    }
+    
+    /**
+     * Returns the child of crossover between this solution and the breedingPartner solution
+     * (as crossover would leave a clone of this solution), written directly into childProgram
+     * as the elements of this solution before the replaced subtree, the partner's subtree, 
+     * and the elements of this solution after the replaced subtree. This solution is unchanged.
+     * 
+     * @param breedingPartner the solution to crossover this solution with
+     * @param childProgram array of MAX_LENGTH elements to hold the program of the child, 
+     * e.g. recycled from a solution which has left the population
+     * @param childSubtreeEnds array of MAX_LENGTH elements to hold the subtree ends of the
+     * child when they are needed, or null to allocate one then
+     * @return child solution
+     */
+    ArraySolution crossover(ArraySolution breedingPartner, int[] childProgram, int[] childSubtreeEnds) {
         int subTreeStart, subTreeEnd, partnerSubTreeStart, partnerSubTreeEnd, childLength, oldSubTreeLength, newSubTreeLength;
         
         do {
             subTreeStart =  RandomNumberGenerator.getRandom().nextInt(size());
-            subTreeEnd = traverse(subTreeStart);
+            subTreeEnd = subtreeEnd(subTreeStart);
 
             partnerSubTreeStart =  RandomNumberGenerator.getRandom().nextInt(breedingPartner.size());
-            partnerSubTreeEnd = breedingPartner.traverse(partnerSubTreeStart);
+            partnerSubTreeEnd = breedingPartner.subtreeEnd(partnerSubTreeStart);
             oldSubTreeLength = subTreeEnd - subTreeStart;
             newSubTreeLength = partnerSubTreeEnd - partnerSubTreeStart;
             // child length is original length + length of added tree - length of removed tree
@@ -185,41 +442,52 @@ public class ArraySolution implements Comparable<ArraySolution>
             
         } while (childLength > parameters.MAX_LENGTH);
         
-        // until the subtree can remain unchanged
-        if (oldSubTreeLength > newSubTreeLength) {
-            int diff = oldSubTreeLength - newSubTreeLength;
-            // copy in subtree
-            for (int i = 0; i< newSubTreeLength; i++)
-                program[subTreeStart+i] = breedingPartner.program[partnerSubTreeStart+i];
-            // shift other node values down
-            for (int i = subTreeEnd ; i<usedLength; i++)
-                program[i-diff] = program[i]; 
-            usedLength -= diff;
-        } else if (oldSubTreeLength < newSubTreeLength) {
-            int diff = newSubTreeLength - oldSubTreeLength;
-            // shift other node values up
-            for (int i = usedLength-1; i>=subTreeEnd; i--)
-                program[i+diff] = program[i]; 
-            // copy in subtree
-            for (int i = 0; i< newSubTreeLength; i++)
-                program[subTreeStart+i] = breedingPartner.program[partnerSubTreeStart+i];
-            usedLength += diff;
-        } else { // subtrees same length
-            for (int i = 0; i< oldSubTreeLength; i++)
-                program[subTreeStart+i] = breedingPartner.program[partnerSubTreeStart+i];
-        }
+        System.arraycopy(program, 0, childProgram, 0, subTreeStart);
+        System.arraycopy(breedingPartner.program, partnerSubTreeStart, childProgram, subTreeStart, newSubTreeLength);
+        System.arraycopy(program, subTreeEnd, childProgram, subTreeStart+newSubTreeLength, usedLength-subTreeEnd);
+        ArraySolution child = new ArraySolution(this, childProgram, childLength);
+        child.subtreeEnds = childSubtreeEnds; // built when first needed
+        return child;
+    }
+    
+    /**
+     * Returns the index of the element following the end of the subtree rooted at the
+     * element at index. The ends of every subtree are found in a single pass when first
+     * required after the program has changed, so each subsequent call takes constant time 
+     * (point mutation does not change the shape of the program, so keeps them, and a clone
+     * shares them with the solution it was cloned from until either is crossed over).
+     * 
+     * @param index index of root element of subtree
+     * @return index after the last element of the subtree
+     */
+    int subtreeEnd(int index) {
+        if (!subtreeEndsValid)
+            indexSubtrees();
+        return subtreeEnds[index];
     }
     
     /*
-     * Helper method to traverse the tree from the element at index to the 
-     * next element in the tree representation given the value of the element 
-     * at index, finally returning the value of the terminal (leaf) reached
+     * Helper method sharing the (valid) subtree ends of s, a solution of the same shape
      */
-    private int traverse(int index ) {
-        if ( nodeSet.isOperator(program[index]))
-            return traverse( traverse( ++index ) );
-            
-        return ++index;
+    private void shareSubtreeEnds(ArraySolution s) {
+        subtreeEnds = s.subtreeEnds;
+        subtreeEndsValid = true;
+        subtreeEndsShared = s.subtreeEndsShared = true;
+    }
+    
+    /*
+     * Helper method finding the end of the subtree rooted at each element, from the last
+     * element to the first: a terminal ends at the next element, and an operator's subtree
+     * ends where that of its second operand, which starts at the end of its first, does
+     */
+    private void indexSubtrees() {
+        if ((subtreeEnds == null) || subtreeEndsShared || (subtreeEnds.length < usedLength)) {
+            subtreeEnds = new int[program.length];
+            subtreeEndsShared = false;
+        }
+        for (int i=usedLength-1; i>=0; i--)
+            subtreeEnds[i] = nodeSet.isOperator(program[i]) ? subtreeEnds[subtreeEnds[i+1]] : i+1;
+        subtreeEndsValid = true;
     }
     
     /**
@@ -237,26 +505,109 @@ public class ArraySolution implements Comparable<ArraySolution>
      * of not. If this solution has not been evaluated, will return null
      * 
      * @returns array of booleans, the ith element indicating if the ith
-     * test has been passed (true) or failed (false)
+     * test (output i%outputNumber of case i/outputNumber) has been passed 
+     * (true) or failed (false)
      */
     public boolean[] getTestsPassed() {
-        return testsPassed;
+        if ((unpackedTestsPassed == null) && (testsPassed != null)) {
+            int outputs = problem.outputNumber;
+            unpackedTestsPassed = new boolean[problem.fitnessCases];
+            for (int i=0; i<problem.fitnessCases; i++) {
+                int c = i/outputs;
+                unpackedTestsPassed[i] = ((testsPassed[(c/64)*outputs + i%outputs] >>> (c%64)) & 1L) != 0;
+            }
+        }
+        return unpackedTestsPassed;
     }
     
+    /**
+     * Returns the tests passed packed into words, as the targets of the problem.
+     * If this solution has not been evaluated, will return null
+     * 
+     * @returns array of words, bit c%64 of word (c/64)*outputNumber+o set if output o of 
+     * case c has been passed
+     */
+    long[] getTestsPassedWords() {
+        return testsPassed;
+    }
     
     /**
      * Sets tests passed by a solution once it has been evaluated
      * 
-     * @param array of booleans, the ith element indicating if the ith
-     * test has been passed (true) or failed (false)
+     * @param testsPassed array of words, packed as the targets of the problem, with the 
+     * bit of each test set if it has been passed, and clear if it has been failed
      */
-    public void setTestsPassed(boolean[] testsPassed){
-        this.testsPassed = testsPassed;
+    void setTestsPassed(long[] testsPassed){
         // now calaulated the total number of failed tests
-        this.sumOfTestsFailed = 0;
-        for (boolean b : testsPassed)
-            if (b == false)
-                sumOfTestsFailed++;
+        int failed = problem.fitnessCases;
+        for (long word : testsPassed)
+            failed -= Long.bitCount(word);
+        setTestsPassed(testsPassed, failed);
+    }
+    
+    /**
+     * Sets tests passed by a solution evaluated on every test, whose number of failed
+     * tests has already been counted
+     * 
+     * @param testsPassed array of words, packed as the targets of the problem, with the 
+     * bit of each test set if it is passed
+     * @param sumOfTestsFailed number of tests failed
+     */
+    void setTestsPassed(long[] testsPassed, int sumOfTestsFailed){
+        this.testsPassed = testsPassed;
+        this.unpackedTestsPassed = null;
+        this.partiallyEvaluated = false;
+        this.sumOfTestsFailed = sumOfTestsFailed;
+    }
+    
+    /**
+     * Sets tests passed by a solution whose evaluation was abandoned early. Tests 
+     * which were not run are marked as failed in testsPassed, but are not included
+     * in the sum of tests failed, which is therefore a lower bound on the true value
+     * 
+     * @param testsPassed array of words, packed as the targets of the problem, with the 
+     * bit of each test set if it has been run and passed
+     * @param sumOfTestsFailed number of tests run which were failed
+     */
+    void setPartialTestsPassed(long[] testsPassed, int sumOfTestsFailed){
+        this.testsPassed = testsPassed;
+        this.unpackedTestsPassed = null;
+        this.sumOfTestsFailed = sumOfTestsFailed;
+        this.partiallyEvaluated = true;
+    }
+    
+    /**
+     * Records that this solution passed every test of a mini-batch, but failed on the
+     * complete problem, so it is given one failed test (the fewest it is known to fail).
+     * As the test it fails is not in the batch, the first test of the batch stands in for
+     * it in testsPassed, so that regimes comparing tests passed (rather than the sum of
+     * tests failed) do not treat it as a solver either
+     */
+    void failVerification() {
+        failedVerification = true;
+        sumOfTestsFailed = 1;
+        testsPassed[0] &= ~1L;
+        unpackedTestsPassed = null;
+    }
+    
+    /**
+     * Returns true if this solution has passed every test of a mini-batch, but failed
+     * on the complete problem
+     * 
+     * @return true if verification failed
+     */
+    boolean hasFailedVerification() {
+        return failedVerification;
+    }
+    
+    /**
+     * Returns true if the evaluation of this solution was abandoned before all 
+     * tests were run
+     * 
+     * @return true if partially evaluated
+     */
+    public boolean isPartiallyEvaluated() {
+        return partiallyEvaluated;
     }
     
     @Override
@@ -2,23 +2,25 @@ package mogp;
 
 import java.util.HashMap;
 import java.util.TreeSet;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.LinkedHashMap;
 import java.util.Set;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Collections;
 import java.util.Collection;
+import java.util.Map.Entry;
 
 /**
  * BestSolver, maintains a solution for each objective if possible.
  * 
  * @author Jonathan Fieldsend 
- * @version 1.2
+ * @version 1.3
  */
 public class BestSolver extends StandardMaintenance
 {
     ArraySolution[] bestSolverForEachObjective; // each best solver for each objective, elements null if none found yet
-    HashMap<ArraySolution,TreeSet<Integer>> objectivesMarked = new HashMap<>(); // map of solution to set of criteria it is marked as solver for
+    LinkedHashMap<ArraySolution,TreeSet<Integer>> objectivesMarked = new LinkedHashMap<>(); // map of solution to set of criteria it is marked as solver for
     HashMap<Integer,Set<ArraySolution>> solversOfEachTest = new HashMap<>(); // map of test index to set of all solutions which solve it
     
     
@@ -44,7 +46,7 @@ public class BestSolver extends StandardMaintenance
 
         bestSolverForEachObjective = new ArraySolution[problem.fitnessCases];
         for (int i=0; i< problem.fitnessCases; i++ ) {
-            solversOfEachTest.put(i,new HashSet<ArraySolution>());
+            solversOfEachTest.put(i,new LinkedHashSet<ArraySolution>());
         }
     }
 
@@ -135,8 +137,16 @@ public class BestSolver extends StandardMaintenance
      * @InheritDoc
      */
     @Override
-    public void evaluateFitness(HashMap<Integer, ArraySolution> pop, ArraySolution s) {
-        super.evaluateFitness(pop,s);
+    boolean isRacing() {
+        return false; // tracking solvers of each test requires complete test vectors
+    }
+    
+    /**
+     * @InheritDoc
+     */
+    @Override
+    void recordFitness(HashMap<Integer, ArraySolution> pop, ArraySolution s, long[] results, int failed) {
+        super.recordFitness(pop, s, results, failed);
         processOutput(pop,s);
     }
 
@@ -206,14 +216,14 @@ public class BestSolver extends StandardMaintenance
     public void generateNextSearchPopulation(HashMap<Integer, ArraySolution> pop, HashMap<Integer, ArraySolution> children) {
         /* 
          * ArraySolution[] bestSolverForEachObjective; // each best solver for each objective, elements null if none found yet
-         * HashMap<ArraySolution,TreeSet<Integer>> objectivesMarked = new HashMap<>(); // map of solution to set of criteria it is marked as solver for
+         * LinkedHashMap<ArraySolution,TreeSet<Integer>> objectivesMarked = new LinkedHashMap<>(); // map of solution to set of criteria it is marked as solver for
          * HashMap<Integer,Set<ArraySolution>> solversOfEachTest = new HashMap<>(); // map of test index to set of all solutions which solve it
          */
         
         HashMap<Integer,ArraySolution> combinedPopulation = new HashMap<>(pop);
         combinedPopulation.putAll(children);
 
-        Set<ArraySolution> setOfBestSolutions = new HashSet<>();
+        Set<ArraySolution> setOfBestSolutions = new LinkedHashSet<>();
         if (objectivesMarked.size() > pop.size()){ // more marked solutions than capacity
             setOfBestSolutions.add(bestFitnessSolution);
             
@@ -236,7 +246,7 @@ public class BestSolver extends StandardMaintenance
         
         // setOfBestSolutions now includes parameters.POPULATION_SIZE solutions to preserve
         for (int i=0; i< problem.fitnessCases; i++ ) {
-            solversOfEachTest.put(i,new HashSet<ArraySolution>());
+            solversOfEachTest.put(i,new LinkedHashSet<ArraySolution>());
         }
         int i=0;
         // replace the search population
@@ -254,6 +264,65 @@ public class BestSolver extends StandardMaintenance
     }
     
 
+    /**
+     * @InheritDoc
+     */
+    @Override
+    void clear() {
+        super.clear();
+        for (int i=0; i<problem.fitnessCases; i++ ) {
+            bestSolverForEachObjective[i] = null;
+            solversOfEachTest.get(i).clear();
+        }
+        objectivesMarked.clear();
+    }
+    
+    /**
+     * @InheritDoc
+     */
+    @Override
+    public void writeState(Checkpoint checkpoint) {
+        super.writeState(checkpoint);
+        checkpoint.writeInt(bestSolverForEachObjective.length);
+        for (ArraySolution s : bestSolverForEachObjective)
+            checkpoint.writeSolution(s);
+        checkpoint.writeInt(objectivesMarked.size());
+        for (Entry<ArraySolution,TreeSet<Integer>> e : objectivesMarked.entrySet()) {
+            checkpoint.writeSolution(e.getKey());
+            checkpoint.writeInt(e.getValue().size());
+            for (Integer i : e.getValue())
+                checkpoint.writeInt(i);
+        }
+        for (int i=0; i< problem.fitnessCases; i++ )
+            checkpoint.writeSolutions(solversOfEachTest.get(i));
+    }
+    
+    /**
+     * @InheritDoc
+     */
+    @Override
+    public void readState(Checkpoint checkpoint) {
+        super.readState(checkpoint);
+        bestSolverForEachObjective = new ArraySolution[checkpoint.readInt()];
+        for (int i=0; i<bestSolverForEachObjective.length; i++)
+            bestSolverForEachObjective[i] = checkpoint.readSolution();
+        objectivesMarked.clear();
+        int marked = checkpoint.readInt();
+        for (int i=0; i<marked; i++) {
+            ArraySolution s = checkpoint.readSolution();
+            TreeSet<Integer> set = new TreeSet<>();
+            int size = checkpoint.readInt();
+            for (int j=0; j<size; j++)
+                set.add(checkpoint.readInt());
+            objectivesMarked.put(s,set);
+        }
+        for (int i=0; i< problem.fitnessCases; i++ ) {
+            Set<ArraySolution> set = new LinkedHashSet<>();
+            checkpoint.readSolutions(set);
+            solversOfEachTest.put(i,set);
+        }
+    }
+
     /**
      * Method tracking solvers of each test problem
      * 
@@ -0,0 +1,223 @@
+package mogp;
+
+import java.util.Arrays;
+
+/**
+ * BlockEvaluator runs programs over blocks of consecutive words of test cases,
+ * applying each node of a program to every word of the block before moving on to
+ * the next, rather than running the whole program on each word in turn. The inner
+ * loops over the words of a block are the gate and comparison kernels, which here
+ * are plain loops over longs, and which the VectorBlockEvaluator (built from the
+ * incubator directory, as it requires the jdk.incubator.vector module) replaces
+ * with Vector API kernels over 256 or 512 bit lanes.
+ *
+ * The tree programs of ArraySolutions are run from their last element to their
+ * first with a stack of operands, each gate output being held in a row of the
+ * block, and the simplified forms of programs are run gate by gate, with a row
+ * for each slot. Results are identical to those of running the programs a word
+ * at a time.
+ *
+ * @author Jonathan Fieldsend
+ * @version 1.0
+ */
+class BlockEvaluator
+{
+    private static final String VECTOR_EVALUATOR = "mogp.VectorBlockEvaluator"; // class of the Vector API backend
+    private static final int TILE_BYTES = 16*1024; // size of the inputs of a block, to stay within the L1 cache
+
+    final Problem problem;
+    final int blockWords; // words of test cases in each block
+    final long[][] inputs; // inputs of the block being run, one row per variable
+    final long[][] outputs; // rows holding each output of the program run on the block, null if the output is constant
+    final long[] negations; // mask each output row is xored with
+    private final long[] zeros; // row of a constant output
+    private long[][] rows = new long[0][]; // rows of gate outputs, by operand stack position or slot, allocated when first used
+    private long[][] operands = new long[16][]; // operand stack when running a tree program
+
+    /**
+     * Returns the evaluator for a problem, the Vector API backend if it has been built
+     * and the jdk.incubator.vector module is present, and otherwise this scalar evaluator
+     *
+     * @param problem problem whose test cases are run
+     * @return evaluator of programs on the problem
+     */
+    static BlockEvaluator create(Problem problem) {
+        BlockEvaluator evaluator;
+        try {
+            evaluator = (BlockEvaluator) Class.forName(VECTOR_EVALUATOR).getDeclaredConstructor(Problem.class).newInstance(problem);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            evaluator = new BlockEvaluator(problem, 1);
+        }
+        System.out.println("Evaluating blocks of " + evaluator.blockWords + " words of test cases with the " + evaluator.getDescription());
+        return evaluator;
+    }
+
+    /**
+     * Constructs an evaluator whose blocks are a multiple of lanes words
+     *
+     * @param problem problem whose test cases are run
+     * @param lanes number of words processed together by the kernels
+     */
+    BlockEvaluator(Problem problem, int lanes) {
+        this.problem = problem;
+        int words = Math.max(lanes, TILE_BYTES/(8*Math.max(1, problem.variableNumber)));
+        blockWords = Math.min(words - words%lanes, Math.max(lanes, problem.getNumberOfWords()));
+        inputs = new long[problem.variableNumber][blockWords];
+        outputs = new long[problem.outputNumber][];
+        negations = new long[problem.outputNumber];
+        zeros = new long[blockWords];
+    }
+
+    /**
+     * Returns a description of the kernels used
+     *
+     * @return description of kernels
+     */
+    String getDescription() {
+        return "scalar backend";
+    }
+
+    /**
+     * Runs s on every test case, setting the tests passed on each output in results
+     * (packed as the targets), and returns the number of tests failed
+     *
+     * @param s solution to run
+     * @param results array of getNumberOfTestWords() words to fill
+     * @return number of tests failed
+     */
+    int evaluate(ArraySolution s, long[] results) {
+        int passed = 0;
+        for (int first=0; first<problem.getNumberOfWords(); first+=blockWords) {
+            int words = loadBlock(first);
+            passed += evaluateBlock(s, first, words, results);
+        }
+        return problem.fitnessCases - passed;
+    }
+
+    /**
+     * Loads the inputs of the block of words starting at first, returning the number of
+     * words in it (fewer than blockWords for the last block)
+     *
+     * @param first index of first word of the block
+     * @return number of words in the block
+     */
+    int loadBlock(int first) {
+        int words = Math.min(blockWords, problem.getNumberOfWords() - first);
+        problem.getInputBlock(first, words, inputs);
+        return words;
+    }
+
+    /**
+     * Runs s on the loaded block of words starting at first, setting the tests passed in
+     * results, and returns the number of tests passed
+     *
+     * @param s solution to run
+     * @param first index of first word of the block
+     * @param words number of words in the block
+     * @param results array of getNumberOfTestWords() words to fill
+     * @return number of tests passed
+     */
+    int evaluateBlock(ArraySolution s, int first, int words, long[] results) {
+        s.processBlock(this, words);
+        int passed = 0;
+        for (int o=0; o<outputs.length; o++)
+            passed += compare((outputs[o] == null) ? zeros : outputs[o], negations[o], first, o, results, 0, words);
+        long mask = problem.getCaseMask(first+words-1);
+        if (mask != -1L) { // clear the bits beyond the last test case
+            for (int o=0, t=(first+words-1)*outputs.length; o<outputs.length; o++, t++) {
+                passed -= Long.bitCount(results[t] & ~mask);
+                results[t] &= mask;
+            }
+        }
+        return passed;
+    }
+
+    /**
+     * Runs the tree program held in the first length elements of program (a forest of a
+     * tree per output) on the loaded block, leaving its outputs in outputs
+     *
+     * @param program program elements, as ArraySolution
+     * @param length number of program elements
+     * @param words number of words in the block
+     */
+    void runProgram(int[] program, int length, int words) {
+        int terminals = problem.variableNumber;
+        int top = 0;
+        for (int i=length-1; i>=0; i--) {
+            if (top == operands.length)
+                operands = Arrays.copyOf(operands, 2*top);
+            int node = program[i];
+            if (node < terminals) {
+                operands[top++] = inputs[node];
+            } else {
+                long[] a = operands[--top];
+                long[] b = operands[--top];
+                // a gate output only ever fills the row of its stack position, so the rows
+                // of operands deeper in the stack are not overwritten
+                long[] row = row(top);
+                gate(node-terminals, a, b, row, 0, words);
+                operands[top++] = row;
+            }
+        }
+        // the first tree is run last, so its output is on top
+        for (int o=0; o<outputs.length; o++) {
+            outputs[o] = operands[outputs.length-1-o];
+            negations[o] = 0L;
+        }
+    }
+
+    /**
+     * Returns row i of gate outputs, allocating it if it has not been used before
+     *
+     * @param i index of row
+     * @return row of at least blockWords words
+     */
+    long[] row(int i) {
+        if (i >= rows.length)
+            rows = Arrays.copyOf(rows, Math.max(2*rows.length, i+1));
+        if (rows[i] == null)
+            rows[i] = new long[blockWords];
+        return rows[i];
+    }
+
+    /**
+     * Gate kernel setting out to the outputs of gate number g (see NodeSet.getGate) given
+     * the inputs a and b, for words from (inclusive) to to (exclusive). Out may be a or b.
+     *
+     * @param g gate number
+     * @param a first gate inputs
+     * @param b second gate inputs
+     * @param out array to fill with the gate outputs
+     * @param from first word
+     * @param to end word
+     */
+    void gate(int g, long[] a, long[] b, long[] out, int from, int to) {
+        long both = -((g >>> 3) & 1L), first = -((g >>> 2) & 1L), second = -((g >>> 1) & 1L), neither = -(g & 1L);
+        for (int k=from; k<to; k++)
+            out[k] = (a[k] & b[k] & both) | (a[k] & ~b[k] & first) | (~a[k] & b[k] & second) | (~(a[k] | b[k]) & neither);
+    }
+
+    /**
+     * Comparison kernel setting the tests of output o passed on words from (inclusive) to
+     * to (exclusive) of the block starting at word first, as the xnor of the output (xored
+     * with negation) and the targets, and returning the number passed. Bits beyond the last
+     * test case are cleared by the caller.
+     *
+     * @param out row of program outputs
+     * @param negation mask to xor with the outputs
+     * @param first index of first word of the block
+     * @param o index of output
+     * @param results array of tests passed to fill
+     * @param from first word
+     * @param to end word
+     * @return number of tests passed
+     */
+    int compare(long[] out, long negation, int first, int o, long[] results, int from, int to) {
+        int passed = 0;
+        for (int k=from, t=(first+from)*outputs.length+o; k<to; k++, t+=outputs.length) {
+            results[t] = ~(out[k] ^ negation ^ problem.targetWords[t]);
+            passed += Long.bitCount(results[t]);
+        }
+        return passed;
+    }
+}
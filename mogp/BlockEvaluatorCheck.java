@@ -0,0 +1,173 @@
+package mogp;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * BlockEvaluatorCheck tests that the evaluators of programs give bit-exact results: running
+ * a program a word of test cases at a time (ArraySolution.process), over blocks of words with
+ * the scalar kernels of the BlockEvaluator, and over blocks with the Vector API kernels of
+ * the VectorBlockEvaluator, where it has been built, must each set exactly the tests passed
+ * and count exactly the tests failed that StandardMaintenance.evaluateFitness records.
+ *
+ * For each problem, random programs are drawn of sizes spread geometrically from a single
+ * element to half the maximum tree size, and each is run by every evaluator, first as a
+ * tree and then in its simplified form. Single output problems are given by number or file,
+ * as to BooleanGP, and multiple output problems are n bit adders (2n inputs, n+1 outputs),
+ * written to a temporary PLA file listing every case but the last, so that the last word
+ * of test cases is only partly filled.
+ *
+ * Arguments are optional, given as name=value:
+ * <p>
+ * problems, comma separated problems, as used by BooleanGP (default 13,206,8,26);
+ * <p>
+ * adders, comma separated bits of the adders (default 3,6);
+ * <p>
+ * programs, programs drawn for each problem (default 200);
+ * <p>
+ * seed, random number generator seed (default 1).
+ * <p>
+ * The vector kernels are only checked when run with --add-modules jdk.incubator.vector
+ * and VectorBlockEvaluator built (see README), at the lane width set by mogp.vector.bits.
+ * Run without mogp.vector, as evaluateFitness is then the word at a time reference. The
+ * process exits with status 2 if any result differs, so the check may be scripted.
+ *
+ * @author Jonathan Fieldsend
+ * @version 1.0
+ */
+class BlockEvaluatorCheck
+{
+    private static final int MAX_LENGTH = 10000; // maximum tree size, as used in the GECCO paper
+
+    public static void main(String[] args) throws IOException {
+        HashMap<String,String> options = new HashMap<>();
+        for (String arg : args) {
+            int split = arg.indexOf('=');
+            if (split < 0) {
+                System.out.println("Arguments must be given as name=value: " + arg);
+                System.exit(1);
+            }
+            options.put(arg.substring(0, split), arg.substring(split+1));
+        }
+        String[] problems = options.getOrDefault("problems", "13,206,8,26").split(",");
+        String[] adders = options.getOrDefault("adders", "3,6").split(",");
+        int programs = Integer.parseInt(options.getOrDefault("programs", "200"));
+        RandomNumberGenerator.setSeed(Long.parseLong(options.getOrDefault("seed", "1")));
+        if (Boolean.getBoolean("mogp.vector")) {
+            System.out.println("Run without mogp.vector, as evaluateFitness is the word at a time reference");
+            System.exit(1);
+        }
+
+        int failed = 0;
+        for (String problem : problems)
+            if (!check(problem.trim(), BooleanGP.createProblem(problem.trim()), programs))
+                failed++;
+        for (String bits : adders) {
+            Path file = writeAdder(Integer.parseInt(bits.trim()));
+            try {
+                if (!check("adder" + bits.trim(), new FileProblem(file), programs))
+                    failed++;
+            } finally {
+                Files.delete(file);
+            }
+        }
+        if (failed > 0) {
+            System.out.println(failed + " problems gave results differing from evaluateFitness");
+            System.exit(2);
+        }
+        System.out.println("All evaluators matched evaluateFitness bit for bit");
+    }
+
+    /*
+     * Runs programs random programs on problem with every evaluator, printing the number
+     * of evaluations of each which differ from evaluateFitness, and returns true if none do
+     */
+    private static boolean check(String name, Problem problem, int programs) {
+        Parameters parameters = new Parameters(MAX_LENGTH, 1, 1, 2, 0.05, 0.9);
+        NodeSet nodeSet = new NodeSet(problem.variableNumber);
+        StandardMaintenance reference = new StandardMaintenance(problem, parameters);
+        BlockEvaluator scalar = new BlockEvaluator(problem, 1);
+        BlockEvaluator vector = BlockEvaluator.create(problem);
+        if (vector.getClass() == BlockEvaluator.class)
+            vector = null; // Vector API backend absent
+        int[] mismatches = new int[3]; // of the word at a time, scalar block and vector block evaluations
+        long[] results = new long[problem.getNumberOfTestWords()];
+        int smallest = Integer.MAX_VALUE, largest = 0;
+        for (int i=0; i<programs; i++) {
+            int target = (int) Math.pow(MAX_LENGTH/2, i/(double) Math.max(programs-1, 1));
+            ArraySolution s = Microbenchmark.solutionOfSize(target, parameters, problem, nodeSet);
+            smallest = Math.min(smallest, s.size());
+            largest = Math.max(largest, s.size());
+            ArraySolution expected = s.clone();
+            reference.evaluateFitness(new HashMap<Integer, ArraySolution>(), expected);
+            for (int form=0; form<2; form++) { // the tree, then its simplified form
+                if (form == 1)
+                    s.simplify();
+                if (!matches(expected, evaluateWords(s, problem, results), results))
+                    mismatches[0]++;
+                if (!matches(expected, scalar.evaluate(s, results), results))
+                    mismatches[1]++;
+                if ((vector != null) && !matches(expected, vector.evaluate(s, results), results))
+                    mismatches[2]++;
+            }
+        }
+        boolean matched = (mismatches[0] == 0) && (mismatches[1] == 0) && (mismatches[2] == 0);
+        System.out.println(String.format("%-8s %6d cases %2d outputs %5d programs of sizes %d to %d, mismatches: word %d, scalar block %d, vector block %s, %s",
+            name, problem.getNumberOfCases(), problem.outputNumber, programs, smallest, largest, mismatches[0], mismatches[1],
+            (vector == null) ? "not built" : Integer.toString(mismatches[2]), matched ? "matched" : "DIFFERED"));
+        return matched;
+    }
+
+    /*
+     * Returns true if the tests passed and number failed match those evaluateFitness
+     * recorded for expected
+     */
+    private static boolean matches(ArraySolution expected, int failed, long[] results) {
+        return (failed == expected.getSumOfTestsFailed()) && Arrays.equals(results, expected.getTestsPassedWords());
+    }
+
+    /*
+     * Runs s a word of test cases at a time, setting the tests passed in results, and
+     * returns the number of tests failed
+     */
+    private static int evaluateWords(ArraySolution s, Problem problem, long[] results) {
+        long[] inputs = new long[problem.variableNumber];
+        long[] outputs = new long[problem.outputNumber];
+        int passed = 0;
+        for (int w=0; w<problem.getNumberOfWords(); w++) {
+            long mask = problem.getCaseMask(w);
+            problem.getInputWords(w, inputs);
+            s.process(inputs, outputs);
+            for (int o=0; o<outputs.length; o++) {
+                int t = w*outputs.length + o;
+                results[t] = ~(outputs[o] ^ problem.targetWords[t]) & mask;
+                passed += Long.bitCount(results[t]);
+            }
+        }
+        return problem.fitnessCases - passed;
+    }
+
+    /*
+     * Writes the truth table of an adder of two bits bit numbers, every case but the
+     * last, to a temporary PLA file, and returns the file
+     */
+    private static Path writeAdder(int bits) throws IOException {
+        StringBuilder table = new StringBuilder(".i " + 2*bits + "\n.o " + (bits+1) + "\n");
+        for (int c=0; c<(1 << 2*bits)-1; c++) {
+            for (int k=2*bits-1; k>=0; k--)
+                table.append((c >>> k) & 1);
+            table.append(' ');
+            int sum = (c >>> bits) + (c & ((1 << bits)-1));
+            for (int k=bits; k>=0; k--)
+                table.append((sum >>> k) & 1);
+            table.append('\n');
+        }
+        table.append(".e\n");
+        Path file = Files.createTempFile("adder" + bits + "_", ".pla");
+        Files.write(file, table.toString().getBytes());
+        return file;
+    }
+}
@@ -1,6 +1,13 @@
 package mogp;
 import java.util.HashMap;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Map.Entry;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 /**
  * BooleanGP class, class to set up and run experiments from GECCO 2015 paper
@@ -13,7 +20,7 @@ import java.io.IOException;
  * and the GP functionality is closely modelled on the TinyGP.
  * 
  * @author Jonathan Fieldsend 
- * @version 1.1
+ * @version 1.9
  */
 public class BooleanGP
 {
@@ -29,16 +36,39 @@ public class BooleanGP
     GPMaintenance maintenance; // maintance regime used
     private Results results; // results object
     private NodeSet nodeSet; // node set object
+    int evaluations = 0; // number of evaluations undertaken so far
+    int evaluationsToSolve = -1; // evaluations taken to solve the problem, -1 if not yet solved
+    int archiveSize = -1; // size of the Pareto set or map of the maintenance regime at the last statistics, -1 if not tracked
+    private Path checkpointFile; // file run is periodically checkpointed to, null if not checkpointing
+    private int lastCheckpoint = 0; // evaluations undertaken at last checkpoint
+    private RunControl control; // management interface of the run, null if not managed
+    RunBudget budget; // time budgets of the run, from when evolve started
+    private boolean stopped = false; // true if the run was stopped through its management interface
+    private Path lease; // claimed task file of a run from a work queue, which exists while the run holds its lease, null if none
+    private boolean fenced = false; // true if the run was stopped as its lease was taken by another worker
+    private GenerationEvent generationEvent; // flight recorder event of the current generation
+    final PopulationDiversity diversity; // semantic diversity of the search population, updated as members are replaced
+    private final ArrayDeque<int[]> recycledArrays = new ArrayDeque<>(); // program and subtree end arrays of solutions which have left the population, reused by children
+
+    // timers of each phase of the run, shared with subclasses
+    static final Metrics.Timer FOLD_TIMER = Metrics.timer("fold");
+    static final Metrics.Timer TOURNAMENT_TIMER = Metrics.timer("maintenance.tournament");
+    static final Metrics.Timer NEGATIVE_TOURNAMENT_TIMER = Metrics.timer("maintenance.negativeTournamentKey");
+    static final Metrics.Timer EVALUATE_FITNESS_TIMER = Metrics.timer("maintenance.evaluateFitness");
+    static final Metrics.Timer NEXT_POPULATION_TIMER = Metrics.timer("maintenance.generateNextSearchPopulation");
+    static final Metrics.Timer CROSSOVER_TIMER = Metrics.timer("variation.crossover");
+    static final Metrics.Timer MUTATION_TIMER = Metrics.timer("variation.mutation");
     /**
      * Method to run sets of GP experiments.
      * <p>
      * Five arguments are required: 
      * <p>
-     * a string for the search type (R, B, BP, F, FP, S, SP, D or DP);
+     * a string for the search type (R, B, BP, E, EP, F, FP, L, LP, S, SP, D or DP);
      * <p>
      * a string for the problem number. 2, 4 and 8 denote the multiplexer problems of those values, 16, 
      * 17 and 18 denote the 6, 7 and 8-parity problems, 106, 107 and 108 denote the 6, 7 and 8-majority 
-     * problems and 206, 208 and 210 denote the 6, 8 and 10-comparitor problems;  
+     * problems and 206, 208 and 210 denote the 6, 8 and 10-comparitor problems. Any other argument is 
+     * the path of a problem file, loaded by FileProblem;  
      * <p>
      * a string containing the integer population size (minimum value 1);
      * <p>
@@ -52,7 +82,7 @@ public class BooleanGP
      */
     public static void main(String[] args) throws IOException {
         if (args.length<5){
-            System.out.println("Insufficient arguments, requires: maintenence type (R, B, BP, F, FP, S, SP, D or DP) problem type (2, 4 or 8) population size (postive integer) fold start number fold end number");
+            System.out.println("Insufficient arguments, requires: maintenence type (R, B, BP, E, EP, F, FP, L, LP, S, SP, D or DP) problem (a problem number, e.g. 2, 4 or 8 for the multiplexers, or the path of a problem file) population size (postive integer) fold start number fold end number");
             System.exit(1);
         }
         int fold_start = Integer.parseInt(args[3]);
@@ -75,51 +105,167 @@ public class BooleanGP
         if (args.length==6) { // optional argument of max tree elements
             maxTreeElements = Integer.parseInt(args[5]);
         }
-        Timing.setTotalStartTime();
-        for (int i=fold_start; i<=fold_end; i++)   {
-            System.out.println("FOLD: " + i);
-            Problem problem = (args[1].equals("2")) ? new TwoToOneMultiplexer() :
-                (args[1].equals("4")) ? new FourToOneMultiplexer() :
-                (args[1].equals("8")) ? new EightToOneMultiplexer() :
-                (Integer.parseInt(args[1])<=100) ? new EvenNParity(Integer.parseInt(args[1])-10) :
-                (Integer.parseInt(args[1])<=200) ? new MajorityProblem(Integer.parseInt(args[1])-100) :
-                new ComparisonProblem(Integer.parseInt(args[1])-200);
-
-            // Meta-parameters used in the GECCO paper           
-            Parameters parameters = new Parameters(maxTreeElements, popSize, 1000000/popSize, 2, 0.05, 0.9);
-
-            // dynamically construct the GPMaintence object. Would be nice to refactor this to a factory
-            // method at some point
-            GPMaintenance maintenance = (args[0].equals("R")) ? new StandardMaintenance(problem,parameters) :
-                (args[0].equals("B")) ? new StandardMaintenance(problem,parameters) :
-                (args[0].equals("BP")) ? new StandardMaintenance(problem,parameters, MinimisationType.PARSIMONIOUS) :
-                (args[0].equals("F")) ? new FitnessSharingMaintenance(problem,parameters) :
-                (args[0].equals("FP")) ? new FitnessSharingMaintenance(problem,parameters, MinimisationType.PARSIMONIOUS) :
-                (args[0].equals("L")) ? new LexicaseMaintenance(problem,parameters) :
-                (args[0].equals("LP")) ? new LexicaseMaintenance(problem,parameters, MinimisationType.PARSIMONIOUS) :
-                (args[0].equals("S")) ? new BestSolver(problem,parameters) :
-                (args[0].equals("SP")) ? new BestSolver(problem,parameters, MinimisationType.PARSIMONIOUS) :
-                (args[0].equals("D")) ? new DominationMaintenance(problem,parameters, MinimisationType.STANDARD) :
-                new DominationMaintenance(problem,parameters, MinimisationType.PARSIMONIOUS);
-
-            Results results = new Results("bool_gecco2015_type" + args[0] + "_problem" + args[1] + "_pop" + popSize + "_fold" + i + "_results.txt", (int) 1000000/popSize);
-            if (args[0].equals("R")){
-                RandomBooleanGP rgp = new RandomBooleanGP((long) i, problem, parameters, maintenance, results);
-                evals[i-1] = rgp.generateSolutions();
-                rgp.writeResultsFile();
+        long totalStart = System.nanoTime();
+        Problem problem = createProblem(args[1]); // immutable, so shared by every fold
+        String problemName = problemName(args[1]);
+        for (int i=fold_start; i<=fold_end; i++)
+            evals[i-1] = runFold(args[0], problem, args[1], popSize, maxTreeElements, i, false, null);
+        Results.writeArray(evals, "timing_bool_gecco2015_type" + args[0] + "_problem" + problemName + "_pop" + popSize + "_evals.txt");
+        System.out.println("total time: " + (System.nanoTime() - totalStart)/1e6 + " milli seconds");
+    }
+
+    /*
+     * Method runs a fold of an experiment with the steady state or generational engine, 
+     * writing its results and metrics files, and resuming from its checkpoint file if one
+     * exists, whether written periodically or when the run was stopped, so a stopped run
+     * resumes whether or not checkpointing is set, though a checkpoint written by a run of
+     * another configuration is refused (see Checkpoint). The fold number is also the seed of the
+     * run. The run is registered for management through JMX while it runs (see RunControl). Returns 
+     * the evaluations taken to solve the problem, or one more than the budget if not solved,
+     * or -1 if the run was stopped through its management interface, in which case its 
+     * checkpoint file is kept so it may be resumed. A run from a work queue is given the
+     * claimed file of its task as its lease, and once the file is gone, as the lease was
+     * taken by another worker, the run stops at the end of the generation and throws 
+     * NoSuchFileException, writing no more of its results and none of its metrics or
+     * checkpoint files, which the worker now holding the lease writes instead
+     */
+    static int runFold(String maintenanceType, Problem problem, String problemArgument, int popSize, int maxTreeElements, int fold, boolean generational, Path lease) throws IOException {
+        String fileStem = foldFileStem(maintenanceType, problemArgument, popSize, fold, generational);
+        int evals;
+        System.out.println("FOLD: " + fold);
+        Metrics.reset();
+        long foldStart = FOLD_TIMER.start();
+
+        // Meta-parameters used in the GECCO paper           
+        Parameters parameters = new Parameters(maxTreeElements, popSize, 1000000/popSize, 2, 0.05, 0.9);
+
+        Problem evaluated = createEvaluatedProblem(maintenanceType, problem, parameters);
+        GPMaintenance maintenance = createMaintenance(maintenanceType, evaluated, parameters);
+
+        Results results = createResults(fileStem + "_results", parameters, maintenanceType, problemArgument, fold, evaluated instanceof MiniBatchProblem);
+        if (maintenanceType.equals("R")){
+            RandomBooleanGP rgp = new RandomBooleanGP((long) fold, evaluated, parameters, maintenance, results);
+            evals = rgp.generateSolutions();
+            rgp.writeResultsFile();
+        }
+        else {
+            BooleanGP gp = generational ? new GenerationalBooleanGP((long) fold, evaluated, parameters, maintenance, results) 
+                : new BooleanGP((long) fold, evaluated, parameters, maintenance, results);
+            Path checkpoint = Paths.get(fileStem + "_checkpoint.bin");
+            if (Files.exists(checkpoint)) {
+                gp.readCheckpoint(checkpoint);
+                System.out.println("Resuming from checkpoint at " + gp.getProgress());
             }
-            else {
-                BooleanGP gp = new BooleanGP((long) i, problem, parameters, maintenance, results);
-                evals[i-1] = gp.evolve();
-                gp.writeResultsFile();
+            gp.setCheckpointFile(checkpoint);
+            gp.lease = lease;
+            gp.control = RunControl.register(gp, fileStem, fold);
+            try {
+                evals = gp.evolve();
+            } finally {
+                gp.control.unregister();
             }
-
+            if (gp.fenced) {
+                results.discard();
+                throw new NoSuchFileException(lease.toString(), null, "lease taken by another worker");
+            }
+            gp.writeResultsFile();
+            if (gp.stopped)
+                System.out.println("Stopped at " + gp.getProgress() + ", checkpointed to " + checkpoint);
+            else
+                Files.deleteIfExists(checkpoint);
         }
-        Timing.setTotalEndTime();
-        Timing.updateTotalAccruedTime();
-        Results.writeArray(evals, "timing_bool_gecco2015_type" + args[0] + "_problem" + args[1] + "_pop" + popSize + "_evals.txt");
-        Timing.printInfo();
-        Timing.printTotalInfo();
+        FOLD_TIMER.stop(foldStart);
+        Metrics.printInfo("fold");
+        if (parameters.SIMPLIFY)
+            ProgramSimplifier.printInfo();
+        Metrics.writeOut(fileStem + "_metrics.txt");
+        return evals;
+    }
+
+    /*
+     * Method returns the start of the names of the files written by a fold, to which
+     * _results.txt, _metrics.txt and so on are appended
+     */
+    static String foldFileStem(String maintenanceType, String problemArgument, int popSize, int fold, boolean generational) {
+        return (generational ? "bool_gecco2015_generational_type" : "bool_gecco2015_type") + maintenanceType 
+            + "_problem" + problemName(problemArgument) + "_pop" + popSize + "_fold" + fold;
+    }
+
+    /*
+     * Method constructs the problem denoted by a problem number argument (see main), or 
+     * loads the problem file at the path given
+     */
+    static Problem createProblem(String number) throws IOException {
+        if (!isProblemNumber(number))
+            return new FileProblem(Paths.get(number));
+        return (number.equals("2")) ? new TwoToOneMultiplexer() :
+            (number.equals("4")) ? new FourToOneMultiplexer() :
+            (number.equals("8")) ? new EightToOneMultiplexer() :
+            (Integer.parseInt(number)<=100) ? new EvenNParity(Integer.parseInt(number)-10) :
+            (Integer.parseInt(number)<=200) ? new MajorityProblem(Integer.parseInt(number)-100) :
+            new ComparisonProblem(Integer.parseInt(number)-200);
+    }
+
+    /*
+     * Method returns the name of a problem argument used in the names of the files written,
+     * which for a problem file is its name without directory or extension
+     */
+    static String problemName(String problem) {
+        if (isProblemNumber(problem))
+            return problem;
+        String name = Paths.get(problem).getFileName().toString();
+        return (name.lastIndexOf('.') > 0) ? name.substring(0, name.lastIndexOf('.')) : name;
+    }
+
+    /*
+     * Method returns true if a problem argument is a problem number rather than a file
+     */
+    private static boolean isProblemNumber(String problem) {
+        return problem.matches("[0-9]+");
+    }
+
+    /*
+     * Method constructs the maintenance regime denoted by a maintenance type argument (see main). 
+     * The random search (R) uses the standard regime to evaluate its solutions
+     */
+    static GPMaintenance createMaintenance(String type, Problem problem, Parameters parameters) {
+        return (type.equals("R")) ? new StandardMaintenance(problem,parameters) :
+            (type.equals("B")) ? new StandardMaintenance(problem,parameters) :
+            (type.equals("BP")) ? new StandardMaintenance(problem,parameters, MinimisationType.PARSIMONIOUS) :
+            (type.equals("E")) ? new EliteMaintenance(problem,parameters, MinimisationType.STANDARD) :
+            (type.equals("EP")) ? new EliteMaintenance(problem,parameters, MinimisationType.PARSIMONIOUS) :
+            (type.equals("F")) ? new FitnessSharingMaintenance(problem,parameters) :
+            (type.equals("FP")) ? new FitnessSharingMaintenance(problem,parameters, MinimisationType.PARSIMONIOUS) :
+            (type.equals("L")) ? new LexicaseMaintenance(problem,parameters) :
+            (type.equals("LP")) ? new LexicaseMaintenance(problem,parameters, MinimisationType.PARSIMONIOUS) :
+            (type.equals("S")) ? new BestSolver(problem,parameters) :
+            (type.equals("SP")) ? new BestSolver(problem,parameters, MinimisationType.PARSIMONIOUS) :
+            (type.equals("D")) ? new DominationMaintenance(problem,parameters, MinimisationType.STANDARD) :
+            new DominationMaintenance(problem,parameters, MinimisationType.PARSIMONIOUS);
+    }
+
+    /*
+     * Method constructs the problem a fold's solutions are evaluated on: a mini-batch of the 
+     * problem if parameters.BATCH_SIZE is set, otherwise the problem itself. The random 
+     * search (R) keeps no population to re-evaluate as the batch rotates, so always 
+     * evaluates every test case
+     */
+    static Problem createEvaluatedProblem(String maintenanceType, Problem problem, Parameters parameters) {
+        if ((parameters.BATCH_SIZE > 0) && !maintenanceType.equals("R"))
+            return new MiniBatchProblem(problem, parameters.BATCH_SIZE);
+        return problem;
+    }
+
+    /*
+     * Method constructs the results object of a fold, writing fileStem.txt, or fileStem.bin
+     * in the columnar binary format if parameters.BINARY_RESULTS is set. The fold number
+     * is also the seed of the run. If caseEvaluations is set, the test cases run are 
+     * recorded rather than the programs evaluated
+     */
+    static Results createResults(String fileStem, Parameters parameters, String maintenanceType, String problem, int fold, boolean caseEvaluations) throws IOException {
+        if (parameters.BINARY_RESULTS)
+            return new ColumnarResults(fileStem + ".bin", caseEvaluations, maintenanceType, problem, parameters.POPULATION_SIZE, fold, (long) fold);
+        return new Results(fileStem + ".txt", caseEvaluations);
     }
 
     /*
@@ -133,6 +279,7 @@ public class BooleanGP
         this.maintenance = maintenance;
         this.results = results;
         nodeSet = new NodeSet(problem.variableNumber);
+        diversity = new PopulationDiversity(problem, parameters.POPULATION_SIZE);
         for (int i=0; i<parameters.POPULATION_SIZE; i++){
             ArraySolution s = new ArraySolution(parameters,problem, nodeSet);
             while(s.size() > parameters.MAX_LENGTH)
@@ -142,61 +289,87 @@ public class BooleanGP
     }
 
     /*
-     * Method runs the GP till all generations are exhausted
+     * Method runs the GP till all generations are exhausted, continuing from where the 
+     * run was checkpointed if it has been restored
      */
-    int evolve() {
-        int worstSolutionIndex, evaluationsToSolve=-1;
-        // evauate initial search population
-        for (int i=0; i<parameters.POPULATION_SIZE; i++) {
-            evaluate(searchPopulation.get(i));
-            if (searchPopulation.get(i).getSumOfTestsFailed() < bestPopulationFitness){
-                bestPopulationFitness = searchPopulation.get(i).getSumOfTestsFailed();
-                bestSize = searchPopulation.get(i).size();
-            } else if (searchPopulation.get(i).getSumOfTestsFailed() == bestPopulationFitness){ // track smallest solver at best fitness level
-                if (searchPopulation.get(i).size() < bestSize)
+    int evolve() throws IOException {
+        int worstSolutionIndex;
+        budget = new RunBudget(parameters);
+        beginGenerationEvent();
+        if (evaluations == 0) { // evauate initial search population
+            for (int i=0; i<parameters.POPULATION_SIZE; i++) {
+                evaluate(searchPopulation.get(i));
+                if (searchPopulation.get(i).getSumOfTestsFailed() < bestPopulationFitness){
+                    bestPopulationFitness = searchPopulation.get(i).getSumOfTestsFailed();
                     bestSize = searchPopulation.get(i).size();
-            } 
-
-            if ((bestPopulationFitness == 0) && (evaluationsToSolve==-1))
-                evaluationsToSolve = i+1; 
-
+                } else if (searchPopulation.get(i).getSumOfTestsFailed() == bestPopulationFitness){ // track smallest solver at best fitness level
+                    if (searchPopulation.get(i).size() < bestSize)
+                        bestSize = searchPopulation.get(i).size();
+                } 
+    
+                if ((bestPopulationFitness == 0) && (evaluationsToSolve==-1))
+                    evaluationsToSolve = i+1; 
+    
+            }
+            evaluations = parameters.POPULATION_SIZE;
+            trackDiversity();
+    
+            printStats(parameters.POPULATION_SIZE);
+    
+            if (bestPopulationFitness == 0)
+                return evaluationsToSolve;
+            if (budget.isUsedUp())
+                return expire(false);
         }
 
-        printStats(parameters.POPULATION_SIZE);
-
-        if (bestPopulationFitness == 0)
-            return evaluationsToSolve;
-
-        for (int i=parameters.POPULATION_SIZE; i<parameters.GENERATIONS*parameters.POPULATION_SIZE; i++) {
+        for (int i=evaluations; i<parameters.GENERATIONS*parameters.POPULATION_SIZE; i++) {
             
             //for (int j=0; j<searchPopulation.size(); j++ ) {
+            long start = TOURNAMENT_TIMER.start();
             ArraySolution parent1 = maintenance.tournament(searchPopulation);
-            ArraySolution child = parent1.clone(); 
+            TOURNAMENT_TIMER.stop(start);
+            ArraySolution child;
             if (RandomNumberGenerator.getRandom().nextDouble() < parameters.CROSSOVER_PROBABILITY ) {
+                start = TOURNAMENT_TIMER.start();
                 ArraySolution parent2 = maintenance.tournament(searchPopulation);
                 while (parent1 == parent2){
                     parent2 = maintenance.tournament(searchPopulation);
                 }
-                child.crossover(parent2);
+                TOURNAMENT_TIMER.stop(start);
+                start = CROSSOVER_TIMER.start();
+                child = parent1.crossover(parent2, childArray(), childArray());
+                CROSSOVER_TIMER.stop(start);
             } else {
-                child.mutation(parameters.MUTATION_PROBABILITY_PER_NODE);
+                start = MUTATION_TIMER.start();
+                child = parent1.mutation(parameters.MUTATION_PROBABILITY_PER_NODE, childArray(), childArray());
+                MUTATION_TIMER.stop(start);
             }
+            start = NEGATIVE_TOURNAMENT_TIMER.start();
             int worstSolutionKey = maintenance.negativeTournamentKey(searchPopulation);
-            searchPopulation.get(worstSolutionKey).clean();// gives less work to the garbage collector, which can sometimes complain if lots of time is spent dereferencing maps
-            searchPopulation.put(worstSolutionKey, child);
-            evaluate(child);
-            if (searchPopulation.get(worstSolutionKey).getSumOfTestsFailed() < bestPopulationFitness){
-                bestPopulationFitness = searchPopulation.get(worstSolutionKey).getSumOfTestsFailed(); 
-                bestSize = searchPopulation.get(worstSolutionKey).size();
-            } 
-            else if (searchPopulation.get(worstSolutionKey).getSumOfTestsFailed() == bestPopulationFitness){ // track smallest solver at best fitness level
-                if (searchPopulation.get(worstSolutionKey).size() < bestSize) {
-                    bestSize = searchPopulation.get(worstSolutionKey).size();
-                }
-            } 
+            NEGATIVE_TOURNAMENT_TIMER.stop(start);
+            ArraySolution worst = searchPopulation.get(worstSolutionKey);
+            if (evaluate(child, worst)) {
+                diversity.remove(worst);
+                diversity.add(child);
+                recycle(worst);// gives less work to the garbage collector, which can sometimes complain if lots of time is spent dereferencing maps
+                searchPopulation.put(worstSolutionKey, child);
+                if (child.getSumOfTestsFailed() < bestPopulationFitness){
+                    bestPopulationFitness = child.getSumOfTestsFailed(); 
+                    bestSize = child.size();
+                } 
+                else if (child.getSumOfTestsFailed() == bestPopulationFitness){ // track smallest solver at best fitness level
+                    if (child.size() < bestSize) {
+                        bestSize = child.size();
+                    }
+                } 
+            } else { // raced child could not beat worst, so worst is retained
+                ((StandardMaintenance) maintenance).reinstate(worst);
+                recycle(child);
+            }
             
             if ((bestPopulationFitness == 0) && (evaluationsToSolve==-1))
                 evaluationsToSolve = i+1; 
+            evaluations = i+1;
 
             //}
             if (((i+1)%parameters.POPULATION_SIZE)==0){ 
@@ -206,12 +379,183 @@ public class BooleanGP
             
             if (bestPopulationFitness == 0)
                 return evaluationsToSolve;
+            if (((i+1)%parameters.POPULATION_SIZE)==0) {
+                rotateBatch();
+                if (endGeneration())
+                    return evaluationsToSolve;
+            }
+            if (budget.isUsedUp())
+                return expire(((i+1)%parameters.POPULATION_SIZE) != 0);
         }
         if (evaluationsToSolve==-1)
             evaluationsToSolve = parameters.GENERATIONS*searchPopulation.size() +1;
         return evaluationsToSolve;
     }
 
+    /*
+     * Method ends a run whose time budget has been used up, reporting which, and records
+     * the statistics of the evaluation reached unless they were recorded at it, so that
+     * the results end with the best found so far and the archive size, and returns the
+     * evaluations taken to solve the problem as when the evaluation budget is used up
+     */
+    int expire(boolean record) throws IOException {
+        budget.reportExpiry(getProgress());
+        if (record)
+            printStats(evaluations);
+        return parameters.GENERATIONS*searchPopulation.size() +1;
+    }
+
+    /*
+     * Method moves on to the next mini-batch of test cases, if evaluating on mini-batches,
+     * and re-evaluates the search population on it. The best fitness and size tracked
+     * are then those of the population on the new batch
+     */
+    void rotateBatch() {
+        if (!(problem instanceof MiniBatchProblem))
+            return;
+        ((MiniBatchProblem) problem).nextBatch();
+        long start = EVALUATE_FITNESS_TIMER.start();
+        maintenance.reevaluate(searchPopulation);
+        EVALUATE_FITNESS_TIMER.stop(start);
+        bestPopulationFitness = Integer.MAX_VALUE;
+        bestSize = Integer.MAX_VALUE;
+        for (ArraySolution s : searchPopulation.values()) {
+            if ((s.getSumOfTestsFailed() < bestPopulationFitness) 
+                || ((s.getSumOfTestsFailed() == bestPopulationFitness) && (s.size() < bestSize))) {
+                bestPopulationFitness = s.getSumOfTestsFailed();
+                bestSize = s.size();
+            }
+        }
+        trackDiversity();
+    }
+
+    /*
+     * Method sets the file the run is checkpointed to every parameters.CHECKPOINT_INTERVAL
+     * evaluations (at the end of the generation in which the interval is reached), if set,
+     * and when requested through the management interface
+     */
+    void setCheckpointFile(Path file) {
+        checkpointFile = file;
+    }
+    
+    /*
+     * Method writes a checkpoint if one is due
+     */
+    void checkpointIfDue() throws IOException {
+        if ((checkpointFile != null) && (parameters.CHECKPOINT_INTERVAL > 0) && (evaluations - lastCheckpoint >= parameters.CHECKPOINT_INTERVAL))
+            writeCheckpoint(checkpointFile);
+    }
+    
+    /*
+     * Method ends a generation: writing its records to the results file, then acting on
+     * the requests made through the management interface, if the run has one, writing
+     * a checkpoint if one is requested and waiting while the run is paused, as well as
+     * writing a checkpoint if one is due. Returns true if the run is to stop, once it has
+     * been checkpointed. A run whose thread is interrupted while paused also stops. A run
+     * whose lease is gone stops at once, as fenced, without writing its records or a
+     * checkpoint, as the worker now holding its lease writes them.
+     */
+    boolean endGeneration() throws IOException {
+        if ((lease != null) && !Files.exists(lease)) {
+            fenced = true;
+            return true;
+        }
+        results.writeBuffered();
+        if (control != null) {
+            boolean waited = true;
+            while (waited) {
+                if (control.takeCheckpointRequest() && (checkpointFile != null)) {
+                    writeCheckpoint(checkpointFile);
+                    System.out.println("Checkpointed at " + getProgress() + " on request");
+                }
+                try {
+                    waited = control.awaitWhilePaused();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    control.stop();
+                }
+                if (control.isStopRequested()) {
+                    if (checkpointFile != null)
+                        writeCheckpoint(checkpointFile);
+                    stopped = true;
+                    return true;
+                }
+            }
+        }
+        checkpointIfDue();
+        return false;
+    }
+    
+    /*
+     * Method writes the complete state of the run to a checkpoint file
+     */
+    void writeCheckpoint(Path file) throws IOException {
+        Checkpoint checkpoint = new Checkpoint();
+        writeState(checkpoint);
+        checkpoint.write(file, parameters, problem);
+        lastCheckpoint = evaluations;
+    }
+    
+    /*
+     * Method restores the state of the run from a checkpoint file, so that evolve continues
+     * the run exactly as it would have done from the checkpoint
+     */
+    void readCheckpoint(Path file) throws IOException {
+        Checkpoint checkpoint = Checkpoint.read(file, parameters, problem, nodeSet);
+        readState(checkpoint);
+        lastCheckpoint = evaluations;
+    }
+    
+    /*
+     * Method returns a description of how far the run has progressed, e.g. when resumed
+     */
+    String getProgress() {
+        return "evaluation " + evaluations;
+    }
+    
+    /*
+     * Method writes the state of the optimiser, its maintenance regime, the random number 
+     * generator and the results tracked so far
+     */
+    void writeState(Checkpoint checkpoint) throws IOException {
+        checkpoint.writeLong(RandomNumberGenerator.getState());
+        checkpoint.writeInt(evaluations);
+        checkpoint.writeInt(evaluationsToSolve);
+        checkpoint.writeInt(bestPopulationFitness);
+        checkpoint.writeInt(bestSize);
+        if (problem instanceof MiniBatchProblem)
+            checkpoint.writeInt(((MiniBatchProblem) problem).getBatch());
+        checkpoint.writeInt(searchPopulation.size());
+        for (Entry<Integer, ArraySolution> e : searchPopulation.entrySet()) {
+            checkpoint.writeInt(e.getKey());
+            checkpoint.writeSolution(e.getValue());
+        }
+        maintenance.writeState(checkpoint);
+        results.writeState(checkpoint);
+    }
+    
+    /*
+     * Method reads the state written by writeState
+     */
+    void readState(Checkpoint checkpoint) throws IOException {
+        RandomNumberGenerator.setState(checkpoint.readLong());
+        evaluations = checkpoint.readInt();
+        evaluationsToSolve = checkpoint.readInt();
+        bestPopulationFitness = checkpoint.readInt();
+        bestSize = checkpoint.readInt();
+        if (problem instanceof MiniBatchProblem)
+            ((MiniBatchProblem) problem).setBatch(checkpoint.readInt());
+        searchPopulation.clear();
+        int size = checkpoint.readInt();
+        for (int i=0; i<size; i++) {
+            int key = checkpoint.readInt();
+            searchPopulation.put(key, checkpoint.readSolution());
+        }
+        trackDiversity();
+        maintenance.readState(checkpoint);
+        results.readState(checkpoint);
+    }
+
     /*
      * Method writes out the results to a file using the results attribute
      */
@@ -233,17 +577,84 @@ public class BooleanGP
         averagePopulationLength /= parameters.POPULATION_SIZE;
     }
 
+    /*
+     * Method sets the diversity tracked to that of the whole search population, once it 
+     * has been evaluated (or re-evaluated, or restored)
+     */
+    void trackDiversity() {
+        diversity.clear();
+        for (ArraySolution s : searchPopulation.values())
+            diversity.add(s);
+    }
+
+    /*
+     * Method returns an array of MAX_LENGTH elements to hold the program or subtree ends
+     * of a child, reusing one of a solution which has left the population if there is one
+     */
+    int[] childArray() {
+        int[] array = recycledArrays.poll();
+        return (array == null) ? new int[parameters.MAX_LENGTH] : array;
+    }
+    
+    /*
+     * Method removes the program and subtree ends of a solution which has left the 
+     * population, keeping their arrays for later children. The solution itself may still
+     * be referenced by the maintenance regime, which only uses its size and tests passed.
+     */
+    void recycle(ArraySolution s) {
+        int[] program = s.release();
+        if (program != null)
+            recycledArrays.push(program);
+        int[] subtreeEnds = s.releaseSubtreeEnds();
+        if (subtreeEnds != null)
+            recycledArrays.push(subtreeEnds);
+    }
+
     /*
      * Method evaluates the fitness of a population
      */
     void evaluate(ArraySolution s) {
+        long start = EVALUATE_FITNESS_TIMER.start();
         maintenance.evaluateFitness(searchPopulation,s);
+        EVALUATE_FITNESS_TIMER.stop(start);
+    }
+
+    /*
+     * Method evaluates a batch of solutions together, none competing for a particular slot,
+     * with the same outcome as evaluating each in turn
+     */
+    void evaluate(List<ArraySolution> batch) {
+        if (maintenance instanceof StandardMaintenance) {
+            long start = EVALUATE_FITNESS_TIMER.start();
+            ((StandardMaintenance) maintenance).evaluateFitness(searchPopulation, batch);
+            EVALUATE_FITNESS_TIMER.stop(start);
+            return;
+        }
+        for (ArraySolution s : batch)
+            evaluate(s);
+    }
+
+    /*
+     * Method evaluates a child competing to replace toReplace (null if not competing for a 
+     * particular slot). Returns false if racing abandoned the evaluation, as the child cannot
+     * be of use.
+     */
+    boolean evaluate(ArraySolution s, ArraySolution toReplace) {
+        if (maintenance instanceof StandardMaintenance) {
+            StandardMaintenance m = (StandardMaintenance) maintenance;
+            long start = EVALUATE_FITNESS_TIMER.start();
+            boolean evaluated = m.evaluateFitness(searchPopulation, s, m.getRacingBound(toReplace));
+            EVALUATE_FITNESS_TIMER.stop(start);
+            return evaluated;
+        }
+        evaluate(s);
+        return true;
     }
 
     /*
      * Method prints out various statistics to the terminal window
      */
-    void printStats(int evaluations){
+    void printStats(int evaluations) throws IOException {
         calculateAverages();
 
         if ( evaluations%10000 == 0 ) {
@@ -256,22 +667,49 @@ public class BooleanGP
             System.out.println("Memory used: " + (Runtime.getRuntime().totalMemory()+Runtime.getRuntime().freeMemory())/1048576 + "M");    
         }
 
+        int setSize = -1; // not tracked by other maintenance regimes
         if (maintenance instanceof DominationMaintenance){
-            int setSize = ((DominationMaintenance) maintenance).getParetoSetSize();
+            setSize = ((DominationMaintenance) maintenance).getParetoSetSize();
             //System.out.println("Pareto set size: " + setSize);
-            results.paretoSetSize.add(setSize);
         }
 
         if (maintenance instanceof BestSolver){
-            int setSize = ((BestSolver) maintenance).getMapSize();
+            setSize = ((BestSolver) maintenance).getMapSize();
             //System.out.println("Map size: " + setSize);
-            results.paretoSetSize.add(setSize);
         }
 
-        results.bestFitness.add(bestPopulationFitness);
-        results.averageFitness.add(averagePopulationFitness);
-        results.averageSize.add(averagePopulationLength);
-        results.bestSize.add(bestSize);
+        archiveSize = setSize;
+
+        // on mini-batches, programs are evaluated on differing numbers of test cases, so the test cases run are recorded
+        long recorded = (problem instanceof MiniBatchProblem) ? ((StandardMaintenance) maintenance).getCaseEvaluations() : evaluations;
+        int distinctSemantics = diversity.getDistinctSemantics();
+        double meanDistance = diversity.getMeanPairwiseDistance();
+        double meanEntropy = diversity.getMeanCaseEntropy();
+        results.add(recorded, bestPopulationFitness, averagePopulationFitness, bestSize, averagePopulationLength, setSize, 
+            distinctSemantics, meanDistance, meanEntropy);
+
+        if ((generationEvent != null) && generationEvent.shouldCommit()) {
+            generationEvent.evaluations = evaluations;
+            generationEvent.bestFitness = bestPopulationFitness;
+            generationEvent.averageFitness = averagePopulationFitness;
+            generationEvent.bestSize = bestSize;
+            generationEvent.averageSize = averagePopulationLength;
+            generationEvent.archiveSize = setSize;
+            generationEvent.distinctSemantics = distinctSemantics;
+            generationEvent.meanDistance = meanDistance;
+            generationEvent.meanEntropy = meanEntropy;
+            generationEvent.commit();
+        }
+        beginGenerationEvent();
+    }
+
+    /*
+     * Method starts timing the flight recorder event of the next generation, which is
+     * committed by printStats at the generation's end
+     */
+    void beginGenerationEvent() {
+        generationEvent = new GenerationEvent();
+        generationEvent.begin();
     }
 
 }
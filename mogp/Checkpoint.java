@@ -0,0 +1,409 @@
+package mogp;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * Checkpoint holds the binary encoding of the state of a run, so that a run
+ * may be resumed and continue exactly as it would have done. Engines and
+ * maintenance regimes write their state in order, and read it back in the same
+ * order.
+ *
+ * Solutions are written by reference to a table of every solution in the state,
+ * so solutions shared between the search population and the internal state of
+ * a maintenance regime are restored as the same object.
+ *
+ * The file holds a header, the solution table and then the written state. Each solution
+ * of the table is preceded by its length, and the table is written and read a chunk at a
+ * time, so it may be of any size (the written state itself is held in one buffer). It is
+ * replaced atomically, via a temporary file unique to the writing thread (see
+ * OutputFile), so a run killed while writing leaves the previous checkpoint intact,
+ * and runs of the same fold in separate workers never write to the same file. The
+ * header holds the configuration of the run (the parameters and problem dimensions
+ * which shape its state and trajectory), and a checkpoint is only read back into a run
+ * of the same configuration, so a stale checkpoint left by a run with, say, another
+ * population size or mogp.* settings is refused rather than silently resumed.
+ *
+ * @author Jonathan Fieldsend
+ * @version 1.4
+ */
+class Checkpoint
+{
+    private static final int MAGIC = 0x4D47434B; // "MGCK"
+    private static final int VERSION = 4;
+    private static final int CHUNK_SIZE = 1 << 20; // bytes of the solution table written or read at a time
+
+    private ByteBuffer state; // encoded state, excluding the solution table
+    private final IdentityHashMap<ArraySolution,Integer> solutionIndices = new IdentityHashMap<>();
+    private final List<ArraySolution> solutions = new ArrayList<>();
+
+    /**
+     * Constructs an empty checkpoint for state to be written to
+     */
+    Checkpoint() {
+        state = ByteBuffer.allocate(1 << 16);
+    }
+
+    /*
+     * Constructor used when reading state, with the solutions of the table
+     */
+    private Checkpoint(ByteBuffer state, List<ArraySolution> solutions) {
+        this.state = state;
+        this.solutions.addAll(solutions);
+    }
+
+    /**
+     * Writes the checkpoint to file, via a temporary file which then atomically
+     * replaces any existing checkpoint
+     *
+     * @param file checkpoint file
+     * @param parameters parameters of the run checkpointed
+     * @param problem problem of the run checkpointed
+     */
+    void write(Path file, Parameters parameters, Problem problem) throws IOException {
+        byte[] configuration = configuration(parameters, problem);
+        ByteBuffer chunk = ByteBuffer.allocate(Math.max(CHUNK_SIZE, 24 + configuration.length));
+        chunk.putInt(MAGIC).putInt(VERSION);
+        chunk.putInt(configuration.length).put(configuration);
+        chunk.putLong(state.position());
+        chunk.putInt(solutions.size());
+
+        Path temporary = OutputFile.temporary(file);
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            for (ArraySolution s : solutions) {
+                int size = s.stateSize();
+                if (chunk.remaining() < 4 + size) {
+                    writeChunk(channel, chunk);
+                    if (chunk.capacity() < 4 + size)
+                        chunk = ByteBuffer.allocate(4 + size);
+                }
+                chunk.putInt(size);
+                s.writeState(chunk);
+            }
+            writeChunk(channel, chunk);
+            state.flip();
+            while (state.hasRemaining())
+                channel.write(state);
+            channel.force(true);
+        }
+        OutputFile.commit(temporary, file);
+    }
+
+    /**
+     * Reads a checkpoint from file, ready for state to be read from. A checkpoint written
+     * by a run of another configuration is refused with an IOException
+     *
+     * @param file checkpoint file
+     * @param parameters parameters of the run being restored
+     * @param problem problem of the run being restored
+     * @param nodeSet node set of the run being restored
+     * @return checkpoint to read state from
+     */
+    static Checkpoint read(Path file, Parameters parameters, Problem problem, NodeSet nodeSet) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer chunk = ByteBuffer.allocate(CHUNK_SIZE);
+            chunk.flip();
+            chunk = readChunk(channel, chunk, 12, file);
+            if ((chunk.getInt() != MAGIC) || (chunk.getInt() != VERSION))
+                throw new IOException("Not a checkpoint file of this version: " + file);
+            int length = chunk.getInt();
+            if ((length < 0) || (length > CHUNK_SIZE))
+                throw new IOException("Checkpoint corrupted: " + file);
+            chunk = readChunk(channel, chunk, length + 12, file);
+            byte[] written = new byte[length];
+            chunk.get(written);
+            if (!Arrays.equals(written, configuration(parameters, problem)))
+                throw new IOException("Checkpoint " + file + " was written by a run of another configuration, so is not resumed ("
+                    + new String(written, StandardCharsets.UTF_8) + ", not " + new String(configuration(parameters, problem), StandardCharsets.UTF_8) + ")");
+            long stateSize = chunk.getLong();
+            int count = chunk.getInt();
+            if ((stateSize < 0) || (stateSize > Integer.MAX_VALUE) || (count < 0))
+                throw new IOException("Checkpoint corrupted: " + file);
+            List<ArraySolution> solutions = new ArrayList<>(count);
+            for (int i=0; i<count; i++) {
+                chunk = readChunk(channel, chunk, 4, file);
+                int size = chunk.getInt();
+                if (size < 0)
+                    throw new IOException("Checkpoint corrupted: " + file);
+                chunk = readChunk(channel, chunk, size, file);
+                int end = chunk.position() + size;
+                solutions.add(new ArraySolution(parameters, problem, nodeSet, chunk));
+                if (chunk.position() != end)
+                    throw new IOException("Checkpoint corrupted: " + file);
+            }
+            if (chunk.remaining() > stateSize)
+                throw new IOException("Checkpoint corrupted: " + file);
+            ByteBuffer state = ByteBuffer.allocate((int) stateSize);
+            state.put(chunk);
+            while (state.hasRemaining())
+                if (channel.read(state) < 0)
+                    throw new IOException("Checkpoint truncated: " + file);
+            if (channel.position() != channel.size())
+                throw new IOException("Checkpoint corrupted: " + file);
+            state.flip();
+            return new Checkpoint(state, solutions);
+        }
+    }
+
+    /*
+     * Writes the bytes put into a chunk to the channel, clearing it for reuse
+     */
+    private static void writeChunk(FileChannel channel, ByteBuffer chunk) throws IOException {
+        chunk.flip();
+        while (chunk.hasRemaining())
+            channel.write(chunk);
+        chunk.clear();
+    }
+
+    /*
+     * Returns a chunk holding at least bytes unread bytes, reading more of the channel
+     * into the chunk, or into a larger one if they do not fit
+     */
+    private static ByteBuffer readChunk(FileChannel channel, ByteBuffer chunk, int bytes, Path file) throws IOException {
+        if (chunk.remaining() >= bytes)
+            return chunk;
+        if (chunk.capacity() < bytes) {
+            ByteBuffer larger = ByteBuffer.allocate(bytes);
+            larger.put(chunk);
+            chunk = larger;
+        } else {
+            chunk.compact();
+        }
+        while (chunk.position() < bytes)
+            if (channel.read(chunk) < 0)
+                throw new IOException("Checkpoint truncated: " + file);
+        chunk.flip();
+        return chunk;
+    }
+
+    /*
+     * Returns the configuration of a run which its checkpoints must match, as text so
+     * that a mismatch may be reported
+     */
+    private static byte[] configuration(Parameters parameters, Problem problem) {
+        return ("maxTreeElements=" + parameters.MAX_LENGTH + ", population=" + parameters.POPULATION_SIZE
+            + ", generations=" + parameters.GENERATIONS + ", tournament=" + parameters.TOURNAMENT_SIZE
+            + ", mutation=" + parameters.MUTATION_PROBABILITY_PER_NODE + ", crossover=" + parameters.CROSSOVER_PROBABILITY
+            + ", racing=" + parameters.RACING + ", simplify=" + parameters.SIMPLIFY + ", batch=" + parameters.BATCH_SIZE
+            + ", results=" + (parameters.BINARY_RESULTS ? "binary" : "text") + ", truncation=" + (parameters.RANKED_TRUNCATION ? "ranked" : "tournament")
+            + ", cases=" + problem.fitnessCases + ", variables=" + problem.variableNumber + ", outputs=" + problem.outputNumber)
+            .getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns a checkpoint from which the state written so far may be read back within
+     * the process, restoring the same solution objects rather than copies of them, so
+     * the state may be restored repeatedly (e.g. between benchmarked operations)
+     *
+     * @return checkpoint to read state from
+     */
+    Checkpoint rewind() {
+        ByteBuffer written = state.duplicate();
+        written.flip();
+        return new Checkpoint(written.slice(), solutions);
+    }
+
+    /*
+     * Ensures capacity for bytes more bytes of state
+     */
+    private void ensureCapacity(int bytes) {
+        if (state.remaining() < bytes) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(state.capacity()*2, state.position()+bytes));
+            state.flip();
+            larger.put(state);
+            state = larger;
+        }
+    }
+
+    /**
+     * Writes an int
+     * 
+     * @param value value to write
+     */
+    void writeInt(int value) {
+        ensureCapacity(4);
+        state.putInt(value);
+    }
+
+    /**
+     * Writes a long
+     * 
+     * @param value value to write
+     */
+    void writeLong(long value) {
+        ensureCapacity(8);
+        state.putLong(value);
+    }
+
+    /**
+     * Writes a double
+     * 
+     * @param value value to write
+     */
+    void writeDouble(double value) {
+        ensureCapacity(8);
+        state.putDouble(value);
+    }
+
+    /**
+     * Writes a boolean
+     * 
+     * @param value value to write
+     */
+    void writeBoolean(boolean value) {
+        ensureCapacity(1);
+        state.put(value ? (byte) 1 : (byte) 0);
+    }
+
+    /**
+     * Writes an array of ints, which may be null
+     *
+     * @param values array to write
+     */
+    void writeInts(int[] values) {
+        if (values == null) {
+            writeInt(-1);
+            return;
+        }
+        ensureCapacity(4 + 4*values.length);
+        state.putInt(values.length);
+        for (int v : values)
+            state.putInt(v);
+    }
+
+    /**
+     * Writes the remaining bytes of a buffer
+     *
+     * @param bytes buffer to write
+     */
+    void writeBytes(ByteBuffer bytes) {
+        ensureCapacity(4 + bytes.remaining());
+        state.putInt(bytes.remaining());
+        state.put(bytes);
+    }
+
+    /**
+     * Writes a reference to a solution, which may be null
+     *
+     * @param s solution to write
+     */
+    void writeSolution(ArraySolution s) {
+        if (s == null) {
+            writeInt(-1);
+            return;
+        }
+        Integer index = solutionIndices.get(s);
+        if (index == null) {
+            index = solutions.size();
+            solutionIndices.put(s, index);
+            solutions.add(s);
+        }
+        writeInt(index);
+    }
+
+    /**
+     * Writes references to a collection of solutions, in iteration order
+     *
+     * @param c collection of solutions
+     */
+    void writeSolutions(Collection<ArraySolution> c) {
+        writeInt(c.size());
+        for (ArraySolution s : c)
+            writeSolution(s);
+    }
+
+    /**
+     * Reads an int written by writeInt
+     * 
+     * @return value read
+     */
+    int readInt() {
+        return state.getInt();
+    }
+
+    /**
+     * Reads a long written by writeLong
+     * 
+     * @return value read
+     */
+    long readLong() {
+        return state.getLong();
+    }
+
+    /**
+     * Reads a double written by writeDouble
+     * 
+     * @return value read
+     */
+    double readDouble() {
+        return state.getDouble();
+    }
+
+    /**
+     * Reads a boolean written by writeBoolean
+     * 
+     * @return value read
+     */
+    boolean readBoolean() {
+        return state.get() != 0;
+    }
+
+    /**
+     * Reads an array of ints written by writeInts
+     *
+     * @return array read, possibly null
+     */
+    int[] readInts() {
+        int length = state.getInt();
+        if (length < 0)
+            return null;
+        int[] values = new int[length];
+        for (int i=0; i<length; i++)
+            values[i] = state.getInt();
+        return values;
+    }
+
+    /**
+     * Reads bytes written by writeBytes
+     *
+     * @return buffer of the bytes read
+     */
+    ByteBuffer readBytes() {
+        int length = state.getInt();
+        ByteBuffer bytes = state.slice();
+        bytes.limit(length);
+        state.position(state.position() + length);
+        return bytes;
+    }
+
+    /**
+     * Reads a solution reference written by writeSolution
+     *
+     * @return solution read, possibly null
+     */
+    ArraySolution readSolution() {
+        int index = state.getInt();
+        return (index < 0) ? null : solutions.get(index);
+    }
+
+    /**
+     * Reads solution references written by writeSolutions, adding them in order to c
+     *
+     * @param c collection to add solutions to
+     */
+    void readSolutions(Collection<ArraySolution> c) {
+        int size = state.getInt();
+        for (int i=0; i<size; i++)
+            c.add(readSolution());
+    }
+}
@@ -0,0 +1,166 @@
+package mogp;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+/**
+ * Results which are streamed to file in a columnar binary format, read back by
+ * ResultsReader.
+ *
+ * The file starts with a header holding a magic number, version, whether test cases
+ * run are recorded rather than evaluations, and the metadata of the run (maintenance
+ * type, problem, population size, fold and seed). It is followed by blocks of up to
+ * BLOCK_SIZE records, each holding the number of records in the block and then one
+ * column per statistic: evaluations, best fitness, average fitness, best size, average
+ * size, Pareto set size, distinct semantics, mean pairwise distance and mean case entropy.
+ * Evaluations are stored as longs, averages as doubles and the rest as ints, all
+ * little-endian (version 1 and 2 files, which ResultsReader also reads, have no diversity
+ * columns, and version 1 files have no flag and store evaluations as ints). As blocks are only ever written whole, at
+ * the end of the generation in which they fill (see writeBuffered), a file cut short by a
+ * crash can be read up to its last complete block.
+ *
+ * @author Jonathan Fieldsend
+ * @version 1.3
+ */
+class ColumnarResults extends Results
+{
+    static final int MAGIC = 0x4D475253; // "MGRS"
+    static final int VERSION = 3;
+    static final int BLOCK_SIZE = 1024; // maximum number of records in a block
+
+    private final String maintenanceType;
+    private final String problem;
+    private final int populationSize;
+    private final int fold;
+    private final long seed;
+
+    // columns of the block being filled
+    private final long[] evaluations = new long[BLOCK_SIZE];
+    private final int[] bestFitness = new int[BLOCK_SIZE];
+    private final double[] averageFitness = new double[BLOCK_SIZE];
+    private final int[] bestSize = new int[BLOCK_SIZE];
+    private final double[] averageSize = new double[BLOCK_SIZE];
+    private final int[] paretoSetSize = new int[BLOCK_SIZE];
+    private final int[] distinctSemantics = new int[BLOCK_SIZE];
+    private final double[] meanDistance = new double[BLOCK_SIZE];
+    private final double[] meanEntropy = new double[BLOCK_SIZE];
+    private int count = 0; // number of records in the block being filled
+
+    /**
+     * Constructor to set up ColumnarResults object to stream GP results to file
+     *
+     * @param fileName name of file to write to
+     * @param caseEvaluations true if the test cases run are recorded, rather than evaluations
+     * @param maintenanceType maintenance type argument of the run
+     * @param problem problem argument of the run
+     * @param populationSize population size of the run
+     * @param fold fold number of the run
+     * @param seed random number generator seed of the run
+     */
+    ColumnarResults(String fileName, boolean caseEvaluations, String maintenanceType, String problem, int populationSize, int fold, long seed) throws IOException {
+        super(fileName, caseEvaluations);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        this.maintenanceType = maintenanceType;
+        this.problem = problem;
+        this.populationSize = populationSize;
+        this.fold = fold;
+        this.seed = seed;
+    }
+
+    @Override
+    void putHeader() {
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.put(caseEvaluations ? (byte) 1 : (byte) 0);
+        putString(maintenanceType);
+        putString(problem);
+        buffer.putInt(populationSize);
+        buffer.putInt(fold);
+        buffer.putLong(seed);
+    }
+
+    @Override
+    void putRecord(long evaluations, int bestFitness, double averageFitness, int bestSize, double averageSize, int paretoSetSize, 
+            int distinctSemantics, double meanDistance, double meanEntropy) throws IOException {
+        this.evaluations[count] = evaluations;
+        this.bestFitness[count] = bestFitness;
+        this.averageFitness[count] = averageFitness;
+        this.bestSize[count] = bestSize;
+        this.averageSize[count] = averageSize;
+        this.paretoSetSize[count] = paretoSetSize;
+        this.distinctSemantics[count] = distinctSemantics;
+        this.meanDistance[count] = meanDistance;
+        this.meanEntropy[count] = meanEntropy;
+        if (++count == BLOCK_SIZE)
+            putBlock();
+    }
+
+    /*
+     * Writes out the block being filled, as well as the buffer, where writeBuffered
+     * holds it back until it is complete
+     */
+    @Override
+    void flush() throws IOException {
+        if (count > 0)
+            putBlock();
+        super.flush();
+    }
+
+    @Override
+    void readState(Checkpoint checkpoint) throws IOException {
+        super.readState(checkpoint);
+        count = 0;
+    }
+
+    /*
+     * Puts the block being filled into the buffer, first writing out the buffer if the
+     * block does not fit
+     */
+    private void putBlock() throws IOException {
+        if (buffer.remaining() < 4 + 56*count)
+            super.flush();
+        buffer.putInt(count);
+        putColumn(evaluations);
+        putColumn(bestFitness);
+        putColumn(averageFitness);
+        putColumn(bestSize);
+        putColumn(averageSize);
+        putColumn(paretoSetSize);
+        putColumn(distinctSemantics);
+        putColumn(meanDistance);
+        putColumn(meanEntropy);
+        count = 0;
+    }
+
+    /*
+     * Puts the filled part of a column into the buffer
+     */
+    private void putColumn(int[] column) {
+        buffer.asIntBuffer().put(column, 0, count);
+        buffer.position(buffer.position() + 4*count);
+    }
+
+    /*
+     * Puts the filled part of a column into the buffer
+     */
+    private void putColumn(long[] column) {
+        buffer.asLongBuffer().put(column, 0, count);
+        buffer.position(buffer.position() + 8*count);
+    }
+
+    /*
+     * Puts the filled part of a column into the buffer
+     */
+    private void putColumn(double[] column) {
+        buffer.asDoubleBuffer().put(column, 0, count);
+        buffer.position(buffer.position() + 8*count);
+    }
+
+    /*
+     * Puts a string as its length in bytes followed by its UTF-8 encoding
+     */
+    private void putString(String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+}
@@ -1,22 +1,30 @@
 package mogp;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Set;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.HashMap;
-import java.util.List;
-import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.Map.Entry;
-import java.util.Collections;
+import java.util.Random;
 
 /**
  * DominantionMaintenance - maintenance approach using domination.
  * 
  * @author Jonathan Fieldsend 
- * @version 1.1
+ * @version 1.6
  */
 public class DominationMaintenance extends StandardMaintenance
 {
-    final Set<ArraySolution> nondominatedSet = new HashSet<>();
-    final Set<ArraySolution> dominatedSet = new HashSet<>();
+    final Set<ArraySolution> nondominatedSet = new LinkedHashSet<>();
+    final IndexedSet dominatedSet = new IndexedSet();
+    private final IdentityHashMap<ArraySolution,Integer> keys = new IdentityHashMap<>(); // key of each member of the search population, as last indexed
+    private int replacedKey = -1; // key whose member negativeTournamentKey last removed, and whose replacement is not yet indexed
+    private static final Metrics.Timer UPDATE_TIMER = Metrics.timer("maintenance.updateParetoSet");
+    private static final Metrics.Timer SORT_TIMER = Metrics.timer("maintenance.nondominatedSort");
+    private final NondominatedSort sort; // ranks the dominated set under ranked truncation
      
     /**
      * Constructor of maintenance object
@@ -27,6 +35,7 @@ public class DominationMaintenance extends StandardMaintenance
      */
     DominationMaintenance(Problem problem, Parameters parameters, MinimisationType type) {
         super(problem, parameters,type);  
+        sort = new NondominatedSort(type);
     }
 
     /**
@@ -45,15 +54,8 @@ public class DominationMaintenance extends StandardMaintenance
         
         for (int i = 1; i < parameters.TOURNAMENT_SIZE; i ++ ) {
             competitor = sampleRandomExcludingElite();
-            if ( competitor.getSumOfTestsFailed() > worst.getSumOfTestsFailed()  ) {
+            if (isWorse(competitor, worst))
                 worst = competitor;
-            } else if (type.equals(MinimisationType.PARSIMONIOUS)) {
-                if (competitor.getSumOfTestsFailed() == worst.getSumOfTestsFailed() ) {
-                    if (competitor.size() > worst.size()){
-                        worst = competitor;
-                    }
-                }
-            }
         }
         dominatedSet.remove(worst);
         return worst;
@@ -65,9 +67,13 @@ public class DominationMaintenance extends StandardMaintenance
     @Override
     public int negativeTournamentKey(HashMap<Integer, ArraySolution> pop) {
         //System.out.println(maintainedSetsTotalSize());
+        if (replacedKey >= 0) // the child evaluated since has taken the key (or the member removed was reinstated)
+            keys.put(pop.get(replacedKey), replacedKey);
         if (getParetoSetSize() >= parameters.POPULATION_SIZE){
             int i =  super.negativeTournamentKey(pop);
             nondominatedSet.remove(pop.get(i));
+            keys.remove(pop.get(i));
+            replacedKey = i;
             return i;
         } 
         int worst = sampleRandomIndexExcludingElite(pop), competitor;
@@ -85,6 +91,8 @@ public class DominationMaintenance extends StandardMaintenance
             }
         }
         dominatedSet.remove(pop.get(worst));
+        keys.remove(pop.get(worst));
+        replacedKey = worst;
         return worst;
     }
 
@@ -92,8 +100,16 @@ public class DominationMaintenance extends StandardMaintenance
      * @InheritDoc
      */
     @Override
-    public void evaluateFitness(HashMap<Integer, ArraySolution> pop, ArraySolution s) {
-        super.evaluateFitness(pop,s);
+    boolean isRacing() {
+        return false; // domination requires complete test vectors
+    }
+    
+    /**
+     * @InheritDoc
+     */
+    @Override
+    void recordFitness(HashMap<Integer, ArraySolution> pop, ArraySolution s, long[] results, int failed) {
+        super.recordFitness(pop, s, results, failed);
         updateParetoSet(pop,s);
         //System.out.println(maintainedSetsTotalSize());
     }
@@ -104,15 +120,13 @@ public class DominationMaintenance extends StandardMaintenance
      * solution at index has changed
      */
     private void updateParetoSet(HashMap<Integer, ArraySolution> pop, ArraySolution s){
-        Timing.setStartTime(); // put in to track time spent in update
+        long start = UPDATE_TIMER.start(); // put in to track time spent in update
         if (!setWeakDominates(s)){
             addToParetoSet(s);
         } else {
             dominatedSet.add(s);
         }
-        Timing.setEndTime();
-        Timing.updateAccruedTime();
-        Timing.incrementCalls();
+        UPDATE_TIMER.stop(start);
     }
 
     /*
@@ -132,7 +146,9 @@ public class DominationMaintenance extends StandardMaintenance
     }
 
     private void addToParetoSet(ArraySolution s) {
-        Set<ArraySolution> remove = new HashSet<>();
+        ArchiveInsertionEvent event = new ArchiveInsertionEvent();
+        event.begin();
+        Set<ArraySolution> remove = new LinkedHashSet<>();
         for (ArraySolution i : nondominatedSet)  // mark any now dominated in set
             if (weakDominates( s.getTestsPassed(),  i.getTestsPassed() ))
                 remove.add(i); // mark i for removal
@@ -142,6 +158,13 @@ public class DominationMaintenance extends StandardMaintenance
         dominatedSet.addAll(remove);
         // add new entrant to Pareto set
         nondominatedSet.add(s);
+        if (event.shouldCommit()) {
+            event.fitness = s.getSumOfTestsFailed();
+            event.treeSize = s.size();
+            event.removed = remove.size();
+            event.archiveSize = nondominatedSet.size();
+            event.commit();
+        }
     }
 
     private boolean weakDominates(boolean[] a, boolean[] b, int lengthA, int lengthB){
@@ -165,35 +188,29 @@ public class DominationMaintenance extends StandardMaintenance
         return true;
     }
 
+    /*
+     * Returns the key in pop of a member of the dominated set drawn uniformly at random
+     */
     private int sampleRandomIndexExcludingElite(HashMap<Integer, ArraySolution> pop) {
-        int index = RandomNumberGenerator.getRandom().nextInt(dominatedSet.size());
-        int i = 0;
-        
-        ArraySolution solution = null;
-        for (ArraySolution a : dominatedSet) {
-            if (i == index){
-                solution = a;
-                break;
-            }
-            i++;
-        }
-        int sampleIndex = -1;
-        // now find the corresponding index of the solutio in pop
-        for (Entry<Integer, ArraySolution> e : pop.entrySet()){
-            if (e.getValue() == solution){
-                sampleIndex = e.getKey();
-                break;
-            }
+        ArraySolution solution = sampleRandomExcludingElite();
+        Integer key = keys.get(solution);
+        if ((key == null) || (pop.get(key) != solution)) { // pop has changed other than by replacing the members negativeTournamentKey removed
+            keys.clear();
+            for (Entry<Integer, ArraySolution> e : pop.entrySet())
+                keys.put(e.getValue(), e.getKey());
+            replacedKey = -1;
+            key = keys.get(solution);
+            if (key == null)
+                throw new IllegalStateException("Member of the dominated set is not in the search population");
         }
-        if (sampleIndex==-1)
-            System.out.println("err in samp rand exc elite");
-        return sampleIndex;
+        return key;
     }
 
+    /*
+     * Returns a member of the dominated set drawn uniformly at random
+     */
     private ArraySolution sampleRandomExcludingElite() {
-        List<ArraySolution> list  = new ArrayList<>(dominatedSet);
-        Collections.shuffle(list);
-        return list.get(0);
+        return dominatedSet.get(RandomNumberGenerator.getRandom().nextInt(dominatedSet.size()));
     }
 
     /**
@@ -201,14 +218,16 @@ public class DominationMaintenance extends StandardMaintenance
      */
     @Override
     public void generateNextSearchPopulation(HashMap<Integer, ArraySolution> pop, HashMap<Integer, ArraySolution> children) {
-        Set<ArraySolution> setOfBestSolutions = new HashSet<>();
+        Set<ArraySolution> setOfBestSolutions = new LinkedHashSet<>();
         HashMap<Integer, ArraySolution> combinedPop = new HashMap<>(pop); 
         combinedPop.putAll(children);
         // preserve nondominated where possible, and remove via negative 
         // tournament selection
         if (nondominatedSet.size() <= pop.size() ){ // can preserve all non dominated
-            while (maintainedSetsTotalSize() > pop.size())
+            // negativeTournament removes from a Pareto set as large as the population
+            while ((maintainedSetsTotalSize() > pop.size()) && (getParetoSetSize() >= parameters.POPULATION_SIZE))
                 negativeTournament(combinedPop);
+            truncateDominatedSet(pop.size() - nondominatedSet.size());
             setOfBestSolutions.addAll(dominatedSet);
         } else { // have to remove from dominated
             dominatedSet.clear();
@@ -226,6 +245,100 @@ public class DominationMaintenance extends StandardMaintenance
         }
         assert(maintainedSetsTotalSize() == pop.size()) : "Internal maintained sets do not match search population size after truncation";
     }
+
+    /*
+     * Removes members from the dominated set until size remain. Under ranked truncation
+     * the dominated set is sorted into Pareto ranks, the members of whole ranks are kept
+     * best rank first while they fit, and members of later ranks removed, so only the
+     * rank which does not fit is truncated by negative tournaments. Otherwise the whole
+     * dominated set is truncated by negative tournaments, as by negativeTournament.
+     */
+    private void truncateDominatedSet(int size) {
+        ArraySolution[] members = dominatedSet.toArray(new ArraySolution[dominatedSet.size()]);
+        if (parameters.RANKED_TRUNCATION && (members.length > size)) {
+            long start = SORT_TIMER.start();
+            int[] ranks = sort.rank(members);
+            SORT_TIMER.stop(start);
+            int[] rankSizes = new int[sort.getNumberOfFronts()];
+            for (int r : ranks)
+                rankSizes[r]++;
+            int truncated = 0; // rank which does not fit
+            while (rankSizes[truncated] <= size)
+                size -= rankSizes[truncated++];
+            ArraySolution[] rank = new ArraySolution[rankSizes[truncated]];
+            for (int i=0, j=0; i<members.length; i++) {
+                if (ranks[i] == truncated)
+                    rank[j++] = members[i];
+                else if (ranks[i] > truncated)
+                    dominatedSet.remove(members[i]);
+            }
+            members = rank;
+        }
+        removeByNegativeTournaments(members, size);
+    }
+
+    /*
+     * Removes members from the dominated set by negative tournaments between the given
+     * members, as negativeTournament does, until size of them remain, in a single pass.
+     * Competitors are drawn as indices into the members not yet removed, and each loser
+     * is overwritten by the last of them, so a removal takes time proportional to the
+     * tournament size rather than to the number of members.
+     */
+    private void removeByNegativeTournaments(ArraySolution[] members, int size) {
+        Random random = RandomNumberGenerator.getRandom();
+        for (int remaining=members.length; remaining>size; remaining--) {
+            int worst = random.nextInt(remaining);
+            for (int i=1; i<parameters.TOURNAMENT_SIZE; i++) {
+                int competitor = random.nextInt(remaining);
+                if (isWorse(members[competitor], members[worst]))
+                    worst = competitor;
+            }
+            dominatedSet.remove(members[worst]);
+            members[worst] = members[remaining-1];
+        }
+    }
+
+    /*
+     * Returns true if a is worse than b, failing more tests, or under parsimonious
+     * minimisation failing as many and being larger
+     */
+    private boolean isWorse(ArraySolution a, ArraySolution b) {
+        if (a.getSumOfTestsFailed() != b.getSumOfTestsFailed())
+            return a.getSumOfTestsFailed() > b.getSumOfTestsFailed();
+        return type.equals(MinimisationType.PARSIMONIOUS) && (a.size() > b.size());
+    }
+    
+    /**
+     * @InheritDoc
+     */
+    @Override
+    void clear() {
+        super.clear();
+        nondominatedSet.clear();
+        dominatedSet.clear();
+    }
+    
+    /**
+     * @InheritDoc
+     */
+    @Override
+    public void writeState(Checkpoint checkpoint) {
+        super.writeState(checkpoint);
+        checkpoint.writeSolutions(nondominatedSet);
+        checkpoint.writeSolutions(dominatedSet);
+    }
+    
+    /**
+     * @InheritDoc
+     */
+    @Override
+    public void readState(Checkpoint checkpoint) {
+        super.readState(checkpoint);
+        nondominatedSet.clear();
+        checkpoint.readSolutions(nondominatedSet);
+        dominatedSet.clear();
+        checkpoint.readSolutions(dominatedSet);
+    }
     
     /**
      * Gets the number of non-dominated members in the search population
@@ -239,4 +352,68 @@ public class DominationMaintenance extends StandardMaintenance
     private int maintainedSetsTotalSize() {
         return nondominatedSet.size() + dominatedSet.size();
     }
+
+    /*
+     * Set of solutions held in an array, so that a member is drawn at random in constant
+     * time. A member is removed by moving the last member into its place, so members are
+     * iterated in the order they were added only until one is removed.
+     */
+    static class IndexedSet extends AbstractSet<ArraySolution>
+    {
+        private final ArrayList<ArraySolution> members = new ArrayList<>();
+        private final IdentityHashMap<ArraySolution,Integer> positions = new IdentityHashMap<>(); // index of each member in members
+
+        @Override
+        public boolean add(ArraySolution s) {
+            if (positions.containsKey(s))
+                return false;
+            positions.put(s, members.size());
+            members.add(s);
+            return true;
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            Integer position = positions.remove(o);
+            if (position == null)
+                return false;
+            ArraySolution last = members.remove(members.size()-1);
+            if (last != o) {
+                members.set(position, last);
+                positions.put(last, position);
+            }
+            return true;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return positions.containsKey(o);
+        }
+
+        @Override
+        public void clear() {
+            members.clear();
+            positions.clear();
+        }
+
+        @Override
+        public int size() {
+            return members.size();
+        }
+
+        @Override
+        public Iterator<ArraySolution> iterator() {
+            return Collections.unmodifiableList(members).iterator();
+        }
+
+        /**
+         * Returns the member at index i of the array
+         *
+         * @param i index of the member
+         * @return member at i
+         */
+        ArraySolution get(int i) {
+            return members.get(i);
+        }
+    }
 }
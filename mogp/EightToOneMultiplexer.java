@@ -6,7 +6,7 @@ package mogp;
  * multiplexer problem class.
  * 
  * @author Jonathan Fieldsend
- * @version 1.0
+ * @version 1.1
  */
 class EightToOneMultiplexer extends Problem
 {
@@ -18,8 +18,8 @@ class EightToOneMultiplexer extends Problem
     {
         super.variableNumber = 11;
         super.fitnessCases = 2048;
-        super.inputs = new boolean[super.fitnessCases][super.variableNumber];
-        super.targets = new boolean[super.fitnessCases];
+        boolean[][] inputs = new boolean[super.fitnessCases][super.variableNumber];
+        boolean[] targets = new boolean[super.fitnessCases];
       
         int index = 0;
         for (int a1=0; a1<2; a1++) { // input 1
@@ -74,5 +74,6 @@ class EightToOneMultiplexer extends Problem
                 }
             }
         }
+        setCases(inputs, targets);
     }
 }
@@ -11,7 +11,7 @@ import java.util.Map.Entry;
  * maintained
  * 
  * @author Jonathan Fieldsend 
- * @version 1.0
+ * @version 1.1
  */
 public class EliteMaintenance extends StandardMaintenance
 {
@@ -73,8 +73,25 @@ public class EliteMaintenance extends StandardMaintenance
     }
     
     @Override
-    public void evaluateFitness(HashMap<Integer, ArraySolution> pop, ArraySolution s) {
-        super.evaluateFitness(pop,s);
+    void recordFitness(HashMap<Integer, ArraySolution> pop, ArraySolution s, long[] results, int failed) {
+        super.recordFitness(pop, s, results, failed); // abandoned races are not recorded, so not candidates
+        orderedSolutions.add(s);
+        needsSorting = true;
+    }
+    
+    @Override
+    int getRacingBound(ArraySolution toReplace) {
+        if (toReplace != null)
+            return super.getRacingBound(toReplace);
+        // generational, so a child is only of use if it can make the truncated population
+        if (orderedSolutions.size() < parameters.POPULATION_SIZE)
+            return Integer.MAX_VALUE;
+        sortIfRequired();
+        return orderedSolutions.get(parameters.POPULATION_SIZE-1).getSumOfTestsFailed();
+    }
+    
+    @Override
+    void reinstate(ArraySolution s) {
         orderedSolutions.add(s);
         needsSorting = true;
     }
@@ -125,6 +142,28 @@ public class EliteMaintenance extends StandardMaintenance
             pop.put(i,orderedSolutions.get(i));
         assert(sanityCheck());
     }
+    @Override
+    void clear() {
+        super.clear();
+        orderedSolutions.clear();
+        needsSorting = true;
+    }
+    
+    @Override
+    public void writeState(Checkpoint checkpoint) {
+        super.writeState(checkpoint);
+        checkpoint.writeSolutions(orderedSolutions);
+        checkpoint.writeBoolean(needsSorting);
+    }
+    
+    @Override
+    public void readState(Checkpoint checkpoint) {
+        super.readState(checkpoint);
+        orderedSolutions.clear();
+        checkpoint.readSolutions(orderedSolutions);
+        needsSorting = checkpoint.readBoolean();
+    }
+    
     private boolean sanityCheck(){
         for (int i=0; i<orderedSolutions.size(); i++)
             for (int j=0; j<orderedSolutions.size(); j++)
@@ -4,9 +4,9 @@ package mogp;
  * EvenNParity represents an even parity problem of arbitary size.
  * 
  * @author Jonathan Fieldsend 
- * @version 1.0
+ * @version 1.1
  */
-public class EvenNParity extends Problem
+public class EvenNParity extends ImplicitProblem
 {
     /**
      * Constructs an even parity problem (test cases and targets) with
@@ -16,32 +16,18 @@ public class EvenNParity extends Problem
      */
     public EvenNParity(int bits)
     {
-        super.variableNumber = bits;
-        int temp = 2;
-        for (int i=1; i<bits; i++)
-            temp *= 2 ;
-        super.fitnessCases = temp;
-        System.out.println("Number of test probelms: " + fitnessCases);
-        super.inputs = new boolean[super.fitnessCases][super.variableNumber];
-        super.targets = new boolean[super.fitnessCases];
-        
-        // now fill inputs and outputs
-        for (int i=0; i< super.fitnessCases; i++) {
-            String binaryRep = Integer.toString(i, 2);
-            char[] characterArray = binaryRep.toCharArray();
-            int numTrue = 0;
-            for (int j=0; j<characterArray.length; j++) {
-                if (characterArray[j]=='0') {
-                    inputs[i][j] = false; // not required, but clearer
-                } else {
-                    inputs[i][j] = true;
-                    numTrue++;
-                }
-            }
-            if (numTrue%2 == 0) // if even
-                   targets[i] = true;
-               else
-                   targets[i] = false; // not required, but clearer
-        }
+        super(bits);
+        generateTargets();
+    }
+
+    /**
+     * @InheritDoc
+     */
+    @Override
+    long targetWord(long[] values) {
+        long odd = 0L;
+        for (int v=0; v<variableNumber; v++)
+            odd ^= values[v];
+        return ~odd; // true if even number of inputs true
     }
 }
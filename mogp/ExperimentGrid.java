@@ -0,0 +1,464 @@
+package mogp;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ExperimentGrid runs a sweep of experiments within a single process: a fold, as run by
+ * BooleanGP and GenerationalBooleanGP, for every combination of maintenance type, problem,
+ * population size, fold number and engine of a grid. Each fold writes the same results,
+ * metrics and checkpoint files as when run by its engine's main method, so a sweep pays
+ * for JVM start up and JIT warm up once, rather than once per fold.
+ *
+ * Folds are run as tasks of a work stealing pool, queued longest expected first so that
+ * the heaviest are not left running alone at the end of the sweep. The expected time of
+ * a fold is the mean time of the completed folds of its configuration, or otherwise an
+ * estimate from the tests run per evaluation and the relative cost of its maintenance
+ * regime, scaled by the times of the configurations which have completed folds. Each
+ * thread has its own random number generator, program simplifier and metrics, and the
+ * console output of each fold is appended to its _log.txt file.
+ *
+ * Each completed fold is appended to a ledger file, with the evaluations it took to solve
+ * its problem (one more than its budget if not solved) and its time in milli seconds. Folds in the ledger are
+ * skipped, so a sweep which is stopped is continued by running it again, and with
+ * mogp.checkpoint set, the folds which were running resume from their checkpoints. Once
+ * every fold of a steady state configuration is in the ledger, its timing_..._evals.txt
+ * file is written, as by BooleanGP.
+ *
+ * Arguments are given as name=value, on the command line or one per line of a grid spec
+ * file (in which lines starting with # are ignored), those on the command line taking
+ * precedence:
+ * <p>
+ * spec, grid spec file to read (default none);
+ * <p>
+ * types, comma separated maintenance types (default B,BP,F,FP,L,LP,S,SP,D,DP);
+ * <p>
+ * problems, comma separated problem numbers or files, as used by BooleanGP (default 2,4,8);
+ * <p>
+ * populations, comma separated population sizes (default 100);
+ * <p>
+ * folds, comma separated fold numbers or ranges of them, e.g. 1-30 (default 1-5);
+ * <p>
+ * engine, steady, generational or both (default steady);
+ * <p>
+ * threads, number of folds run at once (default the number of processors);
+ * <p>
+ * ledger, file of completed folds (default experiment_ledger.txt);
+ * <p>
+ * maxTreeElements, maximum tree size (default 10000).
+ * <p>
+ * Exits with status 1 if any fold fails, the failure being reported on the console.
+ *
+ * The running of folds is also used by WorkQueue, to share the folds of a grid between
+ * processes.
+ *
+ * @author Jonathan Fieldsend
+ * @version 1.4
+ */
+class ExperimentGrid
+{
+    // rough relative costs of an evaluation under each maintenance regime, used to order
+    // folds of configurations with no completed folds
+    private static final HashMap<String,Double> REGIME_COSTS = new HashMap<>();
+    static {
+        for (String type : new String[] {"R", "B", "BP", "E", "EP"})
+            REGIME_COSTS.put(type, 1.0);
+        for (String type : new String[] {"F", "FP", "L", "LP"})
+            REGIME_COSTS.put(type, 2.0);
+        REGIME_COSTS.put("D", 3.0);
+        REGIME_COSTS.put("DP", 3.0);
+        REGIME_COSTS.put("S", 4.0);
+        REGIME_COSTS.put("SP", 4.0);
+    }
+
+    private final Path ledger; // file of completed folds, null if not kept
+    private final HashMap<String,String[]> completed = new HashMap<>(); // ledger entries of completed folds, by fold key
+    private final HashMap<String,Problem> problems = new HashMap<>(); // problems are immutable, so built once and shared by all folds
+    private final PrintStream console; // console, as System.out is routed to the log of each fold
+    private final ThreadLocal<OutputStream> foldOutput = new ThreadLocal<>(); // log of the fold each thread is running, null if none
+
+    /*
+     * Fold of the grid
+     */
+    static class Fold {
+        String engine, type, problem;
+        int population, fold, maxTreeElements;
+        double expectedTime; // expected time, or a relative estimate of it, to order folds
+
+        /*
+         * Returns the key of the configuration of the fold, shared by all its fold numbers
+         */
+        String configuration() {
+            return engine + ", " + type + ", " + problem + ", " + population;
+        }
+
+        /*
+         * Returns the key of the fold in the ledger
+         */
+        String key() {
+            return configuration() + ", " + fold;
+        }
+
+        /*
+         * Returns the start of the names of the files written by the fold
+         */
+        String fileStem() {
+            return BooleanGP.foldFileStem(type, problem, population, fold, engine.equals("generational"));
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        HashMap<String,String> options = readOptions(args, 0);
+        int threads = Integer.parseInt(options.getOrDefault("threads", Integer.toString(Runtime.getRuntime().availableProcessors())));
+        ExperimentGrid grid = new ExperimentGrid(Paths.get(options.getOrDefault("ledger", "experiment_ledger.txt")));
+        List<Fold> folds = createFolds(options);
+        long start = System.nanoTime();
+        int failures = grid.run(folds, threads);
+        grid.writeTimings(folds);
+        System.out.println("total time: " + (System.nanoTime() - start)/1e6 + " milli seconds");
+        if (failures > 0) {
+            System.out.println(failures + " folds failed");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Returns the name=value options given as arguments from index first, along with
+     * those of the grid spec file named by any spec option, exiting if any is malformed
+     *
+     * @param args command line arguments
+     * @param first index of the first option
+     * @return options by name
+     */
+    static HashMap<String,String> readOptions(String[] args, int first) throws IOException {
+        HashMap<String,String> options = new HashMap<>();
+        for (int i=first; i<args.length; i++) {
+            int split = args[i].indexOf('=');
+            if (split < 0) {
+                System.out.println("Arguments must be given as name=value: " + args[i]);
+                System.exit(1);
+            }
+            options.put(args[i].substring(0, split), args[i].substring(split+1));
+        }
+        if (options.containsKey("spec")) {
+            for (String line : Files.readAllLines(Paths.get(options.get("spec")))) {
+                line = line.trim();
+                int split = line.indexOf('=');
+                if (line.isEmpty() || line.startsWith("#"))
+                    continue;
+                if (split < 0) {
+                    System.out.println("Grid spec lines must be given as name=value: " + line);
+                    System.exit(1);
+                }
+                options.putIfAbsent(line.substring(0, split).trim(), line.substring(split+1).trim());
+            }
+        }
+        return options;
+    }
+
+    /**
+     * Returns the folds of the grid given by the types, problems, populations, folds,
+     * engine and maxTreeElements options
+     *
+     * @param options options by name
+     * @return folds of the grid
+     */
+    static List<Fold> createFolds(HashMap<String,String> options) {
+        String[] types = options.getOrDefault("types", "B,BP,F,FP,L,LP,S,SP,D,DP").split(",");
+        String[] problemArguments = options.getOrDefault("problems", "2,4,8").split(",");
+        String[] populations = options.getOrDefault("populations", "100").split(",");
+        List<Integer> folds = parseFolds(options.getOrDefault("folds", "1-5"));
+        String engineOption = options.getOrDefault("engine", "steady");
+        String[] engines = engineOption.equals("both") ? new String[] {"steady", "generational"} : new String[] {engineOption};
+        int maxTreeElements = Integer.parseInt(options.getOrDefault("maxTreeElements", "10000"));
+        List<Fold> gridFolds = new ArrayList<>();
+        for (String engine : engines)
+            for (String problem : problemArguments)
+                for (String population : populations)
+                    for (String type : types)
+                        for (int fold : folds) {
+                            Fold f = new Fold();
+                            f.engine = engine.trim();
+                            f.type = type.trim();
+                            f.problem = problem.trim();
+                            f.population = Integer.parseInt(population.trim());
+                            f.fold = fold;
+                            f.maxTreeElements = maxTreeElements;
+                            gridFolds.add(f);
+                        }
+        return gridFolds;
+    }
+
+    /**
+     * Constructs a grid runner, reading the folds already completed from the ledger
+     *
+     * @param ledger ledger file, created if it does not exist, or null to keep no ledger
+     */
+    ExperimentGrid(Path ledger) throws IOException {
+        this.ledger = ledger;
+        console = System.out;
+        if (ledger == null)
+            return;
+        if (Files.exists(ledger)) {
+            for (String line : Files.readAllLines(ledger)) {
+                String[] fields = line.split(", ");
+                if (line.startsWith("#") || (fields.length != 7))
+                    continue; // header, or last line of a sweep stopped while writing it
+                completed.put(String.join(", ", Arrays.asList(fields).subList(0, 5)), fields);
+            }
+            // start on a new line, should the last line have been cut short
+            byte[] contents = Files.readAllBytes(ledger);
+            if ((contents.length > 0) && (contents[contents.length-1] != '\n'))
+                Files.write(ledger, new byte[] {'\n'}, StandardOpenOption.APPEND);
+        } else {
+            Files.write(ledger, "# engine, type, problem, population, fold, evaluations to solve, milli seconds\n".getBytes());
+        }
+    }
+
+    /**
+     * Runs the folds of a grid which are not in the ledger, longest expected first, on a
+     * work stealing pool of the given number of threads, returning once all have finished
+     *
+     * @param folds folds of the grid
+     * @param threads number of folds to run at once
+     * @return number of folds which failed
+     */
+    int run(List<Fold> folds, int threads) throws IOException {
+        List<Fold> remaining = new ArrayList<>();
+        for (Fold f : folds)
+            if (!completed.containsKey(f.key()))
+                remaining.add(f);
+        console.println((folds.size() - remaining.size()) + " of " + folds.size() + " folds already completed, running " + remaining.size() + " on " + threads + " threads");
+        estimateTimes(remaining);
+        remaining.sort(Comparator.comparingDouble((Fold f) -> f.expectedTime).reversed());
+
+        AtomicInteger finished = new AtomicInteger();
+        AtomicInteger failures = new AtomicInteger();
+        routeOutput();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            // submitted by this thread alone, so taken from the pool's queue in order
+            for (Fold f : remaining)
+                pool.execute(() -> {
+                    try {
+                        if (runFold(f) == -1)
+                            console.println("Fold stopped through its management interface: " + f.key());
+                        else
+                            console.println(String.format(Locale.ROOT, "%d/%d completed: %s", finished.incrementAndGet(), remaining.size(), f.key()));
+                    } catch (Exception e) {
+                        failures.incrementAndGet();
+                        console.println("Fold failed: " + f.key() + ": " + e);
+                    }
+                });
+            pool.shutdown();
+            while (!pool.awaitTermination(1, TimeUnit.MINUTES))
+                ;
+        } catch (InterruptedException e) {
+            pool.shutdownNow();
+            Thread.currentThread().interrupt();
+        } finally {
+            restoreOutput();
+        }
+        return failures.get();
+    }
+
+    /**
+     * Routes System.out to the log file of the fold the writing thread is running, or to
+     * the console for threads not running a fold
+     */
+    void routeOutput() {
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                target().write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int offset, int length) throws IOException {
+                target().write(b, offset, length);
+            }
+
+            @Override
+            public void flush() throws IOException {
+                target().flush();
+            }
+
+            private OutputStream target() {
+                OutputStream out = foldOutput.get();
+                return (out == null) ? console : out;
+            }
+        }, true));
+    }
+
+    /**
+     * Restores System.out to the console
+     */
+    void restoreOutput() {
+        System.setOut(console);
+    }
+
+    /**
+     * Runs a fold on the calling thread, with its console output written to its log file
+     * (once routeOutput is called) and its metrics kept apart from those of other threads,
+     * and appends it to the ledger, unless it was stopped through its management interface
+     *
+     * @param f fold to run
+     * @return evaluations taken to solve the problem, one more than the budget if not solved,
+     * -1 if stopped
+     */
+    int runFold(Fold f) throws IOException {
+        return runFold(f, null);
+    }
+
+    /**
+     * Runs a fold as runFold(f), holding the lease of a work queue task while its claimed
+     * file exists (see BooleanGP.runFold). A fold whose lease is taken throws 
+     * NoSuchFileException, once it notices. Its log is appended to, so a resumed fold
+     * continues the log of the run it resumes
+     *
+     * @param f fold to run
+     * @param lease claimed task file of the fold, null if not run from a work queue
+     * @return evaluations taken to solve the problem, one more than the budget if not solved,
+     * -1 if stopped
+     */
+    int runFold(Fold f, Path lease) throws IOException {
+        Problem problem = getProblem(f.problem);
+        long start = System.nanoTime();
+        int evals;
+        try (OutputStream log = new BufferedOutputStream(Files.newOutputStream(Paths.get(f.fileStem() + "_log.txt"), 
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND))) {
+            foldOutput.set(log);
+            Metrics.setThreadScoped(true);
+            evals = BooleanGP.runFold(f.type, problem, f.problem, f.population, f.maxTreeElements, f.fold, f.engine.equals("generational"), lease);
+        } finally {
+            foldOutput.remove();
+            Metrics.setThreadScoped(false);
+        }
+        if ((ledger != null) && (evals != -1)) {
+            String[] entry = (f.key() + ", " + evals + ", " + (System.nanoTime() - start)/1000000).split(", ");
+            synchronized (this) {
+                Files.write(ledger, (String.join(", ", entry) + "\n").getBytes(), StandardOpenOption.APPEND);
+                completed.put(f.key(), entry);
+            }
+        }
+        return evals;
+    }
+
+    /*
+     * Returns the problem of a problem argument, building it the first time it is used
+     */
+    private synchronized Problem getProblem(String problemArgument) throws IOException {
+        Problem problem = problems.get(problemArgument);
+        if (problem == null) {
+            problem = BooleanGP.createProblem(problemArgument);
+            problems.put(problemArgument, problem);
+        }
+        return problem;
+    }
+
+    /**
+     * Sets the expected time of each fold: the mean time of the completed folds of its
+     * configuration in the ledger, if any, or otherwise its relative cost (tests run per
+     * evaluation times the cost of its regime) scaled by the mean ratio of time to relative
+     * cost of the configurations which have completed folds
+     *
+     * @param folds folds to set the expected times of
+     */
+    void estimateTimes(List<Fold> folds) throws IOException {
+        HashMap<String,double[]> times = new HashMap<>(); // total time and number of completed folds of each configuration
+        for (String[] entry : completed.values()) {
+            double[] t = times.computeIfAbsent(String.join(", ", Arrays.asList(entry).subList(0, 4)), k -> new double[2]);
+            t[0] += Double.parseDouble(entry[6]);
+            t[1]++;
+        }
+        double totalTime = 0.0, totalCost = 0.0;
+        for (Fold f : folds) {
+            double[] t = times.get(f.configuration());
+            if (t != null) {
+                totalTime += t[0]/t[1];
+                totalCost += relativeCost(f);
+            }
+        }
+        double scale = (totalCost > 0.0) ? totalTime/totalCost : 1.0;
+        for (Fold f : folds) {
+            double[] t = times.get(f.configuration());
+            f.expectedTime = (t != null) ? t[0]/t[1] : scale*relativeCost(f);
+        }
+    }
+
+    /*
+     * Returns the relative cost of a fold, the tests run per evaluation times the cost of
+     * an evaluation under its maintenance regime
+     */
+    private double relativeCost(Fold f) throws IOException {
+        Problem problem = getProblem(f.problem);
+        double tests = problem.fitnessCases;
+        Parameters parameters = new Parameters(f.maxTreeElements, f.population, 1000000/f.population, 2, 0.05, 0.9);
+        if ((parameters.BATCH_SIZE > 0) && !f.type.equals("R"))
+            tests = Math.min(tests, (double) parameters.BATCH_SIZE*problem.outputNumber);
+        return tests*REGIME_COSTS.getOrDefault(f.type, 1.0);
+    }
+
+    /*
+     * Writes the timing_..._evals.txt file of each steady state configuration of the grid
+     * whose folds are all in the ledger, as written by BooleanGP
+     */
+    private void writeTimings(List<Fold> folds) throws IOException {
+        HashMap<String,List<Fold>> configurations = new HashMap<>();
+        for (Fold f : folds)
+            if (f.engine.equals("steady"))
+                configurations.computeIfAbsent(f.configuration(), k -> new ArrayList<>()).add(f);
+        for (List<Fold> configuration : configurations.values()) {
+            int[] evals = new int[50];
+            boolean complete = true;
+            for (Fold f : configuration) {
+                String[] entry = completed.get(f.key());
+                if (entry == null) {
+                    complete = false;
+                    break;
+                }
+                if (f.fold > evals.length)
+                    evals = Arrays.copyOf(evals, f.fold);
+                evals[f.fold-1] = Integer.parseInt(entry[5]);
+            }
+            Fold f = configuration.get(0);
+            if (complete)
+                Results.writeArray(evals, "timing_bool_gecco2015_type" + f.type + "_problem" + BooleanGP.problemName(f.problem) + "_pop" + f.population + "_evals.txt");
+        }
+    }
+
+    /*
+     * Parses a comma separated list of fold numbers and ranges of them, e.g. 1-5,8
+     */
+    private static List<Integer> parseFolds(String list) {
+        List<Integer> folds = new ArrayList<>();
+        for (String item : list.split(",")) {
+            item = item.trim();
+            int split = item.indexOf('-');
+            int first = Integer.parseInt((split < 0) ? item : item.substring(0, split).trim());
+            int last = (split < 0) ? first : Integer.parseInt(item.substring(split+1).trim());
+            if (first < 1) {
+                System.out.println("minimum fold number is 1: " + first);
+                System.exit(1);
+            }
+            for (int fold=first; fold<=last; fold++)
+                folds.add(fold);
+        }
+        return folds;
+    }
+}
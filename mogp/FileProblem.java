@@ -0,0 +1,479 @@
+package mogp;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+/**
+ * FileProblem is a problem whose test cases are loaded from a file, in one of three formats:
+ *
+ * a PLA truth table (a file ending in .pla), with .i and .o directives giving the number
+ * of inputs and outputs, followed by one line per cube of input characters (0, 1 or - for
+ * either) and an output character for each output (1 for true, 0 for false, or - or ~ for
+ * a cube to be skipped). A cube with - inputs gives a test case for every assignment of them.
+ * Every cube is read as fully specified test cases, so the file must list both the ON-set
+ * and the OFF-set, as in .type fr; other .type directives (e.g. the ON-set only f) are
+ * rejected, and a file without one is read as fr. Cubes are not checked for overlap, so a
+ * case covered by several cubes is a test case several times;
+ *
+ * a binary bit matrix, as written by write, starting with a header of magic number, version,
+ * number of variables, number of test cases and number of outputs, followed by the packed
+ * words of each input and then of the targets (interleaved by output as in Problem), all
+ * little-endian. The input columns are memory mapped read-only rather than copied, so load
+ * at once however large, and are shared through the page cache by every fold and every
+ * process running on the same file. Files of version 1, of a single output and without the
+ * number of outputs in the header, are also read;
+ *
+ * otherwise a CSV or bit matrix of observed cases, one test case per line, holding the
+ * inputs then the target as 0 or 1 characters, optionally separated by commas, semicolons
+ * or whitespace. A case of several outputs separates its inputs from its targets with |,
+ * e.g. 0,1,1|1,0. A first line holding anything else is taken to be a header and skipped,
+ * as are blank lines and lines starting with #.
+ *
+ * Text files are memory mapped a chunk at a time and read in a single pass, setting the bits
+ * of each test case directly into packed columns, so no object is allocated per line.
+ *
+ * Run as a program, converts a problem file (or problem number) to the binary format,
+ * which is the quickest to load.
+ *
+ * @author Jonathan Fieldsend
+ * @version 1.2
+ */
+class FileProblem extends Problem
+{
+    static final int MAGIC = 0x4D475042; // "MGPB"
+    static final int VERSION = 2;
+    private static final int HEADER_SIZE = 24; // bytes of the binary header, keeping the columns aligned
+    private static final int VERSION_1_HEADER_SIZE = 16; // bytes of the header of version 1, without the number of outputs
+    private static final int MAP_SIZE = 1 << 30; // largest chunk of a text file mapped at once
+    private static final int BLOCK_SIZE = 1 << 16; // bytes of a text file scanned for lines at once
+
+    final Path file; // file the problem was loaded from
+    private LongBuffer[] columns; // mapped input columns of a binary file, null if held in memory
+
+    // state of a text file being read
+    private int columnNumber; // number of 0/1 characters expected on a line (outputs of a PLA file), -1 until known
+    private int separatorColumn; // values before the | of each line of a CSV file, -1 if not separated
+    private int cases; // test cases read so far
+    private int lines; // lines read so far
+    private long fileSize; // bytes of the text file, from which the number of test cases is estimated
+    private long[][] inputWords; // packed inputs being filled, null until the first test case is read
+    private long[] packedTargets; // packed targets being filled, null until the first test case is read
+    private long[] rowWords; // values of up to 64 lines of a CSV file being packed, 64 columns to a word
+    private boolean headed; // true once the header line of a CSV file is skipped
+    private boolean ended; // true once the .e directive of a PLA file is read
+
+    public static void main(String[] args) throws IOException {
+        if (args.length<2){
+            System.out.println("Insufficient arguments, requires: problem (number or file) binary file to write");
+            System.exit(1);
+        }
+        Problem problem = BooleanGP.createProblem(args[0]);
+        write(problem, Paths.get(args[1]));
+        System.out.println("Wrote " + problem.getNumberOfCases() + " test cases of " + problem.variableNumber + " inputs" + ((problem.outputNumber > 1) ? " and " + problem.outputNumber + " outputs" : "") + " to " + args[1]);
+    }
+
+    /**
+     * Loads a problem from file, in the format denoted by its name and contents
+     *
+     * @param file file to load
+     */
+    FileProblem(Path file) throws IOException {
+        this.file = file;
+        long start = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (file.toString().toLowerCase().endsWith(".pla"))
+                readText(channel, true);
+            else if (isBinary(channel))
+                readBinary(channel);
+            else
+                readText(channel, false);
+        }
+        System.out.println("Loaded " + getNumberOfCases() + " test cases of " + variableNumber + " inputs" + ((outputNumber > 1) ? " and " + outputNumber + " outputs" : "") + " from " + file + " in " + (System.nanoTime() - start)/1e6 + " milli seconds");
+    }
+
+    /**
+     * @InheritDoc
+     */
+    @Override
+    void getInputWords(int word, long[] values) {
+        if (columns == null) {
+            super.getInputWords(word, values);
+            return;
+        }
+        for (int v=0; v<variableNumber; v++)
+            values[v] = columns[v].get(word);
+    }
+
+    /**
+     * Writes the test cases of a problem to a file in the binary format
+     *
+     * @param problem problem to write
+     * @param file file to write to
+     */
+    static void write(Problem problem, Path file) throws IOException {
+        int words = problem.getNumberOfWords();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(problem.variableNumber).putInt(problem.getNumberOfCases()).putInt(problem.outputNumber).putInt(0).flip();
+            channel.write(header, 0);
+            // each word of inputs is derived once, and scattered to the mapped columns
+            LongBuffer[] columns = new LongBuffer[problem.variableNumber];
+            for (int v=0; v<columns.length; v++)
+                columns[v] = map(channel, FileChannel.MapMode.READ_WRITE, HEADER_SIZE + 8L*v*words, words);
+            long[] values = new long[problem.variableNumber];
+            for (int w=0; w<words; w++) {
+                problem.getInputWords(w, values);
+                for (int v=0; v<problem.variableNumber; v++)
+                    columns[v].put(w, values[v] & problem.getCaseMask(w));
+            }
+            map(channel, FileChannel.MapMode.READ_WRITE, HEADER_SIZE + 8L*problem.variableNumber*words, problem.getNumberOfTestWords()).put(problem.targetWords, 0, problem.getNumberOfTestWords());
+        }
+    }
+
+    /*
+     * Returns true if the file starts with the magic number of the binary format
+     */
+    private static boolean isBinary(FileChannel channel) throws IOException {
+        if (channel.size() < VERSION_1_HEADER_SIZE)
+            return false;
+        return channel.map(FileChannel.MapMode.READ_ONLY, 0, 4).order(ByteOrder.LITTLE_ENDIAN).getInt() == MAGIC;
+    }
+
+    /*
+     * Maps the given number of words of a binary file, from a byte position
+     */
+    private static LongBuffer map(FileChannel channel, FileChannel.MapMode mode, long position, int words) throws IOException {
+        return channel.map(mode, position, 8L*words).order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+    }
+
+    /*
+     * Reads a binary file, mapping the input columns and copying the targets
+     */
+    private void readBinary(FileChannel channel) throws IOException {
+        ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, VERSION_1_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.getInt();
+        int version = header.getInt();
+        if ((version != 1) && (version != VERSION))
+            throw new IOException("Binary problem file of unknown version " + version + ": " + file);
+        variableNumber = header.getInt();
+        long caseNumber = header.getInt();
+        int headerSize = VERSION_1_HEADER_SIZE;
+        if (version > 1) {
+            headerSize = HEADER_SIZE;
+            if (channel.size() < headerSize)
+                throw new IOException("Binary problem file is truncated: " + file);
+            outputNumber = channel.map(FileChannel.MapMode.READ_ONLY, VERSION_1_HEADER_SIZE, 4).order(ByteOrder.LITTLE_ENDIAN).getInt();
+        }
+        if ((variableNumber < 1) || (caseNumber < 1) || (outputNumber < 1))
+            throw new IOException("Binary problem file with no inputs, test cases or outputs: " + file);
+        if (caseNumber*outputNumber > Integer.MAX_VALUE)
+            throw new IOException("Problem file holds more than " + Integer.MAX_VALUE + " tests: " + file);
+        fitnessCases = (int) caseNumber*outputNumber;
+        int words = getNumberOfWords();
+        if (channel.size() < headerSize + 8L*(variableNumber+outputNumber)*words)
+            throw new IOException("Binary problem file is truncated: " + file);
+        columns = new LongBuffer[variableNumber];
+        for (int v=0; v<variableNumber; v++)
+            columns[v] = map(channel, FileChannel.MapMode.READ_ONLY, headerSize + 8L*v*words, words);
+        targetWords = new long[getNumberOfTestWords()];
+        map(channel, FileChannel.MapMode.READ_ONLY, headerSize + 8L*variableNumber*words, targetWords.length).get(targetWords);
+    }
+
+    /*
+     * Reads a PLA or CSV file, packing its test cases into columns which are allocated
+     * from an estimate of the number of cases once the first is read, grown if it falls
+     * short, and trimmed to length at the end
+     */
+    private void readText(FileChannel channel, boolean pla) throws IOException {
+        columnNumber = -1;
+        if (pla)
+            variableNumber = -1;
+        forEachLine(channel, pla);
+        if (cases == 0)
+            throw new IOException("Problem file holds no test cases: " + file);
+        if (!pla && ((cases & 63) != 0))
+            packRows(cases >>> 6);
+        fitnessCases = cases*outputNumber;
+        int words = getNumberOfWords();
+        for (int v=0; v<variableNumber; v++)
+            inputWords[v] = Arrays.copyOf(inputWords[v], words);
+        setCaseWords(inputWords, Arrays.copyOf(packedTargets, getNumberOfTestWords()));
+        inputWords = null;
+        packedTargets = null;
+        rowWords = null;
+    }
+
+    /*
+     * Ensures the packed columns have room for the given number of test cases beyond those
+     * read, allocating them on the first test case read, with room for as many cases as lines
+     * of the given length would fill the file (the targets having a word for each output)
+     */
+    private void ensureCapacity(int number, int lineLength) {
+        long needed = (long) cases + number;
+        if (packedTargets == null) {
+            int words = (int) Math.min(Math.max(needed, fileSize/(lineLength+1))/64 + 1, Integer.MAX_VALUE/64/outputNumber + 1);
+            inputWords = new long[variableNumber][words];
+            packedTargets = new long[words*outputNumber];
+        } else if (needed > 64L*inputWords[0].length) {
+            int words = (int) Math.min(Math.max(needed/64 + 1, 2L*inputWords[0].length), Integer.MAX_VALUE/64/outputNumber + 1);
+            for (int v=0; v<variableNumber; v++)
+                inputWords[v] = Arrays.copyOf(inputWords[v], words);
+            packedTargets = Arrays.copyOf(packedTargets, words*outputNumber);
+        }
+    }
+
+    /*
+     * Passes each line of a text file to csvLine or plaLine, mapping the file a chunk at a
+     * time and copying it into a block scanned for lines, the incomplete line at the end of
+     * the block being carried over to the start of the next
+     */
+    private void forEachLine(FileChannel channel, boolean pla) throws IOException {
+        cases = 0;
+        lines = 0;
+        headed = false;
+        ended = false;
+        fileSize = channel.size();
+        byte[] block = new byte[BLOCK_SIZE];
+        int carried = 0; // bytes of an incomplete line at the start of the block
+        for (long position = 0; (position < fileSize) && !ended; position += MAP_SIZE) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAP_SIZE, fileSize - position));
+            while (buffer.hasRemaining() && !ended) {
+                if (carried == block.length) // line longer than the block
+                    block = Arrays.copyOf(block, 2*block.length);
+                int end = carried + Math.min(block.length - carried, buffer.remaining());
+                buffer.get(block, carried, end - carried);
+                int start = 0;
+                for (int i=carried; (i<end) && !ended; i++)
+                    if (block[i] == '\n') {
+                        line(block, start, i, pla);
+                        start = i+1;
+                    }
+                carried = end - start;
+                System.arraycopy(block, start, block, 0, carried);
+            }
+        }
+        if ((carried > 0) && !ended) // final line without a newline
+            line(block, 0, carried, pla);
+    }
+
+    /*
+     * Passes a line, from start inclusive to end exclusive, to csvLine or plaLine, skipping
+     * blank lines and comments
+     */
+    private void line(byte[] block, int start, int end, boolean pla) throws IOException {
+        lines++;
+        while ((start < end) && isSpace(block[start]))
+            start++;
+        while ((end > start) && isSpace(block[end-1]))
+            end--;
+        if ((start == end) || (block[start] == '#'))
+            return;
+        if (pla)
+            plaLine(block, start, end);
+        else
+            csvLine(block, start, end);
+    }
+
+    /*
+     * Reads a line of a CSV file. Its values are set as the bits of a row of rowWords, 64
+     * columns to a word, which are transposed into the packed columns once 64 rows are filled
+     */
+    private void csvLine(byte[] block, int start, int end) throws IOException {
+        int row = cases & 63;
+        int column = 0;
+        int separator = -1; // values before the |, if any
+        long bits = 0; // values of the current 64 columns
+        for (int i=start; i<end; i++) {
+            byte b = block[i];
+            if ((b == '0') || (b == '1')) {
+                bits |= (long) (b - '0') << column;
+                if ((++column & 63) == 0) {
+                    if (column <= columnNumber)
+                        rowWords[column - 64 + row] = bits;
+                    bits = 0;
+                }
+            } else if ((b == '|') && (separator == -1)) {
+                separator = column;
+            } else if ((b != ',') && (b != ';') && !isSpace(b)) {
+                if ((cases == 0) && !headed) {
+                    headed = true;
+                    return; // header line
+                }
+                throw new IOException("Unexpected character '" + (char) b + "' on line " + lines + " of " + file);
+            }
+        }
+        if (columnNumber == -1) { // first test case, so the columns are now known
+            if ((column < 2) || (separator == 0) || (separator == column))
+                throw new IOException("Line " + lines + " of " + file + " must hold at least one input and a target");
+            columnNumber = column;
+            separatorColumn = separator;
+            variableNumber = (separator == -1) ? column-1 : separator;
+            outputNumber = column - variableNumber;
+            rowWords = new long[64*((columnNumber + 63)/64)];
+            ensureCapacity(64, end-start);
+            csvLine(block, start, end);
+            return;
+        } else if (column != columnNumber) {
+            throw new IOException("Line " + lines + " of " + file + " holds " + column + " values rather than " + columnNumber);
+        } else if (separator != separatorColumn) {
+            throw new IOException("Line " + lines + " of " + file + " separates its inputs and targets differently to the first");
+        }
+        if ((column & 63) != 0)
+            rowWords[(column & ~63) + row] = bits;
+        checkCases(1);
+        cases++;
+        if ((cases & 63) == 0) {
+            ensureCapacity(64, end-start);
+            packRows((cases - 1) >>> 6);
+        }
+    }
+
+    /*
+     * Transposes the rows of rowWords filled so far into word w of the packed columns,
+     * clearing them for the next 64 rows
+     */
+    private void packRows(int w) {
+        for (int offset=0; offset<rowWords.length; offset+=64) {
+            transpose(rowWords, offset);
+            for (int k=0; (k<64) && (offset+k<columnNumber); k++) {
+                if (offset+k < variableNumber)
+                    inputWords[offset+k][w] = rowWords[offset+k];
+                else
+                    packedTargets[w*outputNumber + offset+k-variableNumber] = rowWords[offset+k];
+            }
+        }
+        Arrays.fill(rowWords, 0L);
+    }
+
+    /*
+     * Transposes the 64 by 64 bit matrix held in words offset to offset+63 of a in place,
+     * so that bit k of word r becomes bit r of word k, by swapping ever smaller blocks
+     */
+    private static void transpose(long[] a, int offset) {
+        long m = 0x00000000FFFFFFFFL; // bits of the lower halves of blocks of width j
+        for (int j=32; j!=0; j>>>=1, m^=(m << j)) {
+            for (int k=0; k<64; k=(k + j + 1) & ~j) {
+                long t = ((a[offset+k] >>> j) ^ a[offset+k+j]) & m;
+                a[offset+k+j] ^= t;
+                a[offset+k] ^= t << j;
+            }
+        }
+    }
+
+    /*
+     * Reads a line of a PLA file, either a directive or a cube, whose test cases are set if packing
+     */
+    private void plaLine(byte[] block, int start, int end) throws IOException {
+        if (block[start] == '.') {
+            plaDirective(block, start, end);
+            return;
+        }
+        if ((variableNumber == -1) || (columnNumber == -1))
+            throw new IOException("Cube before the .i and .o directives on line " + lines + " of " + file);
+        int column = 0; // characters of the cube read, inputs then outputs
+        int dontCareNumber = 0;
+        boolean skipped = false; // true if an output is - or ~
+        for (int i=start; i<end; i++) {
+            byte b = block[i];
+            if (isSpace(b) || (b == '|'))
+                continue;
+            if (column < variableNumber) {
+                if (b == '-')
+                    dontCareNumber++;
+                else if ((b != '0') && (b != '1'))
+                    throw new IOException("Unexpected input character '" + (char) b + "' on line " + lines + " of " + file);
+            } else if (column < variableNumber + columnNumber) {
+                if ((b == '-') || (b == '~'))
+                    skipped = true;
+                else if ((b != '0') && (b != '1'))
+                    throw new IOException("Unexpected output character '" + (char) b + "' on line " + lines + " of " + file);
+            }
+            column++;
+        }
+        if (column != variableNumber + columnNumber)
+            throw new IOException("Line " + lines + " of " + file + " holds " + column + " characters rather than " + (variableNumber + columnNumber));
+        if (skipped)
+            return;
+        if (dontCareNumber > 30)
+            throw new IOException("Cube with more than 30 - inputs on line " + lines + " of " + file);
+        int expansions = 1 << dontCareNumber;
+        checkCases(expansions);
+        ensureCapacity(expansions, end-start);
+        // the cube's fixed inputs, then each assignment of its - inputs, counting up from all false
+        for (int e=0; e<expansions; e++) {
+            int c = cases + e;
+            long bit = 1L << c;
+            int v = 0;
+            int d = dontCareNumber;
+            int i = start;
+            for (; v<variableNumber; i++) {
+                byte b = block[i];
+                if (isSpace(b) || (b == '|'))
+                    continue;
+                if ((b == '1') || ((b == '-') && (((e >>> --d) & 1) != 0)))
+                    inputWords[v][c >>> 6] |= bit;
+                v++;
+            }
+            for (int o=0; o<outputNumber; i++) {
+                byte b = block[i];
+                if (isSpace(b) || (b == '|'))
+                    continue;
+                if (b == '1')
+                    packedTargets[(c >>> 6)*outputNumber + o] |= bit;
+                o++;
+            }
+        }
+        cases += expansions;
+    }
+
+    /*
+     * Reads a PLA directive: .i and .o set the numbers of inputs and outputs, .e ends the
+     * file, .type must be fr and the rest (.p, .ilb, .ob, ...) are ignored
+     */
+    private void plaDirective(byte[] block, int start, int end) throws IOException {
+        String[] fields = new String(block, start, end-start, StandardCharsets.US_ASCII).split("\\s+");
+        try {
+            if (fields[0].equals(".i")) {
+                variableNumber = Integer.parseInt(fields[1]);
+                if (variableNumber < 1)
+                    throw new IOException("PLA file with no inputs: " + file);
+            } else if (fields[0].equals(".o")) {
+                columnNumber = Integer.parseInt(fields[1]);
+                if (columnNumber < 1)
+                    throw new IOException("PLA file with no outputs: " + file);
+                outputNumber = columnNumber;
+            } else if (fields[0].equals(".type")) {
+                if (!fields[1].equals("fr"))
+                    throw new IOException("PLA file of .type " + fields[1] + " rather than fr (cubes of both the ON-set and OFF-set) on line " 
+                        + lines + " of " + file);
+            } else if (fields[0].equals(".e") || fields[0].equals(".end")) {
+                ended = true;
+            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            throw new IOException("Malformed directive on line " + lines + " of " + file);
+        }
+    }
+
+    /*
+     * Checks a number of test cases may be added to those read, as tests (cases times outputs)
+     * are indexed by an int
+     */
+    private void checkCases(int number) throws IOException {
+        if (((long) cases + number)*outputNumber > Integer.MAX_VALUE)
+            throw new IOException("Problem file holds more than " + Integer.MAX_VALUE + " tests: " + file);
+    }
+
+    /*
+     * Returns true for the whitespace characters which may separate values
+     */
+    private static boolean isSpace(byte b) {
+        return (b == ' ') || (b == '\t') || (b == '\r');
+    }
+}
@@ -1,7 +1,7 @@
 package mogp;
 
 import java.util.Set;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.ArrayList;
@@ -11,7 +11,7 @@ import java.util.Collections;
  * a population when conducting tournament selection.
  * 
  * @author Jonathan Fieldsend 
- * @version 1.0
+ * @version 1.1
  */
 public class FitnessSharingMaintenance extends StandardMaintenance
 {
@@ -144,7 +144,7 @@ public class FitnessSharingMaintenance extends StandardMaintenance
         HashMap<Integer,ArraySolution> combinedPopulation = new HashMap<>(pop);
         combinedPopulation.putAll(children);
 
-        Set<ArraySolution> setOfBestSolutions = new HashSet<>();
+        Set<ArraySolution> setOfBestSolutions = new LinkedHashSet<>();
         setOfBestSolutions.add(bestFitnessSolution); // always take best
         while (setOfBestSolutions.size() < parameters.POPULATION_SIZE) {
             setOfBestSolutions.add(fitnessBinaryTournament(combinedPopulation, setOfBestSolutions));
@@ -165,6 +165,34 @@ public class FitnessSharingMaintenance extends StandardMaintenance
         }
     }
     
+    /**
+     * @InheritDoc
+     */
+    @Override
+    void clear() {
+        super.clear();
+        for (int i=0; i<problem.fitnessCases; i++ )
+            totalSolvedByPopulation[i] = 0; // reset tracked totals
+    }
+    
+    /**
+     * @InheritDoc
+     */
+    @Override
+    public void writeState(Checkpoint checkpoint) {
+        super.writeState(checkpoint);
+        checkpoint.writeInts(totalSolvedByPopulation);
+    }
+    
+    /**
+     * @InheritDoc
+     */
+    @Override
+    public void readState(Checkpoint checkpoint) {
+        super.readState(checkpoint);
+        totalSolvedByPopulation = checkpoint.readInts();
+    }
+    
     private ArraySolution fitnessBinaryTournament(HashMap<Integer, ArraySolution> pop, Set<ArraySolution> exclude) {
         ArraySolution solution = getRandomParent(pop);
         while(exclude.contains(solution)) {
@@ -197,11 +225,19 @@ public class FitnessSharingMaintenance extends StandardMaintenance
      * @InheritDoc
      */
     @Override
-    public void evaluateFitness(HashMap<Integer, ArraySolution> pop, ArraySolution s) {
-        super.evaluateFitness(pop,s);
-        boolean[] results = s.getTestsPassed();
+    boolean isRacing() {
+        return false; // shared fitness requires complete test vectors
+    }
+    
+    /**
+     * @InheritDoc
+     */
+    @Override
+    void recordFitness(HashMap<Integer, ArraySolution> pop, ArraySolution s, long[] results, int failed) {
+        super.recordFitness(pop, s, results, failed);
+        boolean[] passed = s.getTestsPassed();
         for (int i=0; i<problem.fitnessCases; i++ )
-            if (results[i])
+            if (passed[i])
                 totalSolvedByPopulation[i]++;
         
     }
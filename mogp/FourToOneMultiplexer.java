@@ -6,7 +6,7 @@ package mogp;
  * multiplexer problem class.
  * 
  * @author Jonathan Fieldsend
- * @version 1.0
+ * @version 1.1
  */
 class FourToOneMultiplexer extends Problem
 {
@@ -18,8 +18,8 @@ class FourToOneMultiplexer extends Problem
     {
         super.variableNumber = 6;
         super.fitnessCases = 64;
-        super.inputs = new boolean[super.fitnessCases][super.variableNumber];
-        super.targets = new boolean[super.fitnessCases];
+        boolean[][] inputs = new boolean[super.fitnessCases][super.variableNumber];
+        boolean[] targets = new boolean[super.fitnessCases];
       
         int index = 0;
         for (int d1=0; d1<2; d1++) { // input 1
@@ -50,6 +50,7 @@ class FourToOneMultiplexer extends Problem
                 }
             }
         }
+        setCases(inputs, targets);
     }
     
 }
@@ -10,7 +10,7 @@ import java.util.HashMap;
  * regime is using (e.g. for multi-objective variants)
  * 
  * @author Jonathan Fieldsend
- * @version 1.1
+ * @version 1.2
  */
 public interface GPMaintenance
 {
@@ -59,4 +59,27 @@ public interface GPMaintenance
      * @param children child population
      */
     void generateNextSearchPopulation(HashMap<Integer, ArraySolution> pop, HashMap<Integer, ArraySolution> children);  
+    
+    /**
+     * Re-evaluate every member of pop once the test cases have changed, e.g. when
+     * the mini-batch is rotated, rebuilding the internal maintenance state from them
+     * 
+     * @param pop search population
+     */
+    void reevaluate(HashMap<Integer, ArraySolution> pop);
+    
+    /**
+     * Write the complete internal state of the regime to a checkpoint
+     * 
+     * @param checkpoint checkpoint to write to
+     */
+    void writeState(Checkpoint checkpoint);
+    
+    /**
+     * Restore the internal state of the regime from a checkpoint, as written by
+     * writeState
+     * 
+     * @param checkpoint checkpoint to read from
+     */
+    void readState(Checkpoint checkpoint);
 }
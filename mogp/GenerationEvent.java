@@ -0,0 +1,58 @@
+package mogp;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event of a generation of a run -- a generation of GenerationalBooleanGP,
+ * or POPULATION_SIZE evaluations of the steady state BooleanGP. Its duration covers the
+ * generation, and it records the statistics tracked at its end.
+ *
+ * @author Jonathan Fieldsend
+ * @version 1.1
+ */
+@Name("mogp.Generation")
+@Label("Generation")
+@Category("MOGP")
+@Description("Generation of an evolutionary run")
+class GenerationEvent extends Event
+{
+    @Label("Evaluations")
+    @Description("Evaluations undertaken by the end of the generation")
+    int evaluations;
+
+    @Label("Best Fitness")
+    @Description("Fewest test cases failed by a solution so far")
+    int bestFitness;
+
+    @Label("Average Fitness")
+    @Description("Average number of test cases failed by the search population")
+    double averageFitness;
+
+    @Label("Best Size")
+    @Description("Size of the smallest solution with the best fitness")
+    int bestSize;
+
+    @Label("Average Size")
+    @Description("Average size of the search population")
+    double averageSize;
+
+    @Label("Archive Size")
+    @Description("Size of the Pareto set or map of the maintenance regime, -1 if not tracked")
+    int archiveSize;
+
+    @Label("Distinct Semantics")
+    @Description("Number of distinct vectors of tests passed in the search population")
+    int distinctSemantics;
+
+    @Label("Mean Pairwise Distance")
+    @Description("Mean Hamming distance between the tests passed of each pair of the search population")
+    double meanDistance;
+
+    @Label("Mean Case Entropy")
+    @Description("Mean over test cases of the entropy, in bits, of a test case being passed by the search population")
+    double meanEntropy;
+}
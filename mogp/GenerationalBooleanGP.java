@@ -3,6 +3,7 @@ package mogp;
 import java.util.Set;
 import java.util.HashSet;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -12,15 +13,17 @@ import java.io.IOException;
  * GenerationalBooleanGP uses a generational approach when evolving Boolean programs.
  * 
  * @author @author Jonathan Fieldsend 
- * @version 1.0
+ * @version 1.4
  */
 public class GenerationalBooleanGP extends BooleanGP
 {
     HashMap<Integer,ArraySolution> children = new HashMap<>(); // child population
+    private List<Integer> shuffledParentIndices; // object to hold indices of the new search population each generation
+    private int generation = 0; // number of generations completed
     
     public static void main(String[] args) throws IOException {
         if (args.length<5){
-            System.out.println("Insufficient arguments, requires: maintenence type (R, B, BP, F, FP, S, SP, D or DP) problem type (2, 4 or 8) population size (postive integer) fold start number fold end number");
+            System.out.println("Insufficient arguments, requires: maintenence type (R, B, BP, E, EP, F, FP, L, LP, S, SP, D or DP) problem (a problem number, e.g. 2, 4 or 8 for the multiplexers, or the path of a problem file) population size (postive integer) fold start number fold end number");
             System.exit(1);
         }
         int fold_start = Integer.parseInt(args[3]);
@@ -43,54 +46,12 @@ public class GenerationalBooleanGP extends BooleanGP
         if (args.length>=6) { // optional argument of max tree elements
             maxTreeElements = Integer.parseInt(args[5]);
         }
-        Timing.setTotalStartTime();
-        for (int i=fold_start; i<=fold_end; i++)   {
-            System.out.println("FOLD: " + i);
-            Problem problem = (args[1].equals("2")) ? new TwoToOneMultiplexer() :
-                          (args[1].equals("4")) ? new FourToOneMultiplexer() :
-                          (args[1].equals("8")) ? new EightToOneMultiplexer() :
-                          (Integer.parseInt(args[1])<=100) ? new EvenNParity(Integer.parseInt(args[1])-10) :
-                          (Integer.parseInt(args[1])<=200) ? new MajorityProblem(Integer.parseInt(args[1])-100) :
-                          new ComparisonProblem(Integer.parseInt(args[1])-200);
-                          
-            // Meta-parameters used in the GECCO paper           
-            Parameters parameters = new Parameters(maxTreeElements, popSize, 1000000/popSize, 2, 0.05, 0.9);
-            
-            
-            // dynamically construct the GPMaintence object. Would be nice to refactor this to a factory
-            // method at some point
-            GPMaintenance maintenance = (args[0].equals("R")) ? new StandardMaintenance(problem,parameters) :
-                                    (args[0].equals("B")) ? new StandardMaintenance(problem,parameters) :
-                                    (args[0].equals("BP")) ? new StandardMaintenance(problem,parameters, MinimisationType.PARSIMONIOUS) :
-                                    (args[0].equals("E")) ? new EliteMaintenance(problem,parameters, MinimisationType.STANDARD) :
-                                    (args[0].equals("EP")) ? new EliteMaintenance(problem,parameters, MinimisationType.PARSIMONIOUS) :
-                                    (args[0].equals("F")) ? new FitnessSharingMaintenance(problem,parameters) :
-                                    (args[0].equals("FP")) ? new FitnessSharingMaintenance(problem,parameters, MinimisationType.PARSIMONIOUS) :
-                                    (args[0].equals("L")) ? new LexicaseMaintenance(problem,parameters) :
-                                    (args[0].equals("LP")) ? new LexicaseMaintenance(problem,parameters, MinimisationType.PARSIMONIOUS) :
-                                    (args[0].equals("S")) ? new BestSolver(problem,parameters) :
-                                    (args[0].equals("SP")) ? new BestSolver(problem,parameters, MinimisationType.PARSIMONIOUS) :
-                                    (args[0].equals("D")) ? new DominationMaintenance(problem,parameters, MinimisationType.STANDARD) :
-                                    new DominationMaintenance(problem,parameters, MinimisationType.PARSIMONIOUS);
-                                         
-            Results results = new Results("bool_gecco2015_generational_type" + args[0] + "_problem" + args[1] + "_pop" + popSize + "_fold" + i + "_results.txt", (int) 1000000/popSize);
-            if (args[0].equals("R")){
-                RandomBooleanGP rgp = new RandomBooleanGP((long) i, problem, parameters, maintenance, results);
-                evals[i-1] = rgp.generateSolutions();
-                rgp.writeResultsFile();
-            }
-            else {
-                GenerationalBooleanGP gp = new GenerationalBooleanGP((long) i, problem, parameters, maintenance, results);
-                evals[i-1] = gp.evolve();
-                gp.writeResultsFile();
-            }
-            
-        }
-        Timing.setTotalEndTime();
-        Timing.updateTotalAccruedTime();
+        long totalStart = System.nanoTime();
+        Problem problem = createProblem(args[1]); // immutable, so shared by every fold
+        for (int i=fold_start; i<=fold_end; i++)
+            evals[i-1] = runFold(args[0], problem, args[1], popSize, maxTreeElements, i, true, null);
         //Results.writeArray(evals, "timing_bool_gecco2015_type" + args[0] + "_problem" + args[1] + "_pop" + popSize + "_evals.txt");
-        Timing.printInfo();
-        Timing.printTotalInfo();
+        System.out.println("total time: " + (System.nanoTime() - totalStart)/1e6 + " milli seconds");
     }
 
     
@@ -100,56 +61,73 @@ public class GenerationalBooleanGP extends BooleanGP
     }
     
     @Override
-    int evolve() {
-        int evaluationsToSolve=-1, counter =0;
-        //System.out.println("Evaluating initial random solutions: " + parameters.POPULATION_SIZE);
-        // only evaluate the search population component
-        for (int i=0; i<parameters.POPULATION_SIZE; i++) {
-            evaluate(searchPopulation.get(i));
-            counter++;
-            if (searchPopulation.get(i).getSumOfTestsFailed() < bestPopulationFitness){
-                bestPopulationFitness = searchPopulation.get(i).getSumOfTestsFailed();
-                bestSize = searchPopulation.get(i).size();
-            } else if (searchPopulation.get(i).getSumOfTestsFailed() == bestPopulationFitness){ // track smallest solver at best fitness level
-                if (searchPopulation.get(i).size() < bestSize)
+    int evolve() throws IOException {
+        budget = new RunBudget(parameters);
+        beginGenerationEvent();
+        if (generation == 0) { // not restored from a checkpoint
+            //System.out.println("Evaluating initial random solutions: " + parameters.POPULATION_SIZE);
+            // only evaluate the search population component
+            for (int i=0; i<parameters.POPULATION_SIZE; i++) {
+                evaluate(searchPopulation.get(i));
+                evaluations++;
+                if (searchPopulation.get(i).getSumOfTestsFailed() < bestPopulationFitness){
+                    bestPopulationFitness = searchPopulation.get(i).getSumOfTestsFailed();
                     bestSize = searchPopulation.get(i).size();
-            } 
-            
-            if ((bestPopulationFitness == 0) && (evaluationsToSolve == -1))
-               evaluationsToSolve = counter; 
-            
+                } else if (searchPopulation.get(i).getSumOfTestsFailed() == bestPopulationFitness){ // track smallest solver at best fitness level
+                    if (searchPopulation.get(i).size() < bestSize)
+                        bestSize = searchPopulation.get(i).size();
+                } 
+                
+                if ((bestPopulationFitness == 0) && (evaluationsToSolve == -1))
+                   evaluationsToSolve = evaluations; 
+                
+            }
+            //System.out.println("Initialised");
+            trackDiversity();
+            printStats(parameters.POPULATION_SIZE);
+    
+            if (bestPopulationFitness == 0)
+                return evaluationsToSolve;
+            if (budget.isUsedUp())
+                return expire(false);
+            shuffledParentIndices = new ArrayList<>(parameters.POPULATION_SIZE);
+            for (int j=0; j < parameters.POPULATION_SIZE; j++)
+                shuffledParentIndices.add(j);
+            generation = 1;
         }
-        //System.out.println("Initialised");
-        printStats(parameters.POPULATION_SIZE);
-
-        if (bestPopulationFitness == 0)
-            return evaluationsToSolve;
-        // object to hold indices of the new search population each generation    
-        List<Integer> shuffledParentIndices = new ArrayList<>(parameters.POPULATION_SIZE);
-        for (int j=0; j < parameters.POPULATION_SIZE; j++)
-            shuffledParentIndices.add(j);
             
-        for (int i=1; i<parameters.GENERATIONS; i++) {
+        for (int i=generation; i<parameters.GENERATIONS; i++) {
             
             // randomise pairings of parents to recombine this generation
-            Collections.shuffle(shuffledParentIndices); 
+            Collections.shuffle(shuffledParentIndices, RandomNumberGenerator.getRandom()); 
             //System.out.println("generation " + i);
             for (int j=0; j<parameters.POPULATION_SIZE; j++ ) {
                 //System.out.println("pop " + j);
             
                 int parentIndex = shuffledParentIndices.get(j);
                 ArraySolution parent1 = searchPopulation.get(parentIndex);
-                ArraySolution child = parent1.clone(); 
+                ArraySolution child;
+                long start;
                 if (RandomNumberGenerator.getRandom().nextDouble() < parameters.CROSSOVER_PROBABILITY ) {
                     parentIndex = shuffledParentIndices.get(parameters.POPULATION_SIZE-j-1);
                     ArraySolution parent2 = searchPopulation.get(parentIndex);
-                    child.crossover(parent2);
+                    start = CROSSOVER_TIMER.start();
+                    child = parent1.crossover(parent2, childArray(), childArray());
+                    CROSSOVER_TIMER.stop(start);
                 } else {
-                    child.mutation(parameters.MUTATION_PROBABILITY_PER_NODE);
+                    start = MUTATION_TIMER.start();
+                    child = parent1.mutation(parameters.MUTATION_PROBABILITY_PER_NODE, childArray(), childArray());
+                    MUTATION_TIMER.stop(start);
                 }
                 children.put(parameters.POPULATION_SIZE+j, child);
-                evaluate(child);
-                counter++;
+            }
+            // children are evaluated together, so the test cases are streamed once per generation
+            List<ArraySolution> batch = new ArrayList<>(parameters.POPULATION_SIZE);
+            for (int j=0; j<parameters.POPULATION_SIZE; j++)
+                batch.add(children.get(parameters.POPULATION_SIZE+j));
+            evaluate(batch);
+            for (ArraySolution child : batch) {
+                evaluations++;
                 if (child.getSumOfTestsFailed() < bestPopulationFitness){
                     bestPopulationFitness = child.getSumOfTestsFailed(); 
                     bestSize = child.size();
@@ -159,12 +137,30 @@ public class GenerationalBooleanGP extends BooleanGP
                         bestSize = child.size();
                 } 
                 if ((bestPopulationFitness == 0) && (evaluationsToSolve==-1))
-                    evaluationsToSolve = counter; 
-            
+                    evaluationsToSolve = evaluations; 
             }
             //System.out.println("Truncate");
             // now truncate via selection
+            List<ArraySolution> previous = new ArrayList<>(searchPopulation.values());
+            int parents = previous.size();
+            previous.addAll(children.values());
+            long start = NEXT_POPULATION_TIMER.start();
             maintenance.generateNextSearchPopulation(searchPopulation,children); 
+            NEXT_POPULATION_TIMER.stop(start);
+            // programs of the parents and children not taken into the next population are reused,
+            // and the diversity tracked is updated by the parents leaving and children joining
+            Set<ArraySolution> survivors = Collections.newSetFromMap(new IdentityHashMap<>());
+            survivors.addAll(searchPopulation.values());
+            for (int k=0; k<parents; k++)
+                if (!survivors.contains(previous.get(k)))
+                    diversity.remove(previous.get(k));
+            for (int k=0; k<previous.size(); k++) {
+                ArraySolution s = previous.get(k);
+                if (!survivors.contains(s))
+                    recycle(s);
+                else if (k >= parents)
+                    diversity.add(s);
+            }
             //System.out.println("Replace");
             
             
@@ -172,10 +168,51 @@ public class GenerationalBooleanGP extends BooleanGP
             printStats(i*searchPopulation.size());
             if (bestPopulationFitness == 0)
                 return evaluationsToSolve;
+            generation = i+1;
+            rotateBatch();
+            if (endGeneration())
+                return evaluationsToSolve;
+            if (budget.isUsedUp())
+                return expire(false);
         }
         if (evaluationsToSolve==-1)
             evaluationsToSolve = parameters.GENERATIONS*searchPopulation.size() +1;
         
         return evaluationsToSolve;
     }
+    
+    /*
+     * Method writes the state of the optimiser, including the generation reached and the
+     * order of the parent indices, which is carried from one generation's shuffle to the next. 
+     * The child population is not written, as it is replaced in full before it is next used.
+     */
+    @Override
+    void writeState(Checkpoint checkpoint) throws IOException {
+        super.writeState(checkpoint);
+        checkpoint.writeInt(generation);
+        checkpoint.writeInt(shuffledParentIndices.size());
+        for (Integer i : shuffledParentIndices)
+            checkpoint.writeInt(i);
+    }
+    
+    /*
+     * Method reads the state written by writeState
+     */
+    @Override
+    void readState(Checkpoint checkpoint) throws IOException {
+        super.readState(checkpoint);
+        generation = checkpoint.readInt();
+        int size = checkpoint.readInt();
+        shuffledParentIndices = new ArrayList<>(size);
+        for (int i=0; i<size; i++)
+            shuffledParentIndices.add(checkpoint.readInt());
+    }
+    
+    /*
+     * Method returns a description of how far the run has progressed, e.g. when resumed
+     */
+    @Override
+    String getProgress() {
+        return "generation " + generation;
+    }
 }
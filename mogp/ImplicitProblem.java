@@ -0,0 +1,84 @@
+package mogp;
+
+/**
+ * ImplicitProblem is the base of problems whose test cases are every assignment
+ * of their inputs, so need not be stored: the inputs of case i are derived from
+ * the bits of i when required, and only the targets are held, packed into words.
+ *
+ * The inputs of case i are the binary digits of i, most significant first, with
+ * any inputs beyond the number of digits false (as the cases were originally
+ * built from Integer.toString(i, 2)), so results are unchanged from problems
+ * which listed their cases explicitly.
+ *
+ * @author Jonathan Fieldsend
+ * @version 1.0
+ */
+abstract class ImplicitProblem extends Problem
+{
+    private static final int MAX_BITS = 30; // largest number of bits whose cases may be indexed by an int
+    // bit j of PATTERNS[p] is bit p of j, i.e. the low digits of the 64 cases in a word
+    private static final long[] PATTERNS = {0xAAAAAAAAAAAAAAAAL, 0xCCCCCCCCCCCCCCCCL, 0xF0F0F0F0F0F0F0F0L,
+        0xFF00FF00FF00FF00L, 0xFFFF0000FFFF0000L, 0xFFFFFFFF00000000L};
+    private final long[] firstWord; // inputs of the first word, whose cases have differing numbers of digits
+
+    /**
+     * Constructs a problem with every assignment of the specified number of bits as test cases
+     *
+     * @param bits number of bits of the problem
+     */
+    ImplicitProblem(int bits) {
+        if ((bits < 1) || (bits > MAX_BITS))
+            throw new IllegalArgumentException("Number of bits must be between 1 and " + MAX_BITS + ": " + bits);
+        super.variableNumber = bits;
+        super.fitnessCases = 1 << bits;
+        System.out.println("Number of test probelms: " + fitnessCases);
+        firstWord = new long[bits];
+        for (int c=1; c<Math.min(64, fitnessCases); c++) {
+            int digits = 32 - Integer.numberOfLeadingZeros(c);
+            for (int k=0; k<digits; k++)
+                if (((c >>> (digits-1-k)) & 1) != 0)
+                    firstWord[k] |= 1L << c;
+        }
+    }
+
+    /**
+     * Generates the packed targets, a word at a time from the packed inputs, using
+     * targetWord. Called at the end of subclass construction
+     */
+    void generateTargets() {
+        long[] values = new long[variableNumber];
+        targetWords = new long[getNumberOfWords()];
+        for (int w=0; w<targetWords.length; w++) {
+            getInputWords(w, values);
+            targetWords[w] = targetWord(values) & getCaseMask(w);
+        }
+    }
+
+    /**
+     * Returns the targets of the 64 test cases whose inputs are packed in values
+     *
+     * @param values inputs of the test cases, one word per variable
+     * @return targets packed into a word
+     */
+    abstract long targetWord(long[] values);
+
+    /**
+     * @InheritDoc
+     */
+    @Override
+    void getInputWords(int word, long[] values) {
+        if (word == 0) {
+            System.arraycopy(firstWord, 0, values, 0, variableNumber);
+            return;
+        }
+        // every case of a later word has the same number of digits, the low six of which
+        // vary within the word, while the remainder are those of the word index
+        int digits = 32 - Integer.numberOfLeadingZeros(word) + 6;
+        for (int k=0; k<variableNumber; k++) {
+            int p = digits-1-k; // digit of the case index giving input k
+            values[k] = (p < 0) ? 0L :
+                (p < 6) ? PATTERNS[p] :
+                (((word >>> (p-6)) & 1) != 0) ? -1L : 0L;
+        }
+    }
+}
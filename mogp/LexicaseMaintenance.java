@@ -5,6 +5,7 @@ import java.util.List;
 import java.util.ArrayList;
 import java.util.Set;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.HashMap;
 
 /**
@@ -63,7 +64,7 @@ public class LexicaseMaintenance extends FitnessSharingMaintenance
      * method returns the subset of set which pass the test at objectiveIndex
      */
     private Set<ArraySolution> solving(Set<ArraySolution> set, int objectiveIndex) {
-        Set<ArraySolution> solving = new HashSet<>();
+        Set<ArraySolution> solving = new LinkedHashSet<>();
         for (ArraySolution i : set) {
             if (i.getTestsPassed()[objectiveIndex]) {
                 solving.add(i);
@@ -85,8 +86,10 @@ public class LexicaseMaintenance extends FitnessSharingMaintenance
      */
     @Override
     public int negativeTournamentKey(HashMap<Integer, ArraySolution> pop) {
+        LexicaseSelectionEvent event = new LexicaseSelectionEvent();
+        event.begin();
         //System.out.println(listOfObjectives.size());
-        Collections.shuffle(listOfObjectives); // reorder objective list
+        Collections.shuffle(listOfObjectives, RandomNumberGenerator.getRandom()); // reorder objective list
         Set<Integer> populationSubset = new HashSet<>(pop.keySet());
         
         for (Integer i : listOfObjectives) { // process shuffled objectives in turn
@@ -106,7 +109,7 @@ public class LexicaseMaintenance extends FitnessSharingMaintenance
         // parameters.TOURNAMENT_SIZE random of these, and return one of them based on 
         // aggregate fitness
         List<Integer> randomReducedList = new ArrayList<>(populationSubset);
-        Collections.shuffle(randomReducedList);
+        Collections.shuffle(randomReducedList, RandomNumberGenerator.getRandom());
         int worst = randomReducedList.get(0);
 
         for (int i=1; i<parameters.TOURNAMENT_SIZE; i++){
@@ -129,15 +132,17 @@ public class LexicaseMaintenance extends FitnessSharingMaintenance
             if (pop.get(worst).getTestsPassed()[i])
                 totalSolvedByPopulation[i]--;
 
+        if (event.shouldCommit())
+            commit(event, true, pop.size(), populationSubset.size(), pop.get(worst));
         return worst;
     }
     
     @Override
     public void generateNextSearchPopulation(HashMap<Integer, ArraySolution> pop, HashMap<Integer, ArraySolution> children) {
-        Set<ArraySolution> setOfBest = new HashSet<>();
+        Set<ArraySolution> setOfBest = new LinkedHashSet<>();
         HashMap<Integer,ArraySolution> combinedPopulation = new HashMap<>(pop);
         combinedPopulation.putAll(children);
-        HashSet<ArraySolution> toConsider = new HashSet<>(combinedPopulation.values());
+        Set<ArraySolution> toConsider = new LinkedHashSet<>(combinedPopulation.values());
         while (setOfBest.size() < parameters.POPULATION_SIZE) {
             setOfBest.add(lexicaseSelection(toConsider, setOfBest));
         }
@@ -158,11 +163,38 @@ public class LexicaseMaintenance extends FitnessSharingMaintenance
         }
     }
 
+    /**
+     * @InheritDoc
+     */
+    @Override
+    public void writeState(Checkpoint checkpoint) {
+        super.writeState(checkpoint);
+        // objective order is carried from one shuffle to the next, so must be preserved
+        checkpoint.writeInt(listOfObjectives.size());
+        for (Integer i : listOfObjectives)
+            checkpoint.writeInt(i);
+    }
+    
+    /**
+     * @InheritDoc
+     */
+    @Override
+    public void readState(Checkpoint checkpoint) {
+        super.readState(checkpoint);
+        listOfObjectives.clear();
+        int size = checkpoint.readInt();
+        for (int i=0; i<size; i++)
+            listOfObjectives.add(checkpoint.readInt());
+    }
+    
     public ArraySolution lexicaseSelection(Set<ArraySolution> pop, Set<ArraySolution> toIgnore) {
         //System.out.println(listOfObjectives.size());
-        Collections.shuffle(listOfObjectives); // reorder objective list
-        Set<ArraySolution> populationSubset = new HashSet<>(pop);
+        Collections.shuffle(listOfObjectives, RandomNumberGenerator.getRandom()); // reorder objective list
+        LexicaseSelectionEvent event = new LexicaseSelectionEvent();
+        event.begin();
+        Set<ArraySolution> populationSubset = new LinkedHashSet<>(pop);
         populationSubset.removeAll(toIgnore); // don't consider those already preserved
+        int candidates = populationSubset.size();
         for (Integer i : listOfObjectives) { // process shuffled objectives in turn
             Set<ArraySolution> reduced = solving(populationSubset,i);
             //System.out.print(i+ ":" +reduced.size() + " ");
@@ -172,7 +204,7 @@ public class LexicaseMaintenance extends FitnessSharingMaintenance
         }
         
         List<ArraySolution> randomReducedList = new ArrayList<>(populationSubset);
-        Collections.shuffle(randomReducedList);
+        Collections.shuffle(randomReducedList, RandomNumberGenerator.getRandom());
         ArraySolution best = randomReducedList.get(0);
         if (type.equals(MinimisationType.PARSIMONIOUS)){
             for (int i=1; i<parameters.TOURNAMENT_SIZE; i++){
@@ -184,7 +216,21 @@ public class LexicaseMaintenance extends FitnessSharingMaintenance
                 }
             } 
         } 
+        if (event.shouldCommit())
+            commit(event, false, candidates, populationSubset.size(), best);
         return best;
     }
 
+    /*
+     * Fills in and commits a selection event
+     */
+    private static void commit(LexicaseSelectionEvent event, boolean replacement, int candidates, int remaining, ArraySolution selected) {
+        event.replacement = replacement;
+        event.candidates = candidates;
+        event.remaining = remaining;
+        event.fitness = selected.getSumOfTestsFailed();
+        event.treeSize = selected.size();
+        event.commit();
+    }
+
 }
@@ -0,0 +1,41 @@
+package mogp;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event of a selection made by LexicaseMaintenance, either of a
+ * solution to preserve into the next generation or of one to replace.
+ *
+ * @author Jonathan Fieldsend
+ * @version 1.0
+ */
+@Name("mogp.LexicaseSelection")
+@Label("Lexicase Selection")
+@Category("MOGP")
+@Description("Solution selected by filtering candidates on shuffled test cases")
+class LexicaseSelectionEvent extends Event
+{
+    @Label("Replacement")
+    @Description("True if selecting a solution to replace, false if selecting one to preserve")
+    boolean replacement;
+
+    @Label("Candidates")
+    @Description("Number of solutions selected from")
+    int candidates;
+
+    @Label("Remaining")
+    @Description("Number of candidates left after filtering on every test case")
+    int remaining;
+
+    @Label("Fitness")
+    @Description("Number of test cases failed by the solution selected")
+    int fitness;
+
+    @Label("Tree Size")
+    @Description("Size of the solution selected")
+    int treeSize;
+}
@@ -4,9 +4,9 @@ package mogp;
  * MajorityProblem represents a majority of arbitary size.
  * 
  * @author Jonathan Fieldsend 
- * @version 1.0
+ * @version 1.1
  */
-public class MajorityProblem extends Problem
+public class MajorityProblem extends ImplicitProblem
 {
     /**
      * Constructs a majority problem (test cases and targets) with
@@ -16,34 +16,37 @@ public class MajorityProblem extends Problem
      */
     public MajorityProblem(int bits)
     {
-        super.variableNumber = bits;
-        int temp = 2;
-        for (int i=1; i<bits; i++)
-            temp *= 2 ;
-        super.fitnessCases = temp;
-        System.out.println("Number of test probelms: " + fitnessCases);
-        super.inputs = new boolean[super.fitnessCases][super.variableNumber];
-        super.targets = new boolean[super.fitnessCases];
-        
-        // now fill inputs and outputs
-        for (int i=0; i< super.fitnessCases; i++) {
-            String binaryRep = Integer.toString(i, 2);
-            char[] characterArray = binaryRep.toCharArray();
-            int numTrue = 0;
-            for (int j=0; j<characterArray.length; j++) {
-                if (characterArray[j]=='0') {
-                    inputs[i][j] = false; // not required, but clearer
-                } else {
-                    inputs[i][j] = true;
-                    numTrue++;
-                }
+        super(bits);
+        generateTargets();
+    }
+
+    /**
+     * @InheritDoc
+     */
+    @Override
+    long targetWord(long[] values) {
+        // count the inputs true in each case, held bit sliced: bit j of count[k] is 
+        // bit k of the count of case j
+        long[] count = new long[32 - Integer.numberOfLeadingZeros(variableNumber)];
+        for (int v=0; v<variableNumber; v++) {
+            long carry = values[v];
+            for (int k=0; (k<count.length) && (carry != 0L); k++) {
+                long next = count[k] & carry;
+                count[k] ^= carry;
+                carry = next;
             }
-            
-            if (numTrue > bits-numTrue) // if majority true
-                targets[i] = true;
-            else
-                targets[i] = false; // not required, but clearer
         }
+        // majority true if count > bits-count, i.e. count >= bits/2+1, compared from the top bit down
+        int threshold = variableNumber/2 + 1;
+        long greater = 0L, equal = -1L;
+        for (int k=count.length-1; k>=0; k--) {
+            if (((threshold >>> k) & 1) != 0) {
+                equal &= count[k];
+            } else {
+                greater |= equal & count[k];
+                equal &= ~count[k];
+            }
+        }
+        return greater | equal;
     }
 }
-
@@ -0,0 +1,374 @@
+package mogp;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Metrics is a registry of named timers and counters, used to track where the time
+ * of a run is spent. Timers record the number and total duration of the code regions
+ * they time, along with a histogram of the durations, in nanoseconds. Counters track
+ * totals of events.
+ *
+ * Metrics are obtained once by name (typically into a static field of the class using
+ * them), and then record into a cell held by the recording thread, so recording needs
+ * no synchronisation. The cells of all threads are merged when a metric is read,
+ * unless the reading thread is scoped to its own cells, as when runs on separate
+ * threads are measured separately.
+ *
+ * @author Jonathan Fieldsend
+ * @version 1.2
+ */
+class Metrics
+{
+    private static final Map<String,Metric<?>> metrics = new LinkedHashMap<>(); // in order of registration
+    private static final ThreadLocal<Boolean> threadScoped = ThreadLocal.withInitial(() -> Boolean.FALSE); // true if a thread reads its own cells alone
+
+    /*
+     * private constructor to prevent direct construction externally
+     */
+    private Metrics() {}
+
+    /**
+     * Returns the timer with the given name, registering it if not already registered
+     *
+     * @param name name of timer
+     * @return timer
+     */
+    static synchronized Timer timer(String name) {
+        Metric<?> m = metrics.get(name);
+        if (m == null) {
+            m = new Timer(name);
+            metrics.put(name, m);
+        }
+        return (Timer) m;
+    }
+
+    /**
+     * Returns the counter with the given name, registering it if not already registered
+     *
+     * @param name name of counter
+     * @return counter
+     */
+    static synchronized Counter counter(String name) {
+        Metric<?> m = metrics.get(name);
+        if (m == null) {
+            m = new Counter(name);
+            metrics.put(name, m);
+        }
+        return (Counter) m;
+    }
+
+    /**
+     * Sets whether the calling thread reads, resets and writes out only the metrics it
+     * has recorded itself, rather than those of all threads
+     *
+     * @param scoped true to scope the calling thread to its own cells
+     */
+    static void setThreadScoped(boolean scoped) {
+        threadScoped.set(scoped);
+    }
+
+    /**
+     * Resets all metrics to zero, e.g. at the start of a fold. Should not be called
+     * while other threads are recording, unless the calling thread is scoped to its
+     * own cells
+     */
+    static synchronized void reset() {
+        for (Metric<?> m : metrics.values())
+            m.reset();
+    }
+
+    /**
+     * Writes every metric which has recorded something to a comma separated file, one
+     * line per metric, after a header line starting with '#'. Timers are written with
+     * their count, total, mean, median, 90th percentile, 99th percentile and maximum
+     * durations in nanoseconds. Counters are written with their value as the count,
+     * and -1 in the remaining columns. The file is written under a temporary name (see
+     * OutputFile) and then replaces any existing file
+     *
+     * @param fileName name of file to write to
+     */
+    static synchronized void writeOut(String fileName) throws IOException {
+        Path file = Paths.get(fileName), temporary = OutputFile.temporary(file);
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(temporary))) {
+            out.println("# name, type, count, total, mean, median, 90th percentile, 99th percentile, max");
+            for (Metric<?> m : metrics.values()) {
+                if (m instanceof Timer) {
+                    Timer t = (Timer) m;
+                    long count = t.getCount();
+                    if (count > 0)
+                        out.println(t.name + ", timer, " + count + ", " + t.getTotal() + ", " + t.getTotal()/count + ", "
+                            + t.getPercentile(0.5) + ", " + t.getPercentile(0.9) + ", " + t.getPercentile(0.99) + ", " + t.getMax());
+                } else {
+                    Counter c = (Counter) m;
+                    long value = c.get();
+                    if (value != 0)
+                        out.println(c.name + ", counter, " + value + ", -1, -1, -1, -1, -1, -1");
+                }
+            }
+        }
+        OutputFile.commit(temporary, file);
+    }
+
+    /**
+     * Display the calls and total time of each timer which has recorded something to
+     * window, along with its percentage of the time of the timer named total
+     *
+     * @param total name of the timer to take percentages of, e.g. the timer of a whole fold
+     */
+    static synchronized void printInfo(String total) {
+        Metric<?> totalMetric = metrics.get(total);
+        long totalTime = (totalMetric instanceof Timer) ? ((Timer) totalMetric).getTotal() : 0L;
+        for (Metric<?> m : metrics.values()) {
+            if (m instanceof Timer) {
+                Timer t = (Timer) m;
+                long count = t.getCount();
+                if (count > 0)
+                    System.out.println(t.name + ": " + count + " calls, total time: " + t.getTotal()/1e6 + " milli seconds"
+                        + ((totalTime > 0) ? " (" + 100.0*t.getTotal()/totalTime + "%)" : ""));
+            }
+        }
+    }
+
+    /*
+     * Base of timers and counters, holding the cells of each thread recording
+     */
+    private static abstract class Metric<C> {
+        final String name;
+        private final List<C> cells = new ArrayList<>(); // cells of all threads which have recorded
+        private final ThreadLocal<C> local = ThreadLocal.withInitial(this::register);
+
+        Metric(String name) {
+            this.name = name;
+        }
+
+        /*
+         * Creates the cell of the calling thread and adds it to those merged on read
+         */
+        private C register() {
+            C cell = newCell();
+            synchronized (cells) {
+                cells.add(cell);
+            }
+            return cell;
+        }
+
+        /*
+         * Returns the cell of the calling thread
+         */
+        C cell() {
+            return local.get();
+        }
+
+        /*
+         * Returns a snapshot of the cells of all threads, or the cell of the calling
+         * thread alone if it is scoped to its own cells
+         */
+        List<C> cells() {
+            if (threadScoped.get())
+                return List.of(cell());
+            synchronized (cells) {
+                return new ArrayList<>(cells);
+            }
+        }
+
+        abstract C newCell();
+
+        abstract void reset();
+    }
+
+    /**
+     * Timer of a code region, used as
+     * <pre>
+     * long start = timer.start();
+     * ...
+     * timer.stop(start);
+     * </pre>
+     */
+    static class Timer extends Metric<Timer.Cell> {
+        private static final int BUCKETS = 64; // bucket k holds durations of under 2^k nanoseconds, but not under 2^(k-1)
+
+        /*
+         * Durations recorded by a single thread
+         */
+        static class Cell {
+            long count, total, max;
+            final long[] histogram = new long[BUCKETS];
+        }
+
+        private Timer(String name) {
+            super(name);
+        }
+
+        @Override
+        Cell newCell() {
+            return new Cell();
+        }
+
+        /**
+         * Returns the time at the start of a timed region
+         *
+         * @return start time, to pass to stop
+         */
+        long start() {
+            return System.nanoTime();
+        }
+
+        /**
+         * Records the duration of the timed region begun at start
+         *
+         * @param start time returned by start
+         */
+        void stop(long start) {
+            record(System.nanoTime() - start);
+        }
+
+        /**
+         * Records a duration
+         *
+         * @param nanoseconds duration to record
+         */
+        void record(long nanoseconds) {
+            Cell c = cell();
+            c.count++;
+            c.total += nanoseconds;
+            if (nanoseconds > c.max)
+                c.max = nanoseconds;
+            c.histogram[Math.min(BUCKETS - Long.numberOfLeadingZeros(Math.max(nanoseconds, 0L)), BUCKETS-1)]++;
+        }
+
+        /**
+         * Returns the number of durations recorded
+         *
+         * @return count
+         */
+        long getCount() {
+            long count = 0L;
+            for (Cell c : cells())
+                count += c.count;
+            return count;
+        }
+
+        /**
+         * Returns the total of the durations recorded
+         *
+         * @return total nanoseconds
+         */
+        long getTotal() {
+            long total = 0L;
+            for (Cell c : cells())
+                total += c.total;
+            return total;
+        }
+
+        /**
+         * Returns the longest duration recorded
+         *
+         * @return maximum nanoseconds
+         */
+        long getMax() {
+            long max = 0L;
+            for (Cell c : cells())
+                max = Math.max(max, c.max);
+            return max;
+        }
+
+        /**
+         * Returns an upper bound on the given quantile of the durations recorded, accurate
+         * to within a factor of two
+         *
+         * @param quantile quantile between 0 and 1
+         * @return quantile bound in nanoseconds
+         */
+        long getPercentile(double quantile) {
+            long[] merged = new long[BUCKETS];
+            long count = 0L;
+            for (Cell c : cells()) {
+                for (int k=0; k<BUCKETS; k++)
+                    merged[k] += c.histogram[k];
+                count += c.count;
+            }
+            long rank = (long) Math.ceil(quantile*count);
+            long seen = 0L;
+            for (int k=0; k<BUCKETS; k++) {
+                seen += merged[k];
+                if ((seen >= rank) && (seen > 0))
+                    return Math.min((1L << k) - 1, getMax());
+            }
+            return getMax();
+        }
+
+        @Override
+        void reset() {
+            for (Cell c : cells()) {
+                c.count = 0L;
+                c.total = 0L;
+                c.max = 0L;
+                Arrays.fill(c.histogram, 0L);
+            }
+        }
+    }
+
+    /**
+     * Counter of events
+     */
+    static class Counter extends Metric<Counter.Cell> {
+        /*
+         * Count made by a single thread
+         */
+        static class Cell {
+            long value;
+        }
+
+        private Counter(String name) {
+            super(name);
+        }
+
+        @Override
+        Cell newCell() {
+            return new Cell();
+        }
+
+        /**
+         * Adds one to the counter
+         */
+        void increment() {
+            cell().value++;
+        }
+
+        /**
+         * Adds to the counter
+         *
+         * @param amount amount to add
+         */
+        void add(long amount) {
+            cell().value += amount;
+        }
+
+        /**
+         * Returns the total counted by all threads
+         *
+         * @return count
+         */
+        long get() {
+            long value = 0L;
+            for (Cell c : cells())
+                value += c.value;
+            return value;
+        }
+
+        @Override
+        void reset() {
+            for (Cell c : cells())
+                c.value = 0L;
+        }
+    }
+}
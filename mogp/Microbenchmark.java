@@ -0,0 +1,421 @@
+package mogp;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.regex.Pattern;
+import java.io.IOException;
+
+/**
+ * Microbenchmark measures the hot paths of the optimisers in isolation, so that the
+ * effect of each performance change can be measured: program processing, fitness
+ * evaluation (of single programs and of batches run together over tiles of test cases),
+ * variation, the selection and replacement operations of each
+ * maintenance regime, the tracking of population diversity, and the non-dominated
+ * sorting of a population into Pareto ranks.
+ *
+ * Each benchmark is run for a number of warm-up iterations, so the JIT compiler has
+ * settled, and then for a number of measured iterations of a fixed duration, reporting
+ * the mean and standard deviation over iterations of the time per operation. Results
+ * of every operation are consumed, so the JIT compiler cannot remove the work measured.
+ *
+ * Arguments are optional, given as name=value:
+ * <p>
+ * filter, a regular expression which benchmark names must contain (default all);
+ * <p>
+ * sizes, comma separated tree sizes (default 15,127,1023);
+ * <p>
+ * problems, comma separated problem numbers, as used by BooleanGP, which also set the
+ * number of test cases (default 4,8,18);
+ * <p>
+ * populations, comma separated population sizes (default 10,100,1000);
+ * <p>
+ * types, comma separated maintenance types (default B,BP,E,EP,F,FP,L,LP,S,SP,D,DP);
+ * <p>
+ * warmup, number of warm-up iterations (default 3);
+ * <p>
+ * iterations, number of measured iterations (default 5);
+ * <p>
+ * time, milliseconds per iteration (default 200).
+ *
+ * @author Jonathan Fieldsend
+ * @version 1.5
+ */
+class Microbenchmark
+{
+    private static final int MAX_LENGTH = 10000; // maximum tree size, as used in the GECCO paper
+    private static final int BATCH_SIZE = 50; // programs evaluated together by the batch benchmarks
+
+    private static long sink; // consumes the results of benchmarked operations
+    private static volatile long blackhole; // publishes sink, so it cannot be optimised away
+
+    private final Pattern filter;
+    private final int warmup, iterations;
+    private final long iterationTime; // nanoseconds per iteration
+
+    /*
+     * An operation to benchmark, returning a value to be consumed
+     */
+    interface Operation {
+        long run();
+    }
+
+    public static void main(String[] args) throws IOException {
+        HashMap<String,String> options = new HashMap<>();
+        for (String arg : args) {
+            int split = arg.indexOf('=');
+            if (split < 0) {
+                System.out.println("Arguments must be given as name=value: " + arg);
+                System.exit(1);
+            }
+            options.put(arg.substring(0, split), arg.substring(split+1));
+        }
+        Microbenchmark benchmark = new Microbenchmark(options.getOrDefault("filter", ".*"),
+            Integer.parseInt(options.getOrDefault("warmup", "3")),
+            Integer.parseInt(options.getOrDefault("iterations", "5")),
+            Long.parseLong(options.getOrDefault("time", "200")));
+        int[] sizes = parseInts(options.getOrDefault("sizes", "15,127,1023"));
+        String[] problems = options.getOrDefault("problems", "4,8,18").split(",");
+        int[] populations = parseInts(options.getOrDefault("populations", "10,100,1000"));
+        String[] types = options.getOrDefault("types", "B,BP,E,EP,F,FP,L,LP,S,SP,D,DP").split(",");
+
+        RandomNumberGenerator.setSeed(1L);
+        System.out.println(String.format("%-44s %-28s %14s %12s", "benchmark", "parameters", "ns/op", "error"));
+        for (String number : problems)
+            for (int size : sizes)
+                benchmark.runEvaluation(number, size);
+        for (int size : sizes)
+            benchmark.runVariation(size);
+        for (String number : problems)
+            for (int populationSize : populations)
+                for (String type : types)
+                    benchmark.runMaintenance(type, number, populationSize);
+        for (String number : problems)
+            for (int populationSize : populations)
+                benchmark.runDiversity(number, populationSize);
+        for (String number : problems)
+            for (int populationSize : populations)
+                benchmark.runSort(number, populationSize);
+        blackhole = sink;
+    }
+
+    /*
+     * Constructor sets up the benchmark runner
+     */
+    Microbenchmark(String filter, int warmup, int iterations, long iterationMilliseconds) {
+        this.filter = Pattern.compile(filter);
+        this.warmup = warmup;
+        this.iterations = iterations;
+        this.iterationTime = iterationMilliseconds * 1000000L;
+    }
+
+    /*
+     * Benchmarks processing and evaluating a program of the given size on a problem
+     */
+    private void runEvaluation(String number, int size) throws IOException {
+        if (!isSelected("process") && !isSelected("evaluateFitness") && !isSelected("evaluateBatch"))
+            return;
+        Problem problem = BooleanGP.createProblem(number);
+        Parameters parameters = new Parameters(MAX_LENGTH, 1, 1, 2, 0.05, 0.9);
+        NodeSet nodeSet = new NodeSet(problem.variableNumber);
+        ArraySolution s = solutionOfSize(size, parameters, problem, nodeSet);
+        String description = "problem=" + number + " cases=" + problem.fitnessCases + " size=" + s.size();
+
+        // process is measured per test (case and output), although cases are processed 64 at a time
+        long[] inputs = new long[problem.variableNumber];
+        long[] outputs = new long[problem.outputNumber];
+        run("process", description, problem.fitnessCases, () -> {
+            long passed = 0;
+            for (int w=0; w<problem.getNumberOfWords(); w++) {
+                problem.getInputWords(w, inputs);
+                s.process(inputs, outputs);
+                for (int o=0; o<outputs.length; o++)
+                    passed += Long.bitCount(~(outputs[o] ^ problem.targetWords[w*outputs.length + o]) & problem.getCaseMask(w));
+            }
+            return passed;
+        });
+        StandardMaintenance maintenance = new StandardMaintenance(problem, parameters);
+        HashMap<Integer,ArraySolution> pop = new HashMap<>();
+        run("evaluateFitness", description, 1, () -> {
+            maintenance.evaluateFitness(pop, s);
+            return s.getSumOfTestsFailed();
+        });
+
+        // a batch of distinct programs, evaluated one at a time and then together, measured
+        // per program, so the gain of loading the inputs once per tile is their ratio
+        if (!isSelected("evaluateBatch"))
+            return;
+        List<ArraySolution> batch = new ArrayList<>(BATCH_SIZE);
+        for (int i=0; i<BATCH_SIZE; i++) {
+            ArraySolution member = s.clone();
+            member.mutation(parameters.MUTATION_PROBABILITY_PER_NODE);
+            batch.add(member);
+        }
+        run("evaluateBatch.sequential", description, BATCH_SIZE, () -> {
+            long failed = 0;
+            for (ArraySolution member : batch) {
+                maintenance.evaluateFitness(pop, member);
+                failed += member.getSumOfTestsFailed();
+            }
+            return failed;
+        });
+        run("evaluateBatch.tiled", description, BATCH_SIZE, () -> {
+            maintenance.evaluateFitness(pop, batch);
+            long failed = 0;
+            for (ArraySolution member : batch)
+                failed += member.getSumOfTestsFailed();
+            return failed;
+        });
+    }
+
+    /*
+     * Benchmarks the variation operators on programs of the given size
+     */
+    private void runVariation(int size) {
+        if (!isSelected("clone") && !isSelected("crossover") && !isSelected("mutation"))
+            return;
+        Problem problem = new FourToOneMultiplexer();
+        Parameters parameters = new Parameters(MAX_LENGTH, 1, 1, 2, 0.05, 0.9);
+        NodeSet nodeSet = new NodeSet(problem.variableNumber);
+        ArraySolution parent1 = solutionOfSize(size, parameters, problem, nodeSet);
+        ArraySolution parent2 = solutionOfSize(size, parameters, problem, nodeSet);
+        String description = "size=" + parent1.size();
+
+        run("clone", description, 1, () -> parent1.clone().size());
+        // crossover changes the size of the child, so is applied to a fresh clone each time
+        run("clone+crossover", description, 1, () -> {
+            ArraySolution child = parent1.clone();
+            child.crossover(parent2);
+            return child.size();
+        });
+        // children written directly into a recycled program array, as by the optimisers
+        int[] program = new int[parameters.MAX_LENGTH];
+        int[] subtreeEnds = new int[parameters.MAX_LENGTH];
+        run("crossover.recycled", description, 1, () -> parent1.crossover(parent2, program, subtreeEnds).size());
+        run("mutation.recycled", description, 1, () -> parent1.mutation(parameters.MUTATION_PROBABILITY_PER_NODE, program, subtreeEnds).size());
+        // point mutation does not change size, so may be applied repeatedly to the same solution
+        ArraySolution mutated = parent1.clone();
+        run("mutation", description, 1, () -> {
+            mutated.mutation(parameters.MUTATION_PROBABILITY_PER_NODE);
+            return mutated.size();
+        });
+    }
+
+    /*
+     * Benchmarks the operations of a maintenance regime on an evaluated population
+     */
+    private void runMaintenance(String type, String number, int populationSize) throws IOException {
+        String prefix = "maintenance." + type + ".";
+        if (!isSelected(prefix + "tournament") && !isSelected(prefix + "replace") && !isSelected(prefix + "generateNextSearchPopulation"))
+            return;
+        Problem problem = BooleanGP.createProblem(number);
+        Parameters parameters = new Parameters(MAX_LENGTH, populationSize, 1, 2, 0.05, 0.9);
+        NodeSet nodeSet = new NodeSet(problem.variableNumber);
+        String description = "problem=" + number + " cases=" + problem.fitnessCases + " pop=" + populationSize;
+
+        // steady state operations, on a regime which has evaluated only the search population
+        GPMaintenance maintenance = BooleanGP.createMaintenance(type, problem, parameters);
+        HashMap<Integer,ArraySolution> pop = evaluatedPopulation(0, populationSize, maintenance, null, parameters, problem, nodeSet);
+        run(prefix + "tournament", description, 1, () -> maintenance.tournament(pop).size());
+        // the solution to replace is reinserted, as a replacement identical to it, so the
+        // regime state is unchanged by each operation
+        run(prefix + "replace", description, 1, () -> {
+            int key = maintenance.negativeTournamentKey(pop);
+            maintenance.evaluateFitness(pop, pop.get(key));
+            return key;
+        });
+
+        // generational truncation, on a regime which has also evaluated the children,
+        // restoring the parents and the state of the regime before each operation, as
+        // truncation removes the members it discards from the state
+        GPMaintenance generational = BooleanGP.createMaintenance(type, problem, parameters);
+        HashMap<Integer,ArraySolution> parents = evaluatedPopulation(0, populationSize, generational, null, parameters, problem, nodeSet);
+        HashMap<Integer,ArraySolution> children = evaluatedPopulation(populationSize, populationSize, generational, parents, parameters, problem, nodeSet);
+        HashMap<Integer,ArraySolution> next = new HashMap<>(parents);
+        Checkpoint state = new Checkpoint();
+        generational.writeState(state);
+        run(prefix + "generateNextSearchPopulation", description, 1, () -> {
+            generational.readState(state.rewind());
+            next.clear();
+            next.putAll(parents);
+            generational.generateNextSearchPopulation(next, children);
+            return next.size();
+        });
+    }
+
+    /*
+     * Benchmarks updating and reading the diversity of an evaluated population, against
+     * summing the distances between every pair of members
+     */
+    private void runDiversity(String number, int populationSize) throws IOException {
+        if (!isSelected("diversity"))
+            return;
+        Problem problem = BooleanGP.createProblem(number);
+        Parameters parameters = new Parameters(MAX_LENGTH, populationSize, 1, 2, 0.05, 0.9);
+        NodeSet nodeSet = new NodeSet(problem.variableNumber);
+        String description = "problem=" + number + " cases=" + problem.fitnessCases + " pop=" + populationSize;
+        GPMaintenance maintenance = new StandardMaintenance(problem, parameters);
+        List<ArraySolution> members = new ArrayList<>(evaluatedPopulation(0, populationSize, maintenance, null, parameters, problem, nodeSet).values());
+        PopulationDiversity diversity = new PopulationDiversity(problem, populationSize);
+        for (ArraySolution s : members)
+            diversity.add(s);
+
+        // a member is removed and added back, as when replaced by an identical child
+        int[] next = new int[1];
+        run("diversity.replace", description, 1, () -> {
+            ArraySolution s = members.get(next[0]++ % populationSize);
+            diversity.remove(s);
+            diversity.add(s);
+            return diversity.size();
+        });
+        // the measures are summed when first read after an update, as once a generation
+        run("diversity.replace+read", description, 1, () -> {
+            ArraySolution s = members.get(next[0]++ % populationSize);
+            diversity.remove(s);
+            diversity.add(s);
+            return diversity.getDistinctSemantics() + Double.doubleToLongBits(diversity.getMeanPairwiseDistance()) 
+                + Double.doubleToLongBits(diversity.getMeanCaseEntropy());
+        });
+        run("diversity.pairwise", description, 1, () -> {
+            long distance = 0;
+            for (int i=0; i<populationSize; i++) {
+                long[] a = members.get(i).getTestsPassedWords();
+                for (int j=i+1; j<populationSize; j++) {
+                    long[] b = members.get(j).getTestsPassedWords();
+                    for (int w=0; w<a.length; w++)
+                        distance += Long.bitCount(a[w] ^ b[w]);
+                }
+            }
+            return distance;
+        });
+    }
+
+    /*
+     * Benchmarks sorting an evaluated population into Pareto ranks, under standard and
+     * parsimonious domination. Only the tests passed and size of each member are kept,
+     * so large populations fit in memory
+     */
+    private void runSort(String number, int populationSize) throws IOException {
+        if (!isSelected("nondominatedSort"))
+            return;
+        Problem problem = BooleanGP.createProblem(number);
+        Parameters parameters = new Parameters(MAX_LENGTH, populationSize, 1, 2, 0.05, 0.9);
+        NodeSet nodeSet = new NodeSet(problem.variableNumber);
+        GPMaintenance maintenance = new StandardMaintenance(problem, parameters);
+        long[][] passed = new long[populationSize][];
+        int[] sizes = new int[populationSize];
+        for (int i=0; i<populationSize; i++) {
+            ArraySolution s = new ArraySolution(parameters, problem, nodeSet);
+            while (s.size() > parameters.MAX_LENGTH)
+                s = new ArraySolution(parameters, problem, nodeSet);
+            maintenance.evaluateFitness(null, s);
+            passed[i] = s.getTestsPassedWords();
+            sizes[i] = s.size();
+        }
+        for (MinimisationType type : new MinimisationType[]{MinimisationType.STANDARD, MinimisationType.PARSIMONIOUS}) {
+            NondominatedSort sort = new NondominatedSort(type);
+            sort.rank(passed, sizes);
+            String description = "problem=" + number + " cases=" + problem.fitnessCases + " pop=" + populationSize
+                + " fronts=" + sort.getNumberOfFronts();
+            run("nondominatedSort." + type.name().toLowerCase(), description, 1, () -> sort.rank(passed, sizes)[0]);
+        }
+    }
+
+    /*
+     * Returns solutions keyed from first, evaluated in turn by the maintenance regime, as
+     * members of pop (or of the returned map if pop is null)
+     */
+    private static HashMap<Integer,ArraySolution> evaluatedPopulation(int first, int size, GPMaintenance maintenance,
+            HashMap<Integer,ArraySolution> pop, Parameters parameters, Problem problem, NodeSet nodeSet) {
+        HashMap<Integer,ArraySolution> solutions = new HashMap<>();
+        for (int i=first; i<first+size; i++) {
+            ArraySolution s = new ArraySolution(parameters, problem, nodeSet);
+            while (s.size() > parameters.MAX_LENGTH)
+                s = new ArraySolution(parameters, problem, nodeSet);
+            solutions.put(i, s);
+            maintenance.evaluateFitness((pop == null) ? solutions : pop, s);
+        }
+        return solutions;
+    }
+
+    /*
+     * Returns a random solution whose size is close to the target size, growing large
+     * solutions by crossover as random initialisation rarely produces them
+     */
+    static ArraySolution solutionOfSize(int target, Parameters parameters, Problem problem, NodeSet nodeSet) {
+        ArraySolution best = new ArraySolution(parameters, problem, nodeSet);
+        for (int attempt=0; (attempt<100000) && (Math.abs(best.size()-target) > target/10); attempt++) {
+            ArraySolution candidate = new ArraySolution(parameters, problem, nodeSet);
+            if ((attempt % 2 == 1) && (candidate.size() <= parameters.MAX_LENGTH)) {
+                ArraySolution grown = best.clone();
+                grown.crossover(candidate);
+                candidate = grown;
+            }
+            if ((candidate.size() <= parameters.MAX_LENGTH) && (Math.abs(candidate.size()-target) < Math.abs(best.size()-target)))
+                best = candidate;
+        }
+        return best;
+    }
+
+    /*
+     * Runs a benchmark if its name is selected by the filter, printing the mean and standard
+     * deviation of the time per operation over the measured iterations. opsPerRun is the
+     * number of operations undertaken by each run of the operation
+     */
+    private void run(String name, String description, int opsPerRun, Operation operation) {
+        if (!isSelected(name))
+            return;
+        for (int i=0; i<warmup; i++)
+            iteration(operation, opsPerRun);
+        double[] times = new double[iterations];
+        double mean = 0.0;
+        for (int i=0; i<iterations; i++) {
+            times[i] = iteration(operation, opsPerRun);
+            mean += times[i];
+        }
+        mean /= iterations;
+        double variance = 0.0;
+        for (double t : times)
+            variance += (t-mean)*(t-mean);
+        double error = (iterations > 1) ? Math.sqrt(variance/(iterations-1)) : 0.0;
+        System.out.println(String.format("%-44s %-28s %14.1f %12.1f", name, description, mean, error));
+        blackhole = sink;
+    }
+
+    /*
+     * Runs the operation repeatedly for the iteration time, returning the nanoseconds per
+     * operation. Time is only read between batches, whose size grows until each lasts
+     * long enough for reading the time to be negligible
+     */
+    private double iteration(Operation operation, int opsPerRun) {
+        long runs = 0L, batch = 1L;
+        long start = System.nanoTime(), elapsed;
+        do {
+            for (long i=0; i<batch; i++)
+                sink += operation.run();
+            runs += batch;
+            elapsed = System.nanoTime() - start;
+            if (elapsed < iterationTime/100)
+                batch *= 2;
+        } while (elapsed < iterationTime);
+        return (double) elapsed/(runs*opsPerRun);
+    }
+
+    /*
+     * Returns true if the filter selects a benchmark name
+     */
+    private boolean isSelected(String name) {
+        return filter.matcher(name).find();
+    }
+
+    /*
+     * Parses a comma separated list of integers
+     */
+    private static int[] parseInts(String list) {
+        String[] parts = list.split(",");
+        int[] values = new int[parts.length];
+        for (int i=0; i<parts.length; i++)
+            values[i] = Integer.parseInt(parts[i].trim());
+        return values;
+    }
+}
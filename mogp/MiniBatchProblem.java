@@ -0,0 +1,112 @@
+package mogp;
+
+/**
+ * MiniBatchProblem presents a mini-batch of the test cases of a complete problem as a
+ * problem in its own right, so that solutions may be evaluated on a sample of a very
+ * large case space. The batch is rotated by nextBatch, after which the solutions
+ * evaluated on the previous batch must be re-evaluated.
+ *
+ * Batches are made up of whole words of test cases, 64 cases to a word, so the batch
+ * size is rounded up to a multiple of 64. The words of a batch are drawn from the
+ * complete problem with a fixed stride, so each batch covers the case space evenly
+ * and successive batches cycle through every full word. A final word which is not
+ * full is never included in a batch (but is in the verification of a solution on the
+ * complete problem).
+ *
+ * Unlike the complete problem, a MiniBatchProblem changes as the batch rotates, so each
+ * run should have its own.
+ *
+ * @author Jonathan Fieldsend
+ * @version 1.1
+ */
+class MiniBatchProblem extends Problem
+{
+    final Problem problem; // complete problem the batches are drawn from
+    private final int fullWords; // number of full words of the complete problem
+    private final int stride; // step between successive words drawn, coprime with fullWords
+    private final int[] words; // words of the complete problem in the current batch
+    private int batch; // number of batches drawn before the current one
+
+    /**
+     * Constructs the first mini-batch of a problem
+     *
+     * @param problem complete problem
+     * @param batchSize number of test cases in each batch, rounded up to a multiple of 64
+     */
+    MiniBatchProblem(Problem problem, int batchSize) {
+        this.problem = problem;
+        fullWords = problem.getNumberOfCases()/64;
+        if (fullWords == 0)
+            throw new IllegalArgumentException("Mini-batches require a problem of at least 64 test cases, not " + problem.getNumberOfCases());
+        int batchWords = Math.min(Math.max((batchSize+63)/64, 1), fullWords);
+        super.variableNumber = problem.variableNumber;
+        super.outputNumber = problem.outputNumber;
+        super.fitnessCases = 64*batchWords*outputNumber;
+        words = new int[batchWords];
+        targetWords = new long[batchWords*outputNumber];
+        // a stride near the golden section of the words spreads each batch across the case space
+        int s = Math.max((int) (fullWords*0.6180339887), 1);
+        while (gcd(s, fullWords) != 1)
+            s++;
+        stride = s;
+        setBatch(0);
+    }
+
+    /**
+     * Moves on to the next batch of test cases
+     */
+    void nextBatch() {
+        setBatch(batch+1);
+    }
+
+    /**
+     * Returns the number of batches drawn before the current one
+     *
+     * @return batch number
+     */
+    int getBatch() {
+        return batch;
+    }
+
+    /**
+     * Moves to the batch with the given number, e.g. when restoring a checkpoint
+     *
+     * @param batch batch number
+     */
+    void setBatch(int batch) {
+        this.batch = batch;
+        long first = ((long) batch*words.length) % fullWords;
+        for (int w=0; w<words.length; w++) {
+            words[w] = (int) (((first+w) % fullWords)*stride % fullWords);
+            System.arraycopy(problem.targetWords, words[w]*outputNumber, targetWords, w*outputNumber, outputNumber);
+        }
+    }
+
+    /**
+     * @InheritDoc
+     */
+    @Override
+    long getCaseMask(int word) {
+        return -1L; // only full words are drawn
+    }
+
+    /**
+     * @InheritDoc
+     */
+    @Override
+    void getInputWords(int word, long[] values) {
+        problem.getInputWords(words[word], values);
+    }
+
+    /*
+     * Returns the greatest common divisor of a and b
+     */
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+}
@@ -0,0 +1,202 @@
+package mogp;
+
+import java.util.HashMap;
+import java.io.IOException;
+
+/**
+ * MutationCheck tests that point mutation mutates each element of a program independently
+ * with the probability of mutation, as drawing a Bernoulli trial for every element would,
+ * apart from the one element mutated when no other is, now that the gaps between mutated
+ * elements are drawn from the geometric distribution instead.
+ *
+ * For each tree size, a program of about that size is mutated many times, and the elements
+ * changed by each mutation are counted. With n elements and probability p, the number of
+ * elements mutated follows the binomial distribution B(n,p), except that a mutation of no
+ * elements becomes a mutation of one, which is checked with a chi-square test, pooling the
+ * tail counts so that every class is expected at least five times. Each element is mutated
+ * with probability p + (1-p)^n/n, which is checked with a z test for each element, the
+ * largest of which is judged with a Bonferroni correction for the n tests.
+ *
+ * Arguments are optional, given as name=value:
+ * <p>
+ * sizes, comma separated tree sizes (default 3,7,31,127,1023);
+ * <p>
+ * probabilities, comma separated probabilities of mutation (default 0.005,0.05,0.3);
+ * <p>
+ * problem, problem number, as used by BooleanGP, setting the terminals (default 8);
+ * <p>
+ * trials, mutations of each program (default 100000);
+ * <p>
+ * alpha, significance level of each test (default 0.001);
+ * <p>
+ * seed, random number generator seed (default 1).
+ * <p>
+ * The process exits with status 2 if any test rejects, so the check may be scripted.
+ *
+ * @author Jonathan Fieldsend
+ * @version 1.0
+ */
+class MutationCheck
+{
+    private static final int MAX_LENGTH = 10000; // maximum tree size, as used in the GECCO paper
+    private static final double MIN_EXPECTED = 5.0; // smallest expected count of a chi-square class
+    private static final double[] LANCZOS = {0.99999999999980993, 676.5203681218851, -1259.1392167224028,
+        771.32342877765313, -176.61502916214059, 12.507343278686905, -0.13857109526572012,
+        9.9843695780195716e-6, 1.5056327351493116e-7}; // coefficients of the Lanczos approximation, g=7
+
+    public static void main(String[] args) throws IOException {
+        HashMap<String,String> options = new HashMap<>();
+        for (String arg : args) {
+            int split = arg.indexOf('=');
+            if (split < 0) {
+                System.out.println("Arguments must be given as name=value: " + arg);
+                System.exit(1);
+            }
+            options.put(arg.substring(0, split), arg.substring(split+1));
+        }
+        String[] sizes = options.getOrDefault("sizes", "3,7,31,127,1023").split(",");
+        String[] probabilities = options.getOrDefault("probabilities", "0.005,0.05,0.3").split(",");
+        int trials = Integer.parseInt(options.getOrDefault("trials", "100000"));
+        double alpha = Double.parseDouble(options.getOrDefault("alpha", "0.001"));
+        RandomNumberGenerator.setSeed(Long.parseLong(options.getOrDefault("seed", "1")));
+
+        Problem problem = BooleanGP.createProblem(options.getOrDefault("problem", "8"));
+        Parameters parameters = new Parameters(MAX_LENGTH, 1, 1, 2, 0.05, 0.9);
+        NodeSet nodeSet = new NodeSet(problem.variableNumber);
+        int rejected = 0;
+        System.out.println(String.format("%6s %8s %10s %4s %10s %8s %10s %s", "size", "p", "chi2", "df", "p-value", "max |z|", "p-value", "outcome"));
+        for (String size : sizes) {
+            ArraySolution s = Microbenchmark.solutionOfSize(Integer.parseInt(size.trim()), parameters, problem, nodeSet);
+            for (String probability : probabilities)
+                if (!check(s, Double.parseDouble(probability.trim()), trials, alpha))
+                    rejected++;
+        }
+        if (rejected > 0) {
+            System.out.println(rejected + " checks rejected at significance level " + alpha);
+            System.exit(2);
+        }
+        System.out.println("No checks rejected at significance level " + alpha);
+    }
+
+    /*
+     * Mutates s trials times with probability p, printing the tests of the number of elements
+     * mutated and of the frequency each element is mutated, and returns false if either
+     * rejects at significance level alpha
+     */
+    private static boolean check(ArraySolution s, double p, int trials, double alpha) {
+        int n = s.size();
+        int[] original = s.clone().release();
+        int[] child = new int[MAX_LENGTH];
+        long[] mutatedCounts = new long[n+1]; // trials mutating each number of elements
+        long[] elementCounts = new long[n]; // trials mutating each element
+        for (int t=0; t<trials; t++) {
+            s.mutation(p, child, null);
+            int mutated = 0;
+            for (int i=0; i<n; i++) {
+                if (child[i] != original[i]) {
+                    mutated++;
+                    elementCounts[i]++;
+                }
+            }
+            mutatedCounts[mutated]++;
+        }
+
+        // chi-square test of the number mutated, against B(n,p) with none moved to one
+        double[] expected = new double[n+1];
+        for (int k=0; k<=n; k++)
+            expected[k] = trials * Math.exp(logChoose(n, k) + k*Math.log(p) + (n-k)*Math.log1p(-p));
+        double none = expected[0] / trials;
+        expected[1] += expected[0];
+        expected[0] = 0.0;
+        double[] classExpected = new double[n]; // numbers mutated, pooled into classes each expected at least MIN_EXPECTED times
+        long[] classObserved = new long[n];
+        int classes = 0;
+        for (int k=1; k<=n; k++) {
+            classExpected[classes] += expected[k];
+            classObserved[classes] += mutatedCounts[k];
+            if ((classExpected[classes] >= MIN_EXPECTED) && (k < n))
+                classes++;
+        }
+        if ((classExpected[classes] < MIN_EXPECTED) && (classes > 0)) { // too few in the tail, so join the previous class
+            classExpected[classes-1] += classExpected[classes];
+            classObserved[classes-1] += classObserved[classes];
+        } else {
+            classes++;
+        }
+        double chiSquare = 0.0;
+        for (int c=0; c<classes; c++)
+            chiSquare += (classObserved[c]-classExpected[c])*(classObserved[c]-classExpected[c])/classExpected[c];
+        int degrees = classes - 1;
+        double countP = (degrees > 0) ? upperRegularizedGamma(degrees/2.0, chiSquare/2.0) : 1.0;
+
+        // z test of the mutations of each element, Bonferroni corrected for the n tests
+        double q = p + none/n;
+        double maxZ = 0.0;
+        for (int i=0; i<n; i++)
+            maxZ = Math.max(maxZ, Math.abs(elementCounts[i] - trials*q) / Math.sqrt(trials*q*(1.0-q)));
+        double elementP = Math.min(1.0, n * upperRegularizedGamma(0.5, maxZ*maxZ/2.0)); // two sided normal tail
+
+        boolean accepted = (countP >= alpha) && (elementP >= alpha);
+        System.out.println(String.format("%6d %8.4f %10.2f %4d %10.4f %8.3f %10.4f %s", n, p, chiSquare, degrees, countP,
+            maxZ, elementP, accepted ? "accepted" : "REJECTED"));
+        return accepted;
+    }
+
+    /*
+     * Returns the log of n choose k
+     */
+    private static double logChoose(int n, int k) {
+        return logGamma(n+1) - logGamma(k+1) - logGamma(n-k+1);
+    }
+
+    /*
+     * Returns the log of the gamma function of x > 0, by the Lanczos approximation
+     */
+    private static double logGamma(double x) {
+        if (x < 0.5) // reflection, as the approximation is for x >= 0.5
+            return Math.log(Math.PI / Math.abs(Math.sin(Math.PI*x))) - logGamma(1.0-x);
+        x -= 1.0;
+        double sum = LANCZOS[0];
+        for (int i=1; i<LANCZOS.length; i++)
+            sum += LANCZOS[i] / (x+i);
+        double t = x + 7.5;
+        return 0.5*Math.log(2*Math.PI) + (x+0.5)*Math.log(t) - t + Math.log(sum);
+    }
+
+    /*
+     * Returns the regularised upper incomplete gamma function Q(a,x), the probability a
+     * chi-square variable of 2a degrees of freedom exceeds 2x, by its series below a+1
+     * and its continued fraction above
+     */
+    private static double upperRegularizedGamma(double a, double x) {
+        if (x <= 0.0)
+            return 1.0;
+        double logPrefix = a*Math.log(x) - x - logGamma(a);
+        if (x < a+1.0) {
+            double term = 1.0/a, sum = term;
+            for (int i=1; (i<10000) && (Math.abs(term) > Math.abs(sum)*1e-15); i++) {
+                term *= x/(a+i);
+                sum += term;
+            }
+            return Math.max(0.0, 1.0 - sum*Math.exp(logPrefix));
+        }
+        double tiny = 1e-300;
+        double b = x + 1.0 - a, c = 1.0/tiny, d = 1.0/b, h = d;
+        for (int i=1; i<10000; i++) {
+            double an = -i*(i-a);
+            b += 2.0;
+            d = an*d + b;
+            if (Math.abs(d) < tiny)
+                d = tiny;
+            c = b + an/c;
+            if (Math.abs(c) < tiny)
+                c = tiny;
+            d = 1.0/d;
+            double delta = d*c;
+            h *= delta;
+            if (Math.abs(delta-1.0) < 1e-15)
+                break;
+        }
+        return Math.exp(logPrefix)*h;
+    }
+}
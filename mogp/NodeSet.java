@@ -5,7 +5,7 @@ import java.util.HashMap;
  * Class representing the legal set of nodes in the GP
  * 
  * @author Jonathan Fieldsend 
- * @version 1.0
+ * @version 1.1
  */
 public class NodeSet
 {
@@ -88,6 +88,27 @@ public class NodeSet
         return RandomNumberGenerator.getRandom().nextInt(numberOfBinaryGates)+numberOfTerminals;
     }
     
+    /**
+     * Method returns the number of terminals, operator values follow on from these
+     * 
+     * @return number of terminal values
+     */
+    int getNumberOfTerminals() {
+        return numberOfTerminals;
+    }
+    
+    /**
+     * Method returns the gate number (0 to 15) of an operator value. Bit 3 of the 
+     * gate number is the gate output when both inputs are true, bit 2 when only the 
+     * first is true, bit 1 when only the second is true and bit 0 when neither is.
+     * 
+     * @param i operator value (includes number of terminals)
+     * @return gate number
+     */
+    int getGate(int i) {
+        return i - numberOfTerminals;
+    }
+
     /**
      * Method returns true if argument is an operator value, false otherwise
      * 
@@ -99,30 +120,33 @@ public class NodeSet
     }
 
     /**
-     * Method returns value of terminal element at index (from bit string, i.e. boolean array, representation) 
+     * Method gives outputs of gate with operator value i given the two inputs a and b,
+     * for the 64 test cases packed into each word
      * 
-     * @param i index of array
-     * @return boolean vale of array at index
+     * @param i operator value (includes number of terminals)
+     * @param a first gate inputs
+     * @param b second gate inputs
+     * @return gate outputs
      */
-    boolean processTerminal(int i){
-        return InputVector.getValue(i);
+    long processOperator(int i, long a, long b){
+        return processGate(i - numberOfTerminals, a, b);
     }
 
     /**
-     * Method gives output of gate with operator value i given the two inputs a and b
+     * Method gives outputs of gate number g (see getGate) given the two inputs a and b,
+     * for the 64 test cases packed into each word
      * 
-     * @param i operator value (includes number of terminals)
-     * @param a first gate input
-     * @param b second gate input
-     * @return gate output
+     * @param g gate number
+     * @param a first gate inputs
+     * @param b second gate inputs
+     * @return gate outputs
      */
-    boolean processOperator(int i, boolean a, boolean b){
-        i -= numberOfTerminals;
-        boolean[] v = intToBooleanArrayMap.get(i);
-        return (a && b) ? v[0] :
-               (a && !b) ? v[1] :
-               (!a && b) ? v[2] :
-               v[3];
+    static long processGate(int g, long a, long b){
+        // each term is masked to all ones or zero by the corresponding bit of the gate number
+        return (a & b & -((g >>> 3) & 1L))
+             | (a & ~b & -((g >>> 2) & 1L))
+             | (~a & b & -((g >>> 1) & 1L))
+             | (~(a | b) & -(g & 1L));
     }
 
     /**
@@ -0,0 +1,249 @@
+package mogp;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * NondominatedSort assigns each member of a population its Pareto rank over the tests
+ * it passes: rank 0 for the members no other member dominates, rank 1 for those only
+ * dominated by members of rank 0, and so on. A member dominates another if it passes
+ * every test the other passes and at least one more, or, under parsimonious
+ * minimisation, passes exactly the same tests and is smaller.
+ *
+ * The sort is the efficient non-dominated sort with binary search (ENS-BS) of Zhang et
+ * al. Members are presorted so that no member is dominated by one after it: by the
+ * number of tests passed, descending, counted with popcount over the packed tests
+ * passed, and then by size, ascending, under parsimonious minimisation. Each member in
+ * turn is then placed in the first front with no member dominating it, found by binary
+ * search over the fronts, as a member dominated by a later front is also dominated by
+ * every earlier one.
+ *
+ * Populations hold many members with the same tests passed (and size), which share a
+ * rank, so only the first of each is sorted. A member then dominates a later one
+ * exactly when it passes every test the later one passes, a subset test on the packed
+ * words. Each member also has a signature of 64 of its tests, spread over the test
+ * cases, which must contain the signature of any member it dominates, and signatures
+ * are held in an array for each front, scanned in order, so few members have their
+ * packed words compared.
+ *
+ * Each member sorted is compared with the members of only about log2 of the number of
+ * fronts, so the sort is fast when there are many fronts, but still compares most
+ * pairs of distinct members when most are mutually non-dominated.
+ *
+ * @author Jonathan Fieldsend
+ * @version 1.0
+ */
+class NondominatedSort
+{
+    private final boolean parsimonious; // true if size breaks ties between equal tests passed
+    private int[][] fronts = new int[0][]; // members of each front, in the order placed
+    private long[][] frontSignatures = new long[0][]; // signature of each member of each front
+    private int[] frontSizes = new int[0]; // number of members of each front
+    private int numberOfFronts = 0; // fronts of the last population sorted
+
+    /**
+     * Constructs a sort using the domination of a type of minimisation
+     *
+     * @param type of minimisation (standard or parsimonious)
+     */
+    NondominatedSort(MinimisationType type) {
+        parsimonious = type.equals(MinimisationType.PARSIMONIOUS);
+    }
+
+    /**
+     * Returns the Pareto rank of each solution, whose tests passed must be evaluated on
+     * every test case
+     *
+     * @param solutions population to rank
+     * @return rank of each solution, by index, 0 if non-dominated
+     */
+    int[] rank(ArraySolution[] solutions) {
+        long[][] passed = new long[solutions.length][];
+        int[] sizes = new int[solutions.length];
+        for (int i=0; i<solutions.length; i++) {
+            passed[i] = solutions[i].getTestsPassedWords();
+            sizes[i] = solutions[i].size();
+        }
+        return rank(passed, sizes);
+    }
+
+    /**
+     * Returns the Pareto rank of each member of a population, given by the packed tests
+     * it passes and its size
+     *
+     * @param passed packed tests passed of each member
+     * @param sizes size of each member
+     * @return rank of each member, by index, 0 if non-dominated
+     */
+    int[] rank(long[][] passed, int[] sizes) {
+        int n = passed.length;
+        int[] ranks = new int[n];
+        int[] first = new int[n]; // first member with the same tests passed (and size)
+        int[] distinct = new int[n];
+        int numberDistinct = 0;
+        HashMap<Objectives,Integer> firsts = new HashMap<>();
+        for (int i=0; i<n; i++) {
+            Integer previous = firsts.putIfAbsent(new Objectives(passed[i], parsimonious ? sizes[i] : 0), i);
+            first[i] = (previous == null) ? i : previous;
+            if (previous == null)
+                distinct[numberDistinct++] = i;
+        }
+        int[] counts = new int[n];
+        int maximum = 0;
+        long[] signatures = new long[n];
+        int[] positions = samplePositions(passed.length == 0 ? 0 : passed[0].length);
+        for (int d=0; d<numberDistinct; d++) {
+            int i = distinct[d];
+            for (long word : passed[i])
+                counts[i] += Long.bitCount(word);
+            maximum = Math.max(maximum, counts[i]);
+            for (int k=0; k<64; k++)
+                signatures[i] |= ((passed[i][positions[k] >>> 6] >>> positions[k]) & 1L) << k;
+        }
+
+        numberOfFronts = 0;
+        for (int s : presort(Arrays.copyOf(distinct, numberDistinct), counts, sizes, maximum)) {
+            int low = 0, high = numberOfFronts;
+            while (low < high) { // find first front not dominating s
+                int middle = (low + high) >>> 1;
+                if (frontDominates(middle, passed[s], signatures[s], passed))
+                    low = middle + 1;
+                else
+                    high = middle;
+            }
+            addToFront(low, s, signatures[s]);
+            ranks[s] = low;
+        }
+        for (int i=0; i<n; i++)
+            ranks[i] = ranks[first[i]];
+        return ranks;
+    }
+
+    /**
+     * Returns the number of fronts of the population last ranked
+     *
+     * @return number of fronts
+     */
+    int getNumberOfFronts() {
+        return numberOfFronts;
+    }
+
+    /*
+     * Returns the members ordered by tests passed, descending, then under parsimonious
+     * minimisation by size, ascending, and then by index, using a stable counting sort
+     * on the tests passed
+     */
+    private int[] presort(int[] members, int[] counts, int[] sizes, int maximum) {
+        if (parsimonious) {
+            long[] keys = new long[members.length];
+            for (int m=0; m<members.length; m++)
+                keys[m] = ((long) sizes[members[m]] << 32) | members[m];
+            Arrays.sort(keys);
+            for (int m=0; m<members.length; m++)
+                members[m] = (int) keys[m];
+        }
+        int[] starts = new int[maximum+2];
+        for (int i : members)
+            starts[maximum - counts[i] + 1]++;
+        for (int c=1; c<starts.length; c++)
+            starts[c] += starts[c-1];
+        int[] order = new int[members.length];
+        for (int i : members)
+            order[starts[maximum - counts[i]]++] = i;
+        return order;
+    }
+
+    /*
+     * Returns the positions of the 64 tests sampled into a signature, from words of tests
+     * passed, spread over the words by the golden ratio so that they are not aligned with
+     * the inputs of the test cases
+     */
+    private static int[] samplePositions(int words) {
+        int[] positions = new int[64];
+        for (int k=0; k<64; k++)
+            positions[k] = (int) ((((k+1) * 0x9E3779B97F4A7C15L) >>> 32) * (64L*words) >>> 32);
+        return positions;
+    }
+
+    /*
+     * Returns true if a member of front f passes every test passed by a later member,
+     * with tests passed b and signature, so dominates it. A member whose signature does
+     * not contain the signature cannot, so its tests passed are only compared otherwise.
+     * Members placed most recently are the most alike it, so are compared first
+     */
+    private boolean frontDominates(int f, long[] b, long signature, long[][] passed) {
+        int[] front = fronts[f];
+        long[] signatures = frontSignatures[f];
+        for (int m=frontSizes[f]-1; m>=0; m--) {
+            if ((signature & ~signatures[m]) != 0L)
+                continue;
+            long[] a = passed[front[m]];
+            int w = 0;
+            while ((w < b.length) && ((b[w] & ~a[w]) == 0L))
+                w++;
+            if (w == b.length)
+                return true;
+        }
+        return false;
+    }
+
+    /*
+     * Appends member s, with its signature, to front f, which is either an existing front
+     * or the next one
+     */
+    private void addToFront(int f, int s, long signature) {
+        if (f == numberOfFronts) {
+            if (f == fronts.length) {
+                fronts = Arrays.copyOf(fronts, Math.max(8, 2*f));
+                frontSignatures = Arrays.copyOf(frontSignatures, fronts.length);
+                frontSizes = Arrays.copyOf(frontSizes, fronts.length);
+            }
+            if (fronts[f] == null) {
+                fronts[f] = new int[8];
+                frontSignatures[f] = new long[8];
+            }
+            frontSizes[f] = 0;
+            numberOfFronts++;
+        }
+        if (frontSizes[f] == fronts[f].length) {
+            fronts[f] = Arrays.copyOf(fronts[f], 2*frontSizes[f]);
+            frontSignatures[f] = Arrays.copyOf(frontSignatures[f], 2*frontSizes[f]);
+        }
+        frontSignatures[f][frontSizes[f]] = signature;
+        fronts[f][frontSizes[f]++] = s;
+    }
+
+    /*
+     * Tests passed and size of a member, as a key of the members with the same. Words of
+     * truth tables often have equal halves, so are mixed in with a multiply, as by
+     * PopulationDiversity, rather than hashed with Arrays.hashCode
+     */
+    private static final class Objectives
+    {
+        private static final long MIX = 0x9E3779B97F4A7C15L; // odd multiplier of the golden ratio
+
+        private final long[] passed;
+        private final int size;
+        private final int hash;
+
+        Objectives(long[] passed, int size) {
+            this.passed = passed;
+            this.size = size;
+            long h = size;
+            for (long word : passed)
+                h = (h + word) * MIX;
+            hash = (int) (h ^ (h >>> 32));
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return (o instanceof Objectives) && (((Objectives) o).hash == hash) && (((Objectives) o).size == size)
+                && Arrays.equals(((Objectives) o).passed, passed);
+        }
+    }
+}
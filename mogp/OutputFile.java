@@ -0,0 +1,47 @@
+package mogp;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * OutputFile names the temporary files that the metrics and checkpoint files of a fold
+ * are written to before atomically replacing them once complete. Temporary names are
+ * unique to the process and thread writing them, so two runs of the same fold (e.g. by
+ * workers of a WorkQueue which both hold its lease until one notices it has lost it) never
+ * write to the same file, and each file is the complete output of one of them. Both are
+ * written at once, so a temporary file is only left behind by a run killed as it writes.
+ *
+ * @author Jonathan Fieldsend
+ * @version 1.1
+ */
+class OutputFile
+{
+    private static final String PROCESS = ManagementFactory.getRuntimeMXBean().getName().replace('@', '-'); // pid-host
+
+    /*
+     * private constructor to prevent direct construction externally
+     */
+    private OutputFile() {}
+
+    /**
+     * Returns the temporary file the calling thread writes file to
+     *
+     * @param file file being written
+     * @return temporary file, beside file
+     */
+    static Path temporary(Path file) {
+        return file.resolveSibling(file.getFileName() + "." + PROCESS + "-" + Thread.currentThread().getId() + ".tmp");
+    }
+
+    /**
+     * Atomically replaces file with its completed temporary file
+     *
+     * @param temporary temporary file written
+     * @param file file to replace
+     */
+    static void commit(Path temporary, Path file) throws IOException {
+        Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+}
@@ -4,19 +4,28 @@ package mogp;
  * Object holds experimental parameter values.
  * 
  * @author Jonathan Fieldsend 
- * @version 1.0
+ * @version 1.5
  */
 public class Parameters
 {
     final int MAX_LENGTH, POPULATION_SIZE, GENERATIONS, TOURNAMENT_SIZE, MAX_DEPTH=10; 
     final double MUTATION_PROBABILITY_PER_NODE, CROSSOVER_PROBABILITY;
+    final boolean RACING; // abandon evaluations which cannot beat the solution they would replace (-Dmogp.racing=true)
+    final boolean SIMPLIFY; // evaluate simplified forms of programs (-Dmogp.simplify=true)
+    final boolean SIMPLIFY_SAMPLING; // time every 256th program before and after simplification (-Dmogp.simplify.sample=true)
+    final int CHECKPOINT_INTERVAL; // evaluations between checkpoints, 0 if not checkpointing (-Dmogp.checkpoint=<evaluations>)
+    final boolean BINARY_RESULTS; // write results in the columnar binary format (-Dmogp.results=binary)
+    final int BATCH_SIZE; // test cases in each mini-batch evaluated, 0 to evaluate all test cases (-Dmogp.batch=<cases>)
+    final boolean VECTOR; // evaluate programs over blocks of test cases, with the Vector API when available (-Dmogp.vector=true)
+    final int WALL_CLOCK_LIMIT; // seconds of wall-clock time after which a run ends, 0 if unlimited (-Dmogp.wallclock=<seconds>)
+    final int CPU_TIME_LIMIT; // seconds of thread CPU time after which a run ends, 0 if unlimited (-Dmogp.cputime=<seconds>)
+    final boolean RANKED_TRUNCATION; // truncate dominated members of generational domination runs by Pareto rank (-Dmogp.truncation=ranked)
     
     /**
      * Constructor sets default parameter of the GP
      */
     Parameters() { 
-        MAX_LENGTH = 10000; POPULATION_SIZE = 10; GENERATIONS = 1000000;
-        TOURNAMENT_SIZE = 2; MUTATION_PROBABILITY_PER_NODE = 0.05; CROSSOVER_PROBABILITY = 0.9;
+        this(10000, 10, 1000000, 2, 0.05, 0.9);
     }
     
     /**
@@ -35,6 +44,16 @@ public class Parameters
         this.GENERATIONS = GENERATIONS; this.TOURNAMENT_SIZE = TOURNAMENT_SIZE; 
         this.MUTATION_PROBABILITY_PER_NODE = MUTATION_PROBABILITY_PER_NODE;
         this.CROSSOVER_PROBABILITY = CROSSOVER_PROBABILITY;
+        RACING = Boolean.getBoolean("mogp.racing");
+        SIMPLIFY = Boolean.getBoolean("mogp.simplify");
+        SIMPLIFY_SAMPLING = Boolean.getBoolean("mogp.simplify.sample");
+        CHECKPOINT_INTERVAL = Integer.getInteger("mogp.checkpoint", 0);
+        BINARY_RESULTS = "binary".equals(System.getProperty("mogp.results"));
+        BATCH_SIZE = Integer.getInteger("mogp.batch", 0);
+        VECTOR = Boolean.getBoolean("mogp.vector");
+        WALL_CLOCK_LIMIT = Integer.getInteger("mogp.wallclock", 0);
+        CPU_TIME_LIMIT = Integer.getInteger("mogp.cputime", 0);
+        RANKED_TRUNCATION = "ranked".equals(System.getProperty("mogp.truncation"));
     }
 
 }
@@ -0,0 +1,216 @@
+package mogp;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * PopulationDiversity tracks the semantic diversity of a search population from the
+ * packed tests passed of its members, updated as each member is inserted or removed
+ * rather than recomputed over all pairs of members.
+ *
+ * Three measures are kept: the number of distinct semantics (distinct vectors of tests
+ * passed, which for fixed targets are distinct program outputs), the mean Hamming
+ * distance between the tests passed of every pair of members, and the mean over tests
+ * of the entropy (in bits) of whether a member passes the test.
+ *
+ * The number of members passing each test is held as bit sliced counters: plane j of
+ * word w holds bit j of the count of each of the 64 tests of the word, so a member is
+ * added or removed with a ripple carry (or borrow) over the planes, a word at a time,
+ * which rarely passes beyond the lowest planes. Distinct semantics are counted with a
+ * map of each vector of tests passed to the members holding it. The sum of pairwise
+ * distances is the sum over tests of k(n-k), for k of the n members passing the test,
+ * so it and the entropy are summed over the counts when first read after an update,
+ * typically once a generation, rather than over pairs of members.
+ *
+ * @author Jonathan Fieldsend
+ * @version 1.0
+ */
+class PopulationDiversity
+{
+    private final Problem problem;
+    private final int words; // words of tests passed
+    private final int planes; // bits of each counter
+    private final long[] counters; // planes of the counters of each word, word-major
+    private final HashMap<Semantics,Integer> semantics = new HashMap<>(); // members with each vector of tests passed
+    private int size = 0; // number of members
+    private boolean summed = false; // true if the sums below are of the current members
+    private long sumOfDistances; // sum over tests of k(size-k), for k members passing the test
+    private double sumOfEntropies; // sum over tests of the entropy of a test being passed
+    private double[] entropies = new double[0]; // entropy of a test passed by k of size members, by k
+
+    /**
+     * Constructs the tracker of a population of at most capacity members
+     *
+     * @param problem problem the population is evaluated on
+     * @param capacity most members the population holds at once
+     */
+    PopulationDiversity(Problem problem, int capacity) {
+        this.problem = problem;
+        words = problem.getNumberOfTestWords();
+        planes = 32 - Integer.numberOfLeadingZeros(Math.max(1, capacity));
+        counters = new long[words*planes];
+    }
+
+    /**
+     * Adds an evaluated member to the population tracked
+     *
+     * @param s solution added
+     */
+    void add(ArraySolution s) {
+        long[] passed = s.getTestsPassedWords();
+        for (int w=0, base=0; w<words; w++, base+=planes) {
+            long carry = passed[w];
+            for (int j=0; (j<planes) && (carry != 0L); j++) {
+                long next = counters[base+j] & carry;
+                counters[base+j] ^= carry;
+                carry = next;
+            }
+            if (carry != 0L)
+                throw new IllegalStateException("Population tracked is larger than its capacity");
+        }
+        semantics.merge(new Semantics(passed), 1, Integer::sum);
+        size++;
+        summed = false;
+    }
+
+    /**
+     * Removes a member from the population tracked, whose tests passed must be unchanged
+     * since it was added
+     *
+     * @param s solution removed
+     */
+    void remove(ArraySolution s) {
+        long[] passed = s.getTestsPassedWords();
+        for (int w=0, base=0; w<words; w++, base+=planes) {
+            long borrow = passed[w];
+            for (int j=0; (j<planes) && (borrow != 0L); j++) {
+                long next = ~counters[base+j] & borrow;
+                counters[base+j] ^= borrow;
+                borrow = next;
+            }
+        }
+        Semantics key = new Semantics(passed);
+        if (semantics.merge(key, -1, Integer::sum) == 0)
+            semantics.remove(key);
+        size--;
+        summed = false;
+    }
+
+    /**
+     * Removes every member, e.g. before the population is re-evaluated
+     */
+    void clear() {
+        Arrays.fill(counters, 0L);
+        semantics.clear();
+        size = 0;
+        summed = false;
+    }
+
+    /**
+     * Returns the number of members tracked
+     *
+     * @return number of members
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of distinct vectors of tests passed in the population
+     *
+     * @return number of distinct semantics
+     */
+    int getDistinctSemantics() {
+        return semantics.size();
+    }
+
+    /**
+     * Returns the mean Hamming distance between the tests passed of each pair of
+     * members, 0.0 if there are fewer than two members
+     *
+     * @return mean pairwise distance
+     */
+    double getMeanPairwiseDistance() {
+        if (size < 2)
+            return 0.0;
+        sum();
+        return sumOfDistances / (0.5*size*(size-1));
+    }
+
+    /**
+     * Returns the mean over tests of the entropy, in bits, of a test being passed by a
+     * member of the population, 0.0 if there are no members
+     *
+     * @return mean entropy of each test
+     */
+    double getMeanCaseEntropy() {
+        if (size == 0)
+            return 0.0;
+        sum();
+        return sumOfEntropies / problem.fitnessCases;
+    }
+
+    /*
+     * Sums the pairwise distances and entropies over the count of each test, if there
+     * has been an update since they were last summed
+     */
+    private void sum() {
+        if (summed)
+            return;
+        if (entropies.length != size+1) {
+            entropies = new double[size+1];
+            for (int k=1; k<size; k++) {
+                double p = (double) k/size;
+                entropies[k] = -(p*Math.log(p) + (1-p)*Math.log1p(-p)) / Math.log(2);
+            }
+        }
+        // tests beyond the last test case are passed by no member, so add nothing
+        sumOfDistances = 0L;
+        sumOfEntropies = 0.0;
+        for (int w=0, base=0; w<words; w++, base+=planes) {
+            long any = 0L;
+            for (int j=0; j<planes; j++)
+                any |= counters[base+j];
+            for (; any != 0L; any &= any-1) {
+                int b = Long.numberOfTrailingZeros(any);
+                int k = 0;
+                for (int j=0; j<planes; j++)
+                    k |= (int) ((counters[base+j] >>> b) & 1L) << j;
+                sumOfDistances += (long) k*(size-k);
+                sumOfEntropies += entropies[k];
+            }
+        }
+        summed = true;
+    }
+
+    /*
+     * Vector of tests passed as a key of the semantics map. Words of truth tables often
+     * have equal halves, which Arrays.hashCode folds to zero, so each word is mixed in
+     * with a multiply instead
+     */
+    private static final class Semantics
+    {
+        private static final long MIX = 0x9E3779B97F4A7C15L; // odd multiplier of the golden ratio
+
+        private final long[] passed;
+        private final int hash;
+
+        Semantics(long[] passed) {
+            this.passed = passed;
+            long h = 0L;
+            for (long word : passed)
+                h = (h + word) * MIX;
+            hash = (int) (h ^ (h >>> 32));
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return (o instanceof Semantics) && (((Semantics) o).hash == hash) && Arrays.equals(((Semantics) o).passed, passed);
+        }
+    }
+}
@@ -3,13 +3,129 @@ package mogp;
 /**
  * Problem class is an abstract compound data structure that
  * concrete problems extend and add behaviour to.
- * 
- * @author Jonathan Fieldsend 
- * @version 1.0
+ *
+ * Test cases are held packed 64 to a word: case c is bit c%64 of word c/64,
+ * so that programs may be evaluated on 64 cases at once with bitwise operations.
+ * Problems are not changed once constructed, so may be shared across folds and threads.
+ *
+ * A problem may have several outputs, each case having a target for each. The
+ * targets are then a case by output bit matrix, with the targets of output o of
+ * the cases of word w packed in word w*outputNumber+o, and the tests seen by the
+ * maintenance regimes are the flattened (case, output) pairs: fitnessCases counts
+ * them, and test c*outputNumber+o is output o of case c. With a single output,
+ * tests and cases are the same.
+ *
+ * @author Jonathan Fieldsend
+ * @version 1.4
  */
 public abstract class Problem
 {
-    int variableNumber, fitnessCases; // holders for number of inputs and test cases
-    boolean[][] inputs; // matrix of inputs
-    boolean[] targets; // array of targets (one target for each input vector in the matrix of inputs)
-}
\ No newline at end of file
+    int variableNumber, fitnessCases; // holders for number of inputs and tests (cases times outputs)
+    int outputNumber = 1; // number of outputs of each case
+    long[] targetWords; // targets packed into words, the words of each output interleaved
+    private long[][] inputWords; // inputs packed into words for each variable, null if derived by a subclass
+
+    /**
+     * Sets the test cases of a problem whose cases are listed explicitly, packing
+     * them into words
+     *
+     * @param inputs matrix of inputs, one row per test case
+     * @param targets array of targets (one target for each input vector in the matrix of inputs)
+     */
+    void setCases(boolean[][] inputs, boolean[] targets) {
+        inputWords = new long[variableNumber][getNumberOfWords()];
+        targetWords = new long[getNumberOfWords()];
+        for (int c=0; c<fitnessCases; c++) {
+            for (int v=0; v<variableNumber; v++)
+                if (inputs[c][v])
+                    inputWords[v][c/64] |= 1L << (c%64);
+            if (targets[c])
+                targetWords[c/64] |= 1L << (c%64);
+        }
+    }
+
+    /**
+     * Sets the test cases of a problem from inputs and targets already packed into words,
+     * with any bits beyond the last test case clear
+     *
+     * @param inputWords packed inputs, one array of getNumberOfWords() words for each variable
+     * @param targetWords packed targets, getNumberOfTestWords() words with those of each output interleaved
+     */
+    void setCaseWords(long[][] inputWords, long[] targetWords) {
+        this.inputWords = inputWords;
+        this.targetWords = targetWords;
+    }
+
+    /**
+     * Returns the number of test cases, each of which has a target for each output
+     *
+     * @return number of test cases
+     */
+    int getNumberOfCases() {
+        return fitnessCases/outputNumber;
+    }
+
+    /**
+     * Returns the number of words the test cases are packed into
+     *
+     * @return number of words
+     */
+    int getNumberOfWords() {
+        return (getNumberOfCases()+63)/64;
+    }
+
+    /**
+     * Returns the number of words the targets, and the tests passed by a solution, are
+     * packed into: getNumberOfWords() for each output
+     *
+     * @return number of words
+     */
+    int getNumberOfTestWords() {
+        return getNumberOfWords()*outputNumber;
+    }
+
+    /**
+     * Returns the mask of bits of a word which hold test cases, all but the last
+     * word being full
+     *
+     * @param word index of word
+     * @return mask of test case bits
+     */
+    long getCaseMask(int word) {
+        int cases = getNumberOfCases() - 64*word;
+        return (cases >= 64) ? -1L : (1L << cases) - 1;
+    }
+
+    /**
+     * Fills values with the inputs of the test cases packed in a word, one word per variable
+     *
+     * @param word index of word
+     * @param values array of at least variableNumber elements to fill
+     */
+    void getInputWords(int word, long[] values) {
+        for (int v=0; v<variableNumber; v++)
+            values[v] = inputWords[v][word];
+    }
+
+    /**
+     * Fills block with the inputs of a block of consecutive words of test cases, one row
+     * per variable, so that each variable's words may be processed together
+     *
+     * @param first index of first word
+     * @param words number of words
+     * @param block array of at least variableNumber rows of at least words elements to fill
+     */
+    void getInputBlock(int first, int words, long[][] block) {
+        if (inputWords != null) {
+            for (int v=0; v<variableNumber; v++)
+                System.arraycopy(inputWords[v], first, block[v], 0, words);
+            return;
+        }
+        long[] values = new long[variableNumber]; // derived by a subclass a word at a time
+        for (int k=0; k<words; k++) {
+            getInputWords(first+k, values);
+            for (int v=0; v<variableNumber; v++)
+                block[v][k] = values[v];
+        }
+    }
+}
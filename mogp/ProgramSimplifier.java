@@ -0,0 +1,347 @@
+package mogp;
+
+import java.util.Arrays;
+
+/**
+ * ProgramSimplifier rewrites ArraySolution programs into smaller, semantically
+ * equivalent SimplifiedProgram evaluation forms. The program genotype is left
+ * untouched, so variation still acts on the evolved tree.
+ *
+ * Constant gates are folded, operands a gate ignores are pruned, negations are
+ * absorbed into the gates using them (collapsing double negation) and identical
+ * subtrees are merged, so that every remaining gate depends on two distinct operands.
+ *
+ * Also tracks the reduction in operators to evaluate, and, if requested with
+ * -Dmogp.simplify.sample=true, periodically samples the evaluation time of the original
+ * and simplified programs, to report the speedup gained over a run. Sampling evaluates
+ * the sampled programs twice more, so is off by default. These statistics are kept as
+ * Metrics counters.
+ *
+ * The working state of a simplification is held by an instance for each thread, so
+ * runs on separate threads may simplify programs at once.
+ *
+ * @author Jonathan Fieldsend
+ * @version 1.3
+ */
+class ProgramSimplifier
+{
+    private static final int SAMPLE_INTERVAL = 256; // number of programs simplified between timing samples
+
+    // gate numbers resulting from negating the first input, negating the second input,
+    // and swapping the inputs of each gate
+    private static final int[] NEGATE_FIRST = new int[16];
+    private static final int[] NEGATE_SECOND = new int[16];
+    private static final int[] SWAP_INPUTS = new int[16];
+    static {
+        for (int g=0; g<16; g++) {
+            int b3 = bit(g,3), b2 = bit(g,2), b1 = bit(g,1), b0 = bit(g,0);
+            NEGATE_FIRST[g] = (b1<<3) | (b0<<2) | (b3<<1) | b2;
+            NEGATE_SECOND[g] = (b2<<3) | (b3<<2) | (b0<<1) | b1;
+            SWAP_INPUTS[g] = (b3<<3) | (b1<<2) | (b2<<1) | b0;
+        }
+    }
+
+    // run statistics
+    private static final Metrics.Counter PROGRAMS = Metrics.counter("simplifier.programs");
+    private static final Metrics.Counter ORIGINAL_OPERATORS = Metrics.counter("simplifier.originalOperators");
+    private static final Metrics.Counter SIMPLIFIED_GATES = Metrics.counter("simplifier.simplifiedGates");
+    private static final Metrics.Counter SAMPLED_ORIGINAL_TIME = Metrics.counter("simplifier.sampledOriginalNanoseconds");
+    private static final Metrics.Counter SAMPLED_SIMPLIFIED_TIME = Metrics.counter("simplifier.sampledSimplifiedNanoseconds");
+    private static final Metrics.Timer SIMPLIFY_TIMER = Metrics.timer("simplifier.simplify");
+    private static final ThreadLocal<ProgramSimplifier> WORKSPACE = ThreadLocal.withInitial(ProgramSimplifier::new); // simplifier of each thread
+    private int sinceSample = 0; // programs simplified by the thread since its last timing sample
+
+    // working state while simplifying. References to intermediate values are encoded as
+    // twice an identifier, plus one if negated. Identifier 0 is the constant false,
+    // identifiers 1 to the number of terminals are the inputs, and larger identifiers
+    // are gate nodes
+    private int[] program;
+    private int pointer;
+    private NodeSet nodeSet;
+    private int firstNode; // identifier of first gate node
+    private int nodeCount;
+    private int[] nodeGates = new int[64], nodeLeft = new int[64], nodeRight = new int[64];
+    private long[] tableKeys = new long[128]; // hash table for merging identical gate nodes
+    private int[] tableNodes = new int[128]; // node index plus one, zero if empty
+
+    /*
+     * private constructor to prevent direct construction externally
+     */
+    private ProgramSimplifier() {}
+
+    /**
+     * Returns the simplified evaluation form of a program, a forest of a tree for each output
+     *
+     * @param program program array
+     * @param length number of elements in use in the program array
+     * @param nodeSet node set of the program
+     * @param outputs number of outputs, each the tree following that of the previous output
+     * @return simplified program
+     */
+    static SimplifiedProgram simplify(int[] program, int length, NodeSet nodeSet, int outputs) {
+        return WORKSPACE.get().run(program, length, nodeSet, outputs);
+    }
+
+    /*
+     * Simplifies a program with the working state of this instance
+     */
+    private SimplifiedProgram run(int[] program, int length, NodeSet nodeSet, int outputs) {
+        long start = SIMPLIFY_TIMER.start();
+        this.program = program;
+        this.nodeSet = nodeSet;
+        pointer = 0;
+        nodeCount = 0;
+        firstNode = nodeSet.getNumberOfTerminals() + 1;
+        int capacity = Integer.highestOneBit(Math.max(length, 32)) * 4;
+        if (tableKeys.length < capacity) {
+            tableKeys = new long[capacity];
+            tableNodes = new int[capacity];
+        } else {
+            Arrays.fill(tableNodes, 0);
+        }
+        if (nodeGates.length < length) {
+            nodeGates = new int[length];
+            nodeLeft = new int[length];
+            nodeRight = new int[length];
+        }
+        int[] roots = new int[outputs];
+        for (int o=0; o<outputs; o++) // later trees reuse the nodes of earlier ones
+            roots[o] = build();
+        this.program = null;
+        SimplifiedProgram simplified = compact(roots);
+
+        PROGRAMS.increment();
+        ORIGINAL_OPERATORS.add((length-outputs)/2);
+        SIMPLIFIED_GATES.add(simplified.size());
+        sinceSample++;
+        SIMPLIFY_TIMER.stop(start);
+        return simplified;
+    }
+
+    /*
+     * Recursively builds the gate nodes of the subtree starting at pointer, returning
+     * the reference to its value
+     */
+    private int build() {
+        int nodeValue = program[pointer++];
+        if (!nodeSet.isOperator(nodeValue))
+            return (nodeValue+1) << 1;
+        int g = nodeSet.getGate(nodeValue);
+        int a = build();
+        int b = build();
+        return gate(g, a, b);
+    }
+
+    /*
+     * Returns a reference to the value of gate g applied to references a and b, reducing
+     * the gate where possible
+     */
+    private int gate(int g, int a, int b) {
+        // absorb negated inputs into the gate
+        if ((a & 1) == 1) {
+            g = NEGATE_FIRST[g];
+            a ^= 1;
+        }
+        if ((b & 1) == 1) {
+            g = NEGATE_SECOND[g];
+            b ^= 1;
+        }
+        // inputs are now unnegated, so a constant input is always false
+        if ((a == 0) && (b == 0))
+            return bit(g,0);
+        if (a == 0)
+            return unary(b, bit(g,1), bit(g,0));
+        if (b == 0)
+            return unary(a, bit(g,2), bit(g,0));
+        if (a == b)
+            return unary(a, bit(g,3), bit(g,0));
+        if ((bit(g,3) == bit(g,2)) && (bit(g,1) == bit(g,0))) // second input ignored
+            return unary(a, bit(g,3), bit(g,1));
+        if ((bit(g,3) == bit(g,1)) && (bit(g,2) == bit(g,0))) // first input ignored
+            return unary(b, bit(g,3), bit(g,2));
+        // put in canonical form, lowest reference first and output false when both inputs are
+        // false, so that equivalent gates are merged
+        if (a > b) {
+            int temp = a;
+            a = b;
+            b = temp;
+            g = SWAP_INPUTS[g];
+        }
+        int negated = 0;
+        if (bit(g,0) == 1) {
+            g = 15 - g;
+            negated = 1;
+        }
+        return ((firstNode + node(g, a, b)) << 1) | negated;
+    }
+
+    /*
+     * Returns the reference to a function of x, which is trueOutput when x is true and
+     * falseOutput when x is false
+     */
+    private static int unary(int x, int trueOutput, int falseOutput) {
+        if (trueOutput == falseOutput)
+            return trueOutput; // constant
+        if (trueOutput == 1)
+            return x;
+        return x ^ 1;
+    }
+
+    /*
+     * Returns the index of the node applying gate g to a and b, creating it if an
+     * identical node does not already exist
+     */
+    private int node(int g, int a, int b) {
+        long key = ((long) g << 56) | ((long) a << 28) | b;
+        int mask = tableKeys.length - 1;
+        int h = (int) ((key * 0x9E3779B97F4A7C15L) >>> 40) & mask;
+        while (tableNodes[h] != 0) {
+            if (tableKeys[h] == key)
+                return tableNodes[h] - 1;
+            h = (h + 1) & mask;
+        }
+        nodeGates[nodeCount] = g;
+        nodeLeft[nodeCount] = a;
+        nodeRight[nodeCount] = b;
+        tableKeys[h] = key;
+        tableNodes[h] = ++nodeCount;
+        return nodeCount - 1;
+    }
+
+    /*
+     * Builds the evaluation form from the nodes the roots depend upon, allocating slots
+     * so that each is reused once the node value held is no longer needed
+     */
+    private SimplifiedProgram compact(int[] roots) {
+        int numberOfTerminals = nodeSet.getNumberOfTerminals();
+        // mark nodes the roots depend on -- operands always precede their nodes
+        int[] newIndex = new int[nodeCount];
+        int last = -1;
+        for (int root : roots) {
+            int rootId = root >> 1;
+            if (rootId >= firstNode) {
+                newIndex[rootId - firstNode] = 1;
+                last = Math.max(last, rootId - firstNode);
+            }
+        }
+        int used = 0;
+        for (int n=last; n>=0; n--) {
+            if (newIndex[n] != 0) {
+                used++;
+                markOperand(nodeLeft[n], newIndex);
+                markOperand(nodeRight[n], newIndex);
+            }
+        }
+        int[] gates = new int[used], left = new int[used], right = new int[used], slots = new int[used];
+        int[] lastUse = new int[used];
+        int index = 0;
+        for (int n=0; n<=last; n++) {
+            if (newIndex[n] != 0) {
+                newIndex[n] = index;
+                gates[index] = nodeGates[n];
+                left[index] = remap(nodeLeft[n], newIndex, lastUse, index);
+                right[index] = remap(nodeRight[n], newIndex, lastUse, index);
+                index++;
+            }
+        }
+        // root values are read once all gates are evaluated, so their slots are never freed
+        for (int root : roots)
+            if ((root >> 1) >= firstNode)
+                lastUse[newIndex[(root >> 1) - firstNode]] = used;
+        // allocate slots, freeing those of operands at their last use
+        int[] free = new int[used];
+        int freeCount = 0, numberOfSlots = 0;
+        for (int n=0; n<used; n++) {
+            if ((left[n] < 0) && (lastUse[-left[n]-1] == n))
+                free[freeCount++] = slots[-left[n]-1];
+            if ((right[n] < 0) && (lastUse[-right[n]-1] == n))
+                free[freeCount++] = slots[-right[n]-1];
+            slots[n] = (freeCount > 0) ? free[--freeCount] : numberOfSlots++;
+        }
+        // now operands are known, replace node operands with their slots
+        for (int n=0; n<used; n++) {
+            if (left[n] < 0)
+                left[n] = numberOfTerminals + slots[-left[n]-1];
+            if (right[n] < 0)
+                right[n] = numberOfTerminals + slots[-right[n]-1];
+        }
+        // roots which are constants or inputs have no gates to evaluate
+        int[] rootOperands = new int[roots.length];
+        boolean[] rootsNegated = new boolean[roots.length];
+        for (int o=0; o<roots.length; o++) {
+            int rootId = roots[o] >> 1;
+            rootOperands[o] = (rootId < firstNode) ? rootId - 1 : numberOfTerminals + slots[newIndex[rootId - firstNode]];
+            rootsNegated[o] = (roots[o] & 1) == 1;
+        }
+        return new SimplifiedProgram(gates, left, right, slots, numberOfSlots,
+            rootOperands, rootsNegated, numberOfTerminals);
+    }
+
+    /*
+     * Marks the node referenced by an operand as in use
+     */
+    private void markOperand(int reference, int[] inUse) {
+        int id = reference >> 1;
+        if (id >= firstNode)
+            inUse[id - firstNode] = 1;
+    }
+
+    /*
+     * Converts an operand reference to an input value, or to minus one minus the new
+     * index of the node referenced, recording the node's latest use
+     */
+    private int remap(int reference, int[] newIndex, int[] lastUse, int user) {
+        int id = reference >> 1;
+        if (id < firstNode)
+            return id - 1;
+        int operand = newIndex[id - firstNode];
+        lastUse[operand] = user;
+        return -operand - 1;
+    }
+
+    /*
+     * Returns bit k of gate number g
+     */
+    private static int bit(int g, int k) {
+        return (g >>> k) & 1;
+    }
+
+    /**
+     * Returns true if the timing of the program most recently simplified by the calling
+     * thread should be sampled
+     *
+     * @return true if a timing sample is due
+     */
+    static boolean isSampleDue() {
+        ProgramSimplifier simplifier = WORKSPACE.get();
+        if (simplifier.sinceSample < SAMPLE_INTERVAL)
+            return false;
+        simplifier.sinceSample = 0;
+        return true;
+    }
+
+    /**
+     * Records the time taken to evaluate a program on all test cases, before and
+     * after simplification
+     *
+     * @param originalTime nanoseconds taken by the original program
+     * @param simplifiedTime nanoseconds taken by the simplified program
+     */
+    static void recordSample(long originalTime, long simplifiedTime) {
+        SAMPLED_ORIGINAL_TIME.add(originalTime);
+        SAMPLED_SIMPLIFIED_TIME.add(simplifiedTime);
+    }
+
+    /**
+     * Display simplification statistics since the metrics were last reset to window
+     */
+    static void printInfo() {
+        long originalOperators = ORIGINAL_OPERATORS.get();
+        long simplifiedGates = SIMPLIFIED_GATES.get();
+        System.out.println("simplified programs: " + PROGRAMS.get());
+        System.out.println("operators: " + originalOperators + ", gates after simplification: " + simplifiedGates
+            + " (" + 100.0*(originalOperators-simplifiedGates)/Math.max(originalOperators,1) + "% reduction)");
+        if (SAMPLED_SIMPLIFIED_TIME.get() > 0)
+            System.out.println("sampled evaluation speedup: " + (double) SAMPLED_ORIGINAL_TIME.get()/SAMPLED_SIMPLIFIED_TIME.get() + " times");
+    }
+}
@@ -9,7 +9,7 @@ import java.util.HashMap;
  * of other approaches.
  * 
  * @author Jonathan Fieldsend 
- * @version 1.0
+ * @version 1.3
  */
 public class RandomBooleanGP
 {
@@ -46,10 +46,11 @@ public class RandomBooleanGP
      * Generates and evaluates the random solutions in the run
      * 
      * @return returns the total nunmber of evaluations required to solve the problem, if not solved, returns
-     * the number of evaluations set in the meta-parameters plus 1 
+     * the number of evaluations set in the meta-parameters plus 1, also returned if a time budget is used up
      */
-    int generateSolutions() {
+    int generateSolutions() throws java.io.IOException {
         int worstSolutionIndex, tempFitness, evaluationsToSolve=-1, counter =0;
+        RunBudget budget = new RunBudget(parameters);
         for (int i=0; i<parameters.POPULATION_SIZE*parameters.GENERATIONS; i++) {
             ArraySolution s = new ArraySolution(parameters,problem, nodeSet);
             while(s.size() > parameters.MAX_LENGTH)
@@ -72,6 +73,10 @@ public class RandomBooleanGP
             }
             if (counter%parameters.POPULATION_SIZE==0)
                 printStats(counter);
+            if (budget.isUsedUp()) {
+                budget.reportExpiry("evaluation " + counter);
+                break;
+            }
         }
         printStats(counter);
         if (evaluationsToSolve==-1) // if not solved, return the total expended plus one
@@ -91,23 +96,24 @@ public class RandomBooleanGP
      * Method evaluates the fitness of a population
      */
     void evaluate(ArraySolution s) {
+        long start = BooleanGP.EVALUATE_FITNESS_TIMER.start();
         maintenance.evaluateFitness(new HashMap<Integer, ArraySolution>(),s);
+        BooleanGP.EVALUATE_FITNESS_TIMER.stop(start);
     }
 
 
     /*
      * Helper method to print statistics
      */
-    private void printStats(int evals){
+    private void printStats(int evals) throws java.io.IOException {
         System.out.println("evals: " + evals + ", " +
             "Size of best: " + bestSize  + ", " +
             "Best fitness: " + bestPopulationFitness);
             
         System.out.println("Memory used: " + (Runtime.getRuntime().totalMemory()+Runtime.getRuntime().freeMemory())/1048576 + "M");    
             
-        results.bestFitness.add(bestPopulationFitness);
-        results.averageFitness.add(-1.0); // not sensible to track this, so -1.0 added
-        results.averageSize.add(-1.0); // not sensible to track this, so -1.0 added
-        results.bestSize.add(bestSize);
+        // not sensible to track averages or a set size, so -1 added
+        results.add(evals, bestPopulationFitness, -1.0, bestSize, -1.0, -1, -1, -1.0, -1.0);
+        results.writeBuffered();
     }
 }
@@ -3,34 +3,81 @@ import java.util.Random;
 
 /**
  * RandomNumberGenerator provides singleton class random
- * number generator.
- * 
- * @author Jonathan Fieldsend 
- * @version 1.0
+ * number generator. Each thread has its own generator, so that
+ * runs on separate threads are each reproducible from their seeds.
+ *
+ * @author Jonathan Fieldsend
+ * @version 1.3
  */
 public class RandomNumberGenerator
 {
-    private static final Random rng = new Random();
-    
+    private static final ThreadLocal<StatefulRandom> rng = ThreadLocal.withInitial(StatefulRandom::new); // generator of each thread
+
     /*
      * private constructor to prevent direct construction externally
      */
     private RandomNumberGenerator() {}
-    
+
     /**
-     * Returns the random number generator represented maintained 
-     * by the class
-     * 
+     * Returns the random number generator represented maintained
+     * by the class for the calling thread
+     *
      * @return returns a random number generator instance
      */
     static Random getRandom() {
-        return rng;        
+        return rng.get();
     }
-    
+
     /**
      * Sets the seed used by the random number generator represented by the class
+     * for the calling thread
      */
     static void setSeed(long seed) {
-        rng.setSeed(seed);
+        rng.get().setSeed(seed);
+    }
+
+    /**
+     * Gets the internal state of the calling thread's random number generator, so that it may be
+     * restored to continue the same sequence
+     *
+     * @return generator state
+     */
+    static long getState() {
+        return rng.get().state;
+    }
+
+    /**
+     * Restores the internal state of the calling thread's random number generator to one returned
+     * by getState
+     *
+     * @param state generator state
+     */
+    static void setState(long state) {
+        rng.get().state = state;
+    }
+
+    /*
+     * Random generating the same sequence as java.util.Random, but whose state
+     * can be read and restored. Gaussian values are not used by the optimisers, so
+     * their cached state is not tracked.
+     */
+    private static class StatefulRandom extends Random {
+        private static final long serialVersionUID = 1L;
+        private static final long MULTIPLIER = 0x5DEECE66DL;
+        private static final long ADDEND = 0xBL;
+        private static final long MASK = (1L << 48) - 1;
+        private long state; // not initialised here, as set by the superclass constructor
+
+        @Override
+        public synchronized void setSeed(long seed) {
+            super.setSeed(seed);
+            state = (seed ^ MULTIPLIER) & MASK;
+        }
+
+        @Override
+        protected int next(int bits) {
+            state = (state * MULTIPLIER + ADDEND) & MASK;
+            return (int) (state >>> (48 - bits));
+        }
     }
 }
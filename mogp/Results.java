@@ -1,61 +1,83 @@
 package mogp;
-import java.util.ArrayList;
 import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 /**
- * Object to hold and help print out results of GP runs
- * 
+ * Object to stream results of GP runs to file as they are tracked.
+ *
+ * Each call of add appends one record to the file, one line per generation holding the
+ * evaluations (or test cases run) so far, best fitness, average fitness, best size, average size, the
+ * Pareto set size (or -1 where the maintenance regime does not track one), and the
+ * distinct semantics, mean pairwise distance and mean case entropy of the search
+ * population (see PopulationDiversity, or -1 where there is no population), separated
+ * by ", ". The file starts with a header line beginning with '#'.
+ *
+ * Records are formatted directly into a buffer without boxing or string construction,
+ * which is written to the file at the end of each generation (see writeBuffered) and then
+ * reused, so memory use is constant over a run, the file is at most a generation behind
+ * it, and a file cut short by a crash parses up to its last complete line. Averages
+ * are written to six decimal places, with trailing zeros removed. (Before version 2.0 the
+ * file was written at the end of a run as five rows, one per statistic, with averages at
+ * full Double.toString precision.)
+ *
+ * The records written so far are held in each checkpoint, so a run restored from one, in
+ * any process, rewrites the file as it was when checkpointed and continues it. A run from a
+ * work queue checks its lease just before writing the records of each generation (see
+ * BooleanGP.endGeneration), so once it has lost the lease it writes no more of the file,
+ * which the worker now holding the lease rewrites, and discards its buffered records.
+ *
  * @author Jonathan Fieldsend
- * @version 1.0
+ * @version 2.5
  */
 class Results
 {
-    final ArrayList<Integer> bestFitness;
-    final ArrayList<Double> averageFitness;
-    final ArrayList<Integer> bestSize;
-    final ArrayList<Double> averageSize;
-    final ArrayList<Integer> paretoSetSize;
-    private FileWriter out;
-    
+    private static final String HEADER = " best fitness, average fitness, best size, average size, pareto set size, distinct semantics, mean pairwise distance, mean case entropy\n";
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int MAX_RECORD_LENGTH = 256; // comfortably larger than any formatted record
+    private static final long DECIMAL_SCALE = 1000000L; // averages written to six decimal places
+
+    final FileChannel channel;
+    final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE); // records not yet written to the channel
+    private final byte[] digits = new byte[20]; // scratch space for formatting numbers
+    private boolean started = false; // true once the file has been truncated and the header written
+    final boolean caseEvaluations; // true if test cases run are recorded, rather than evaluations
+
     /**
-     * Constructor to set up Results object to track GP results
-     * 
+     * Constructor to set up Results object to stream GP results to file. An existing file
+     * is not replaced until the first record is added, so a run restored from a checkpoint
+     * can instead continue the file it was writing.
+     *
      * @param filename  name of file to write to
      */
-    Results(String fileName) throws java.io.IOException {
-        out = new FileWriter(fileName);
-        int preallocationSize = 0;
-        bestFitness = new ArrayList<>(preallocationSize);
-        averageFitness = new ArrayList<>(preallocationSize);
-        bestSize = new ArrayList<>(preallocationSize);
-        averageSize = new ArrayList<>(preallocationSize);
-        paretoSetSize = new ArrayList<>(preallocationSize);
+    Results(String fileName) throws IOException {
+        this(fileName, false);
     }
-    
+
     /**
-     * Constructor allows efficiency gains to be leveraged if preallocation of
-     * array lists can be exploited
-     * 
+     * Constructor to set up Results object to stream GP results to file, recording the test
+     * cases run rather than the evaluations if caseEvaluations is set (e.g. when evaluating
+     * on mini-batches of test cases)
+     *
      * @param filename  name of file to write to
-     * @param preallocationSize number of elements to preallocate to arraylist attributes
+     * @param caseEvaluations true if the test cases run are recorded
      */
-    Results(String fileName, int preallocationSize) throws java.io.IOException {
-        out = new FileWriter(fileName);
-        bestFitness = new ArrayList<>(preallocationSize);
-        averageFitness = new ArrayList<>(preallocationSize);
-        bestSize = new ArrayList<>(preallocationSize);
-        averageSize = new ArrayList<>(preallocationSize);
-        paretoSetSize = new ArrayList<>(preallocationSize);
+    Results(String fileName, boolean caseEvaluations) throws IOException {
+        channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.caseEvaluations = caseEvaluations;
     }
-    
+
     /**
      * Helper method to write out an arbitary array to a file
-     * 
+     *
      * @param array array to write out
      * @param fileName name of file to write to
      */
-    static void writeArray(int[] array, String fileName) throws java.io.IOException {
+    static void writeArray(int[] array, String fileName) throws IOException {
         FileWriter out = new FileWriter(fileName);
-        for (int i = 0; i< array.length; i++){ 
+        for (int i = 0; i< array.length; i++){
             if (i== array.length-1)
                 out.write(array[i] + "\n");
             else
@@ -63,29 +85,192 @@ class Results
         }
         out.close();
     }
-    
+
     /**
-     * Method writes out each of the arrays of statistics to a file
-     */
-    void writeOut() throws java.io.IOException {
-        write(bestFitness);
-        write(averageFitness);
-        write(bestSize);
-        write(averageSize);
-        write(paretoSetSize);
-        out.close();
+     * Method appends the statistics of a generation to the results
+     *
+     * @param evaluations number of evaluations (or test cases run) so far
+     * @param bestFitness best fitness found so far
+     * @param averageFitness average fitness of the search population (-1.0 if not tracked)
+     * @param bestSize size of the best solution
+     * @param averageSize average size of the search population (-1.0 if not tracked)
+     * @param paretoSetSize size of the Pareto set or map of the maintenance regime (-1 if not tracked)
+     * @param distinctSemantics distinct semantics of the search population (-1 if not tracked)
+     * @param meanDistance mean pairwise distance of the search population (-1.0 if not tracked)
+     * @param meanEntropy mean case entropy of the search population (-1.0 if not tracked)
+     */
+    void add(long evaluations, int bestFitness, double averageFitness, int bestSize, double averageSize, int paretoSetSize, 
+            int distinctSemantics, double meanDistance, double meanEntropy) throws IOException {
+        if (!started)
+            start();
+        putRecord(evaluations, bestFitness, averageFitness, bestSize, averageSize, paretoSetSize, distinctSemantics, meanDistance, meanEntropy);
     }
-    
+
     /*
-     * write out comma seperated numerical results to file
+     * Formats a record into the buffer, first writing out the buffer if it may not fit
      */
-    private void write(ArrayList<? extends Number> list) throws java.io.IOException {
-        for (int i=0; i< list.size(); i++){
-            if (i==list.size()-1)
-                out.write(list.get(i).toString() + "\n");
-            else
-                out.write(list.get(i).toString() + ", ");
+    void putRecord(long evaluations, int bestFitness, double averageFitness, int bestSize, double averageSize, int paretoSetSize, 
+            int distinctSemantics, double meanDistance, double meanEntropy) throws IOException {
+        if (buffer.remaining() < MAX_RECORD_LENGTH)
+            flush();
+        putInt(evaluations);
+        putSeparator();
+        putInt(bestFitness);
+        putSeparator();
+        putDouble(averageFitness);
+        putSeparator();
+        putInt(bestSize);
+        putSeparator();
+        putDouble(averageSize);
+        putSeparator();
+        putInt(paretoSetSize);
+        putSeparator();
+        putInt(distinctSemantics);
+        putSeparator();
+        putDouble(meanDistance);
+        putSeparator();
+        putDouble(meanEntropy);
+        buffer.put((byte) '\n');
+    }
+
+    /**
+     * Method writes out any buffered records and closes the file
+     */
+    void writeOut() throws IOException {
+        if (!started)
+            start();
+        flush();
+        channel.close();
+    }
+
+    /**
+     * Method closes the file without writing out any buffered records, as for a run whose
+     * results are written by another process
+     */
+    void discard() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Method writes the records written so far to a checkpoint
+     *
+     * @param checkpoint checkpoint to write to
+     */
+    void writeState(Checkpoint checkpoint) throws IOException {
+        if (!started)
+            start();
+        flush();
+        ByteBuffer written = ByteBuffer.allocate((int) channel.position());
+        while (written.hasRemaining())
+            channel.read(written, written.position());
+        written.flip();
+        checkpoint.writeBytes(written);
+    }
+
+    /**
+     * Method continues the results from a checkpoint, replacing any records written
+     * with those written when the checkpoint was taken
+     *
+     * @param checkpoint checkpoint to read from
+     */
+    void readState(Checkpoint checkpoint) throws IOException {
+        ByteBuffer written = checkpoint.readBytes();
+        channel.truncate(0L);
+        channel.position(0L);
+        while (written.hasRemaining())
+            channel.write(written);
+        buffer.clear();
+        started = true;
+    }
+
+    /*
+     * Replaces any existing file contents with the header
+     */
+    private void start() throws IOException {
+        channel.truncate(0L);
+        channel.position(0L);
+        buffer.clear();
+        putHeader();
+        started = true;
+    }
+
+    /*
+     * Puts the header of the file into the buffer
+     */
+    void putHeader() {
+        buffer.put(((caseEvaluations ? "# case evaluations," : "# evaluations,") + HEADER).getBytes());
+    }
+
+    /**
+     * Method writes the records buffered so far to the file, at the end of a generation,
+     * reusing the buffer for those that follow
+     */
+    void writeBuffered() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+        buffer.clear();
+    }
+
+    /*
+     * Writes everything still to be written to the channel
+     */
+    void flush() throws IOException {
+        writeBuffered();
+    }
+
+    /*
+     * Writes the separator between the values of a record
+     */
+    private void putSeparator() {
+        buffer.put((byte) ',');
+        buffer.put((byte) ' ');
+    }
+
+    /*
+     * Formats a long value into the buffer as decimal digits
+     */
+    private void putInt(long value) {
+        if (value < 0) {
+            buffer.put((byte) '-');
+            value = -value;
+        }
+        int n = 0;
+        do {
+            digits[n++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        while (n > 0)
+            buffer.put(digits[--n]);
+    }
+
+    /*
+     * Formats a double value into the buffer to six decimal places, removing trailing zeros
+     * but keeping at least one decimal place. Values too large to scale exactly, which
+     * the tracked statistics never reach, fall back on Double.toString
+     */
+    private void putDouble(double value) {
+        if (!(Math.abs(value) < 1.0e12)) {
+            buffer.put(Double.toString(value).getBytes());
+            return;
+        }
+        long scaled = Math.round(value * DECIMAL_SCALE);
+        if (scaled < 0) {
+            buffer.put((byte) '-');
+            scaled = -scaled;
+        }
+        putInt(scaled / DECIMAL_SCALE);
+        buffer.put((byte) '.');
+        long fraction = scaled % DECIMAL_SCALE;
+        int places = 6;
+        while ((places > 1) && (fraction % 10 == 0)) {
+            fraction /= 10;
+            places--;
+        }
+        for (int i=places-1; i>=0; i--) {
+            digits[i] = (byte) ('0' + fraction % 10);
+            fraction /= 10;
         }
+        buffer.put(digits, 0, places);
     }
-    
 }
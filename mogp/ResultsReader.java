@@ -0,0 +1,233 @@
+package mogp;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+/**
+ * Reads the columnar binary results files written by ColumnarResults, by memory
+ * mapping the file and copying each column block straight into primitive arrays.
+ * Any incomplete block at the end of a file, left by a run which was killed, is ignored.
+ *
+ * Run as a program, converts binary results files (or every .bin file in the
+ * directories given) to the text layout written by Results, alongside the originals.
+ *
+ * @author Jonathan Fieldsend
+ * @version 1.2
+ */
+class ResultsReader
+{
+    final String maintenanceType;
+    final String problem;
+    final int populationSize;
+    final int fold;
+    final long seed;
+    final boolean caseEvaluations; // true if test cases run were recorded, rather than evaluations
+    final long[] evaluations;
+    final int[] bestFitness;
+    final double[] averageFitness;
+    final int[] bestSize;
+    final double[] averageSize;
+    final int[] paretoSetSize;
+    final int[] distinctSemantics; // -1 in files written before diversity was tracked
+    final double[] meanDistance;
+    final double[] meanEntropy;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length<1){
+            System.out.println("Insufficient arguments, requires: one or more binary results files or directories of them");
+            System.exit(1);
+        }
+        int converted = 0;
+        for (String arg : args) {
+            Path path = Paths.get(arg);
+            if (Files.isDirectory(path)) {
+                try (DirectoryStream<Path> files = Files.newDirectoryStream(path, "*.bin")) {
+                    for (Path file : files)
+                        if (isResultsFile(file)) {
+                            convert(file);
+                            converted++;
+                        }
+                }
+            } else {
+                convert(path);
+                converted++;
+            }
+        }
+        System.out.println("Converted " + converted + " results files");
+    }
+
+    /*
+     * Converts a binary results file to a text file of the same name ending in .txt
+     */
+    private static void convert(Path file) throws IOException {
+        String name = file.toString();
+        if (name.endsWith(".bin"))
+            name = name.substring(0, name.length()-4);
+        read(file).writeText(name + ".txt");
+    }
+
+    /**
+     * Returns true if file starts with the magic number of a binary results file, so
+     * that other binary files in a directory (e.g. checkpoints) are skipped
+     *
+     * @param file file to check
+     * @return true if a binary results file
+     */
+    static boolean isResultsFile(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < 8)
+                return false;
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, 8);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            return buffer.getInt() == ColumnarResults.MAGIC;
+        }
+    }
+
+    /**
+     * Reads a binary results file
+     *
+     * @param file file to read
+     * @return results read
+     */
+    static ResultsReader read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            return new ResultsReader(buffer, file);
+        }
+    }
+
+    /*
+     * Constructor reads the header and the complete blocks of the buffer
+     */
+    private ResultsReader(MappedByteBuffer buffer, Path file) throws IOException {
+        if ((buffer.remaining() < 8) || (buffer.getInt() != ColumnarResults.MAGIC))
+            throw new IOException("Not a binary results file: " + file);
+        int version = buffer.getInt();
+        if ((version < 1) || (version > ColumnarResults.VERSION))
+            throw new IOException("Binary results file of unknown version " + version + ": " + file);
+        caseEvaluations = (version > 1) && (buffer.get() != 0);
+        int evaluationBytes = (version > 1) ? 8 : 4; // evaluations were ints in version 1
+        boolean diversity = (version > 2); // diversity columns were added in version 3
+        int recordBytes = 28 + evaluationBytes + (diversity ? 20 : 0);
+        maintenanceType = getString(buffer);
+        problem = getString(buffer);
+        populationSize = buffer.getInt();
+        fold = buffer.getInt();
+        seed = buffer.getLong();
+        int start = buffer.position();
+
+        // first pass skips over the blocks to count the records in complete blocks
+        int records = 0;
+        int position = start;
+        while (buffer.limit() - position >= 4) {
+            int count = buffer.getInt(position);
+            if ((count <= 0) || (count > ColumnarResults.BLOCK_SIZE) || (buffer.limit() - position - 4 < (long) recordBytes*count))
+                break;
+            records += count;
+            position += 4 + recordBytes*count;
+        }
+        evaluations = new long[records];
+        bestFitness = new int[records];
+        averageFitness = new double[records];
+        bestSize = new int[records];
+        averageSize = new double[records];
+        paretoSetSize = new int[records];
+        distinctSemantics = new int[records];
+        meanDistance = new double[records];
+        meanEntropy = new double[records];
+
+        // second pass copies the columns of each block
+        int offset = 0;
+        position = start;
+        while (offset < records) {
+            int count = buffer.getInt(position);
+            position += 4;
+            if (evaluationBytes == 8) {
+                position = getColumn(buffer, position, evaluations, offset, count);
+            } else {
+                for (int i=0; i<count; i++)
+                    evaluations[offset+i] = buffer.getInt(position + 4*i);
+                position += 4*count;
+            }
+            position = getColumn(buffer, position, bestFitness, offset, count);
+            position = getColumn(buffer, position, averageFitness, offset, count);
+            position = getColumn(buffer, position, bestSize, offset, count);
+            position = getColumn(buffer, position, averageSize, offset, count);
+            position = getColumn(buffer, position, paretoSetSize, offset, count);
+            if (diversity) {
+                position = getColumn(buffer, position, distinctSemantics, offset, count);
+                position = getColumn(buffer, position, meanDistance, offset, count);
+                position = getColumn(buffer, position, meanEntropy, offset, count);
+            }
+            offset += count;
+        }
+        if (!diversity) {
+            Arrays.fill(distinctSemantics, -1);
+            Arrays.fill(meanDistance, -1.0);
+            Arrays.fill(meanEntropy, -1.0);
+        }
+    }
+
+    /**
+     * Returns the number of records read
+     *
+     * @return number of records
+     */
+    int size() {
+        return evaluations.length;
+    }
+
+    /**
+     * Writes the results in the text layout written by Results
+     *
+     * @param fileName name of file to write to
+     */
+    void writeText(String fileName) throws IOException {
+        Results results = new Results(fileName, caseEvaluations);
+        for (int i=0; i<evaluations.length; i++)
+            results.add(evaluations[i], bestFitness[i], averageFitness[i], bestSize[i], averageSize[i], paretoSetSize[i], 
+                distinctSemantics[i], meanDistance[i], meanEntropy[i]);
+        results.writeOut();
+    }
+
+    /*
+     * Copies count ints starting at position into column, returning the position after them
+     */
+    private static int getColumn(MappedByteBuffer buffer, int position, int[] column, int offset, int count) {
+        buffer.slice(position, 4*count).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(column, offset, count);
+        return position + 4*count;
+    }
+
+    /*
+     * Copies count longs starting at position into column, returning the position after them
+     */
+    private static int getColumn(MappedByteBuffer buffer, int position, long[] column, int offset, int count) {
+        buffer.slice(position, 8*count).order(ByteOrder.LITTLE_ENDIAN).asLongBuffer().get(column, offset, count);
+        return position + 8*count;
+    }
+
+    /*
+     * Copies count doubles starting at position into column, returning the position after them
+     */
+    private static int getColumn(MappedByteBuffer buffer, int position, double[] column, int offset, int count) {
+        buffer.slice(position, 8*count).order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer().get(column, offset, count);
+        return position + 8*count;
+    }
+
+    /*
+     * Reads a string written as its length in bytes followed by its UTF-8 encoding
+     */
+    private static String getString(MappedByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
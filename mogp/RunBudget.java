@@ -0,0 +1,119 @@
+package mogp;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * RunBudget holds the time budgets of a run, set by parameters.WALL_CLOCK_LIMIT and
+ * parameters.CPU_TIME_LIMIT, which end the run alongside its evaluation budget. Time
+ * is measured from when the budget is constructed, as the engine starts (or resumes)
+ * the run in this process, and CPU time is that of the thread running it.
+ *
+ * The budget is checked after every evaluation, so the check reads only System.nanoTime,
+ * and the progress of the run is only described, by reportExpiry, once it has expired.
+ * As a thread cannot use more CPU time than the wall-clock time which has passed, the
+ * thread CPU time, which is slower to read, is only read once enough wall-clock time has
+ * passed since it was last read for the CPU time budget to possibly be used up.
+ *
+ * @author Jonathan Fieldsend
+ * @version 1.1
+ */
+class RunBudget
+{
+    /**
+     * Time limits which may end a run
+     */
+    enum Limit
+    {
+        WALL_CLOCK("wall-clock"), CPU_TIME("CPU time");
+
+        private final String description; // as printed when the limit is used up
+
+        Limit(String description) {
+            this.description = description;
+        }
+
+        @Override
+        public String toString() {
+            return description;
+        }
+    }
+
+    private static final Metrics.Counter WALL_CLOCK_EXPIRED = Metrics.counter("budget.wallClockExpired");
+    private static final Metrics.Counter CPU_TIME_EXPIRED = Metrics.counter("budget.cpuTimeExpired");
+
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private final long wallClockLimit; // nanoseconds, 0 if unlimited
+    private final long cpuTimeLimit; // nanoseconds, 0 if unlimited
+    private final long wallClockStart = System.nanoTime();
+    private final long cpuTimeStart;
+    private long nextCpuTimeCheck; // wall-clock time before which the CPU time budget cannot be used up
+    private Limit expired; // limit which ended the run, null if none has
+
+    /**
+     * Constructs the budget of a run, starting now, on the calling thread
+     *
+     * @param parameters parameters of the run
+     */
+    RunBudget(Parameters parameters) {
+        wallClockLimit = parameters.WALL_CLOCK_LIMIT * 1000000000L;
+        cpuTimeLimit = parameters.CPU_TIME_LIMIT * 1000000000L;
+        cpuTimeStart = cpuTime();
+        nextCpuTimeCheck = wallClockStart + cpuTimeLimit;
+    }
+
+    /**
+     * Returns true if a time budget has been used up, recording which in the metrics of
+     * the run the first time it is found
+     *
+     * @return true if the run is to end
+     */
+    boolean isUsedUp() {
+        if (expired != null)
+            return true;
+        if ((wallClockLimit == 0L) && (cpuTimeLimit == 0L))
+            return false;
+        long now = System.nanoTime();
+        if ((wallClockLimit > 0L) && (now - wallClockStart >= wallClockLimit)) {
+            expired = Limit.WALL_CLOCK;
+            WALL_CLOCK_EXPIRED.increment();
+        } else if ((cpuTimeLimit > 0L) && (now - nextCpuTimeCheck >= 0L)) {
+            long remaining = cpuTimeLimit - (cpuTime() - cpuTimeStart);
+            if (remaining <= 0L) {
+                expired = Limit.CPU_TIME;
+                CPU_TIME_EXPIRED.increment();
+            } else {
+                nextCpuTimeCheck = now + remaining;
+            }
+        }
+        return expired != null;
+    }
+
+    /**
+     * Prints which time budget has been used up, once isUsedUp has found it has
+     *
+     * @param progress description of how far the run has progressed
+     */
+    void reportExpiry(String progress) {
+        System.out.println("The " + expired + " budget of " + ((expired == Limit.WALL_CLOCK) ? wallClockLimit : cpuTimeLimit)/1000000000L
+            + " seconds has been used up at " + progress);
+    }
+
+    /**
+     * Returns the limit which ended the run, null if none has
+     *
+     * @return limit used up
+     */
+    Limit getExpiredLimit() {
+        return expired;
+    }
+
+    /*
+     * Returns the CPU time of the calling thread, or the wall-clock time if the JVM does
+     * not measure thread CPU time, which never exceeds it
+     */
+    private long cpuTime() {
+        long time = threads.isCurrentThreadCpuTimeSupported() ? threads.getCurrentThreadCpuTime() : -1L;
+        return (time < 0L) ? System.nanoTime() : time;
+    }
+}
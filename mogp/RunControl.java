@@ -0,0 +1,223 @@
+package mogp;
+
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * RunControl exposes a running engine through JMX, registered with the platform MBean
+ * server as mogp:type=Run,name=&lt;run&gt;, where the run is the start of the names
+ * of the files the fold writes. Standard JMX tools attached to the process locally
+ * (e.g. jconsole) can then watch its progress and steer it.
+ *
+ * Attributes are read from the engine as it runs, without synchronisation, so may lag
+ * it slightly. Requests made by the operations are only acted on by the engine at the
+ * end of a generation (each population size evaluations of the steady state engine),
+ * where the state of the run is consistent and may be checkpointed.
+ *
+ * @author Jonathan Fieldsend
+ * @version 1.0
+ */
+class RunControl implements RunControlMBean
+{
+    private final BooleanGP engine;
+    private final int fold;
+    private final ObjectName name; // name registered under, null if registration failed
+    private final long startTime = System.nanoTime();
+    private final long startEvaluations; // evaluations when registered, non-zero if resumed
+    private long pausedTime = 0L; // nanoseconds spent paused
+    private long pauseStart; // time the current pause began
+    private boolean paused = false;
+    private boolean stopRequested = false;
+    private boolean checkpointRequested = false;
+
+    /**
+     * Registers the management interface of an engine, which may have been restored
+     * from a checkpoint but not yet run. If it cannot be registered, e.g. as a run of
+     * the same name is already registered, a message is printed and the run continues
+     * unmanaged.
+     *
+     * @param engine engine to manage
+     * @param run name of the run
+     * @param fold fold number of the run
+     * @return management interface, to be unregistered once the run ends
+     */
+    static RunControl register(BooleanGP engine, String run, int fold) {
+        ObjectName name = null;
+        try {
+            name = new ObjectName("mogp:type=Run,name=" + ObjectName.quote(run));
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            RunControl control = new RunControl(engine, fold, name);
+            server.registerMBean(control, name);
+            return control;
+        } catch (JMException e) {
+            System.out.println("Run not registered for management as " + name + ": " + e);
+            return new RunControl(engine, fold, null);
+        }
+    }
+
+    /*
+     * constructor of the management interface of engine
+     */
+    private RunControl(BooleanGP engine, int fold, ObjectName name) {
+        this.engine = engine;
+        this.fold = fold;
+        this.name = name;
+        startEvaluations = engine.evaluations;
+    }
+
+    /**
+     * Unregisters the management interface, once the run has ended
+     */
+    void unregister() {
+        if (name == null)
+            return;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        } catch (JMException e) {
+            System.out.println("Run not unregistered from management as " + name + ": " + e);
+        }
+    }
+
+    /**
+     * @InheritDoc
+     */
+    @Override
+    public int getFold() {
+        return fold;
+    }
+
+    /**
+     * @InheritDoc
+     */
+    @Override
+    public long getEvaluations() {
+        return engine.evaluations;
+    }
+
+    /**
+     * @InheritDoc
+     */
+    @Override
+    public synchronized double getEvaluationsPerSecond() {
+        long running = System.nanoTime() - startTime - pausedTime - (paused ? System.nanoTime() - pauseStart : 0L);
+        return (running > 0L) ? (engine.evaluations - startEvaluations) * 1.0e9 / running : 0.0;
+    }
+
+    /**
+     * @InheritDoc
+     */
+    @Override
+    public int getBestFitness() {
+        return engine.bestPopulationFitness;
+    }
+
+    /**
+     * @InheritDoc
+     */
+    @Override
+    public int getBestSize() {
+        return engine.bestSize;
+    }
+
+    /**
+     * @InheritDoc
+     */
+    @Override
+    public int getArchiveSize() {
+        return engine.archiveSize;
+    }
+
+    /**
+     * @InheritDoc
+     */
+    @Override
+    public long getHeapUsed() {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    /**
+     * @InheritDoc
+     */
+    @Override
+    public synchronized String getState() {
+        return stopRequested ? "stopping" : paused ? "paused" : "running";
+    }
+
+    /**
+     * @InheritDoc
+     */
+    @Override
+    public synchronized void requestCheckpoint() {
+        checkpointRequested = true;
+        notifyAll();
+    }
+
+    /**
+     * @InheritDoc
+     */
+    @Override
+    public synchronized void pause() {
+        if (!paused) {
+            paused = true;
+            pauseStart = System.nanoTime();
+        }
+    }
+
+    /**
+     * @InheritDoc
+     */
+    @Override
+    public synchronized void resume() {
+        if (paused) {
+            paused = false;
+            pausedTime += System.nanoTime() - pauseStart;
+        }
+        notifyAll();
+    }
+
+    /**
+     * @InheritDoc
+     */
+    @Override
+    public synchronized void stop() {
+        stopRequested = true;
+        notifyAll();
+    }
+
+    /**
+     * Returns true, and clears the request, if a checkpoint has been requested
+     *
+     * @return true if a checkpoint is to be written
+     */
+    synchronized boolean takeCheckpointRequest() {
+        boolean requested = checkpointRequested;
+        checkpointRequested = false;
+        return requested;
+    }
+
+    /**
+     * Returns true if the run is to stop
+     *
+     * @return true if stop requested
+     */
+    synchronized boolean isStopRequested() {
+        return stopRequested;
+    }
+
+    /**
+     * Waits, if the run is paused, until it is resumed or another request is made,
+     * returning true if it waited so that the engine acts on any request before
+     * calling again, and false at once if the run is not paused
+     *
+     * @return true if waited
+     */
+    synchronized boolean awaitWhilePaused() throws InterruptedException {
+        if (!paused || stopRequested)
+            return false;
+        while (paused && !stopRequested && !checkpointRequested)
+            wait();
+        return true;
+    }
+}
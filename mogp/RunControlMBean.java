@@ -0,0 +1,91 @@
+package mogp;
+
+/**
+ * Management interface of a running engine, as seen by JMX clients such as jconsole
+ * or jcmd. It is public, as the platform MBean server only introspects public
+ * interfaces; it is implemented by RunControl.
+ *
+ * @author Jonathan Fieldsend
+ * @version 1.0
+ */
+public interface RunControlMBean
+{
+    /**
+     * Returns the fold number of the run
+     *
+     * @return fold number
+     */
+    int getFold();
+
+    /**
+     * Returns the number of evaluations undertaken so far
+     *
+     * @return evaluations so far
+     */
+    long getEvaluations();
+
+    /**
+     * Returns the evaluations per second since the run started (or was resumed) in this
+     * process, excluding time spent paused
+     *
+     * @return evaluations per second
+     */
+    double getEvaluationsPerSecond();
+
+    /**
+     * Returns the fewest tests failed by a solution so far
+     *
+     * @return best fitness
+     */
+    int getBestFitness();
+
+    /**
+     * Returns the size of the smallest solution with the best fitness
+     *
+     * @return best size
+     */
+    int getBestSize();
+
+    /**
+     * Returns the size of the Pareto set or map of the maintenance regime at the end of
+     * the last generation, -1 if not tracked
+     *
+     * @return archive size
+     */
+    int getArchiveSize();
+
+    /**
+     * Returns the bytes of heap in use by the process
+     *
+     * @return heap used
+     */
+    long getHeapUsed();
+
+    /**
+     * Returns the state of the run: running, paused or stopping
+     *
+     * @return state of run
+     */
+    String getState();
+
+    /**
+     * Requests that a checkpoint be written at the end of the current generation
+     */
+    void requestCheckpoint();
+
+    /**
+     * Pauses the run at the end of the current generation, until resumed or stopped
+     */
+    void pause();
+
+    /**
+     * Resumes a paused run
+     */
+    void resume();
+
+    /**
+     * Stops the run at the end of the current generation, once a checkpoint to resume
+     * it from has been written
+     */
+    void stop();
+}
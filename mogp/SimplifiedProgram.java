@@ -0,0 +1,144 @@
+package mogp;
+
+/**
+ * SimplifiedProgram is a compact evaluation form of an ArraySolution
+ * program, produced by the ProgramSimplifier. The program is held as a
+ * directed acyclic graph of two input gates in topological order, each
+ * of which depends on both of its inputs. Each gate writes its output to a
+ * slot, with slots reused once the gate outputs held in them are no longer
+ * required.
+ *
+ * Gate operands are encoded as in the ArraySolution programs: values
+ * below the number of terminals refer to inputs, and larger values refer
+ * to slots (offset by the number of terminals).
+ *
+ * The program of a problem with several outputs has a root for each, and
+ * as identical subtrees are merged, gates may be shared between outputs.
+ * The slots of roots are never reused.
+ *
+ * @author Jonathan Fieldsend
+ * @version 1.3
+ */
+class SimplifiedProgram
+{
+    private final int[] gates; // gate number of each node
+    private final int[] left; // first operand of each node
+    private final int[] right; // second operand of each node
+    private final int[] slots; // slot each node writes its output to
+    private final int[] roots; // operand giving each program output, -1 if output is constant
+    private final boolean[] rootsNegated; // true if each program output is the negation of its root (or the constant is true)
+    private final int numberOfTerminals;
+    private final long[] values; // slot values when processing a word of test cases
+
+    /**
+     * Constructs the evaluation form from the node arrays built by the simplifier
+     *
+     * @param gates gate number of each node
+     * @param left first operand of each node
+     * @param right second operand of each node
+     * @param slots slot each node writes its output to
+     * @param numberOfSlots number of slots used
+     * @param roots operand giving each output, -1 if the output is constant
+     * @param rootsNegated true if each output is the negation of its root (or a constant true)
+     * @param numberOfTerminals number of terminals of the program's node set
+     */
+    SimplifiedProgram(int[] gates, int[] left, int[] right, int[] slots, int numberOfSlots,
+    int[] roots, boolean[] rootsNegated, int numberOfTerminals) {
+        this.gates = gates;
+        this.left = left;
+        this.right = right;
+        this.slots = slots;
+        this.roots = roots;
+        this.rootsNegated = rootsNegated;
+        this.numberOfTerminals = numberOfTerminals;
+        values = new long[numberOfSlots];
+    }
+
+    /**
+     * Returns the number of gates evaluated when processing the program
+     *
+     * @return number of gates
+     */
+    int size() {
+        return gates.length;
+    }
+
+    /**
+     * Run the program on the 64 test cases packed into each input word and get the outputs
+     * of a program of a single output
+     *
+     * @param inputs input values, one word per terminal
+     * @return outputs of the program packed into a word
+     */
+    long process(long[] inputs) {
+        run(inputs);
+        return output(0, inputs);
+    }
+
+    /**
+     * Run the program on the 64 test cases packed into each input word and get the outputs
+     * of every output of the program
+     *
+     * @param inputs input values, one word per terminal
+     * @param outputs array to fill with the outputs packed into a word, one word per output
+     */
+    void process(long[] inputs, long[] outputs) {
+        run(inputs);
+        for (int o=0; o<roots.length; o++)
+            outputs[o] = output(o, inputs);
+    }
+
+    /**
+     * Run the program on the block of words of test cases loaded by an evaluator, applying
+     * each gate to every word of the block with the evaluator's gate kernel, with the
+     * outputs of each slot held in the evaluator's row of that index. The rows holding
+     * each output are left in the evaluator's outputs.
+     *
+     * @param evaluator evaluator holding the inputs of the block
+     * @param words number of words in the block
+     */
+    void processBlock(BlockEvaluator evaluator, int words) {
+        for (int n=0; n<gates.length; n++)
+            evaluator.gate(gates[n], operandRow(left[n], evaluator), operandRow(right[n], evaluator), evaluator.row(slots[n]), 0, words);
+        for (int o=0; o<roots.length; o++) {
+            evaluator.outputs[o] = (roots[o] < 0) ? null : operandRow(roots[o], evaluator);
+            evaluator.negations[o] = rootsNegated[o] ? -1L : 0L;
+        }
+    }
+
+    /*
+     * Helper method returning the row of an operand when processing a block
+     */
+    private long[] operandRow(int code, BlockEvaluator evaluator) {
+        if (code < numberOfTerminals)
+            return evaluator.inputs[code];
+        return evaluator.row(code - numberOfTerminals);
+    }
+
+    /*
+     * Helper method evaluating every gate
+     */
+    private void run(long[] inputs) {
+        for (int n=0; n<gates.length; n++)
+            values[slots[n]] = NodeSet.processGate(gates[n], operand(left[n], inputs), operand(right[n], inputs));
+    }
+
+    /*
+     * Helper method returning the value of output o, once the gates have been evaluated
+     */
+    private long output(int o, long[] inputs) {
+        long negation = rootsNegated[o] ? -1L : 0L;
+        if (roots[o] < 0)
+            return negation;
+        return operand(roots[o], inputs) ^ negation;
+    }
+
+    /*
+     * Helper method returning the value of an operand
+     */
+    private long operand(int code, long[] inputs) {
+        if (code < numberOfTerminals)
+            return inputs[code];
+        return values[code - numberOfTerminals];
+    }
+}
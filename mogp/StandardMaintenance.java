@@ -3,16 +3,15 @@ package mogp;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.HashMap;
-import java.util.Collections;
 /**
  * StandardMaintence class is a vanilla implementation of the
  * GPMaintance interface, where fitness used in tournament selection 
  * is the aggregate fitness across test problems
  * 
  * @author Jonathan Fieldsend 
- * @version 1.1
+ * @version 1.6
  */
 public class StandardMaintenance implements GPMaintenance
 {
@@ -20,6 +19,17 @@ public class StandardMaintenance implements GPMaintenance
     Parameters parameters;
     ArraySolution bestFitnessSolution;
     MinimisationType type;
+    private final long[] inputs; // inputs of the word of test cases being run, one word per variable
+    private final long[] outputs; // program outputs on the word of test cases being run, one word per output
+    private int[] wordFailures; // failures observed on each word of test cases when racing
+    private int[] wordOrder; // order words of test cases are run in when racing, hardest first
+    private int racedEvaluations; // number of raced evaluations undertaken
+    private long caseEvaluations; // test cases run, including those verifying solutions to a mini-batch
+    private final BlockEvaluator blockEvaluator; // runs programs over blocks of test cases, null to run them a word at a time
+    private static final int TILE_BYTES = 16*1024; // size of the inputs of a tile of test cases run by a batch, to stay within the L1 cache
+    private static final Metrics.Timer EVALUATION_TIMER = Metrics.timer("evaluation"); // running programs on the test cases
+    private static final Metrics.Counter CASES_COUNTER = Metrics.counter("evaluation.cases"); // test cases run
+    private static final Metrics.Timer VERIFICATION_TIMER = Metrics.timer("evaluation.verification"); // checking solutions to a mini-batch on the complete problem
     
     /**
      * Constructor initialises with standard minimisation type (aggregate fitness)
@@ -42,6 +52,9 @@ public class StandardMaintenance implements GPMaintenance
         this.problem = problem;
         this.parameters = parameters;
         this.type = type;
+        this.inputs = new long[problem.variableNumber];
+        this.outputs = new long[problem.outputNumber];
+        this.blockEvaluator = parameters.VECTOR ? BlockEvaluator.create(problem) : null;
     } 
 
     /**
@@ -123,25 +136,313 @@ public class StandardMaintenance implements GPMaintenance
      */
     @Override
     public void evaluateFitness(HashMap<Integer, ArraySolution> pop, ArraySolution s) {
-        boolean[] results = new boolean[problem.fitnessCases];
-        int f = 0;
-        for (int i=0; i<problem.fitnessCases; i++ ){
-            InputVector.setInput(problem.inputs[i]);
-            if (s.process() != problem.targets[i]){
-                f++;
-                results[i] = false;
-            } else {
-                results[i] = true;
+        raceFitness(pop, s, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Get overall fitness of solution, abandoning the evaluation as soon as more than
+     * bound tests are failed if racing is enabled. Regimes which do not race always 
+     * evaluate the solution in full.
+     * 
+     * @param pop set of solutions
+     * @param s solution to evaluate
+     * @param bound maximum number of failed tests for s to be of use, typically from getRacingBound
+     * @return true if s was evaluated on all tests, false if the evaluation was abandoned
+     */
+    boolean evaluateFitness(HashMap<Integer, ArraySolution> pop, ArraySolution s, int bound) {
+        if (!isRacing()) {
+            evaluateFitness(pop,s);
+            return true;
+        }
+        return raceFitness(pop, s, bound);
+    }
+    
+    /**
+     * Get overall fitness of each solution of a batch, with the same outcome as calling
+     * evaluateFitness on each in turn. The programs are run together over tiles of words of
+     * test cases small enough to stay in the cache, so the inputs of each tile are loaded
+     * once for the whole batch, rather than streamed from memory once per program. When
+     * racing, the bound of each solution depends on those evaluated before it, so the
+     * solutions are raced in turn, none competing for a particular slot.
+     * 
+     * @param pop set of solutions
+     * @param batch solutions to evaluate
+     */
+    void evaluateFitness(HashMap<Integer, ArraySolution> pop, List<ArraySolution> batch) {
+        if (isRacing()) {
+            for (ArraySolution s : batch)
+                evaluateFitness(pop, s, getRacingBound(null));
+            return;
+        }
+        if (parameters.SIMPLIFY)
+            for (ArraySolution s : batch)
+                s.simplify();
+        long start = EVALUATION_TIMER.start();
+        long[][] results = new long[batch.size()][problem.getNumberOfTestWords()];
+        int[] failed = new int[batch.size()];
+        if (blockEvaluator != null) {
+            for (int first=0; first<problem.getNumberOfWords(); first+=blockEvaluator.blockWords) {
+                int words = blockEvaluator.loadBlock(first);
+                for (int i=0; i<batch.size(); i++)
+                    failed[i] -= blockEvaluator.evaluateBlock(batch.get(i), first, words, results[i]);
+            }
+            for (int i=0; i<batch.size(); i++)
+                failed[i] += problem.fitnessCases;
+        } else {
+            int tileWords = Math.max(1, TILE_BYTES/(8*Math.max(1, problem.variableNumber)));
+            long[][] tile = new long[tileWords][problem.variableNumber];
+            for (int first=0; first<problem.getNumberOfWords(); first+=tileWords) {
+                int end = Math.min(first+tileWords, problem.getNumberOfWords());
+                for (int w=first; w<end; w++)
+                    problem.getInputWords(w, tile[w-first]);
+                for (int i=0; i<batch.size(); i++)
+                    for (int w=first; w<end; w++)
+                        failed[i] += runWord(batch.get(i), w, tile[w-first], results[i]);
             }
         }
+        EVALUATION_TIMER.stop(start);
+        // record the results in order, so the regime state is as if evaluated one at a time
+        for (int i=0; i<batch.size(); i++)
+            recordFitness(pop, batch.get(i), results[i], failed[i]);
+    }
+
+    /**
+     * Records the results of s, evaluated on every test case, in s and the internal
+     * maintenance state. Every complete evaluation, whether of a single solution or of
+     * a member of a batch, is recorded through this method, so regimes which track the
+     * solutions evaluated override it, calling it first, rather than evaluateFitness.
+     * 
+     * @param pop set of solutions
+     * @param s solution evaluated
+     * @param results tests passed by s, packed as the targets
+     * @param failed number of tests failed by s
+     */
+    void recordFitness(HashMap<Integer, ArraySolution> pop, ArraySolution s, long[] results, int failed) {
+        s.setTestsPassed(results, failed);
+        CASES_COUNTER.add(problem.fitnessCases);
+        caseEvaluations += problem.fitnessCases;
+        if ((s.getSumOfTestsFailed() == 0) && (problem instanceof MiniBatchProblem))
+            verify(s);
         // track best seen so far
         if (bestFitnessSolution==null){
              bestFitnessSolution = s;
-        } else if (f < bestFitnessSolution.getSumOfTestsFailed()) {
+        } else if (s.getSumOfTestsFailed() < bestFitnessSolution.getSumOfTestsFailed()) {
             bestFitnessSolution = s;
         }
+    }
+    
+    /**
+     * Returns the largest number of failed tests a child may have and still be of use
+     * when it is to replace toReplace (the solution returned by negativeTournamentKey).
+     * If toReplace is null, the child is not competing for a particular slot.
+     * 
+     * @param toReplace solution the child would replace, or null
+     * @return maximum number of tests a child may fail
+     */
+    int getRacingBound(ArraySolution toReplace) {
+        if (toReplace == null)
+            return Integer.MAX_VALUE;
+        return toReplace.getSumOfTestsFailed();
+    }
+    
+    /**
+     * Returns true if this regime abandons evaluations which exceed the racing bound.
+     * Only regimes driven by aggregate fitness can race, as the others require 
+     * complete test vectors.
+     * 
+     * @return true if racing evaluation is enabled
+     */
+    boolean isRacing() {
+        return parameters.RACING;
+    }
+    
+    /**
+     * Restores s to the internal maintenance state, after it was nominated for removal
+     * by negativeTournamentKey but retained as the child competing with it was rejected
+     * 
+     * @param s solution to restore
+     */
+    void reinstate(ArraySolution s) {
+        // no state beyond the best solution, which is never removed
+    }
+    
+    /*
+     * Evaluates s on the test cases, 64 at a time, with the words of cases failed most
+     * often run first when racing, stopping once more than bound tests have been failed. 
+     * Returns true if all test cases were run, in which case the results are recorded
+     * by recordFitness. Complete evaluations are run over blocks of words by the block 
+     * evaluator, if there is one.
+     */
+    private boolean raceFitness(HashMap<Integer, ArraySolution> pop, ArraySolution s, int bound) {
+        if (parameters.SIMPLIFY)
+            s.simplify();
+        long start = EVALUATION_TIMER.start();
+        long[] results = new long[problem.getNumberOfTestWords()];
+        int f = 0;
+        if (isRacing()) {
+            if (wordOrder == null)
+                initialiseWordOrder();
+            int cases = 0;
+            for (int i=0; i<wordOrder.length; i++ ){
+                int w = wordOrder[i];
+                int failed = runWord(s, w, results);
+                cases += Long.bitCount(problem.getCaseMask(w))*outputs.length;
+                wordFailures[w] += failed;
+                f += failed;
+                if (f > bound) { // cannot be of use, so abandon
+                    EVALUATION_TIMER.stop(start);
+                    CASES_COUNTER.add(cases);
+                    caseEvaluations += cases;
+                    s.setPartialTestsPassed(results, f);
+                    updateWordOrder();
+                    return false;
+                }
+            }
+            updateWordOrder();
+        } else if (blockEvaluator != null) {
+            f = blockEvaluator.evaluate(s, results);
+        } else {
+            for (int w=0; w<problem.getNumberOfWords(); w++ )
+                f += runWord(s, w, results);
+        }
+        EVALUATION_TIMER.stop(start);
+        recordFitness(pop, s, results, f);
+        return true;
+    }
+    
+    /*
+     * Runs s on word w of test cases, setting the tests passed on each output in results
+     * (packed as the targets), and returns the number of tests failed
+     */
+    private int runWord(ArraySolution s, int w, long[] results) {
+        problem.getInputWords(w, inputs);
+        return runWord(s, w, inputs, results);
+    }
+    
+    /*
+     * Runs s on word w of test cases, whose inputs have already been loaded into wordInputs
+     */
+    private int runWord(ArraySolution s, int w, long[] wordInputs, long[] results) {
+        long mask = problem.getCaseMask(w);
+        s.process(wordInputs, outputs);
+        int failed = 0;
+        for (int o=0, t=w*outputs.length; o<outputs.length; o++, t++) {
+            results[t] = ~(outputs[o] ^ problem.targetWords[t]) & mask;
+            failed += Long.bitCount(mask) - Long.bitCount(results[t]);
+        }
+        return failed;
+    }
+    
+    /*
+     * Checks a solution which passed every test case of its mini-batch on the complete
+     * problem, recording that it failed verification if it does not solve it. Solutions
+     * which have already failed verification are not checked again.
+     */
+    private void verify(ArraySolution s) {
+        if (!s.hasFailedVerification()) {
+            Problem complete = ((MiniBatchProblem) problem).problem;
+            long start = VERIFICATION_TIMER.start();
+            boolean solved = true;
+            int cases = 0;
+            for (int w=0; (w<complete.getNumberOfWords()) && solved; w++) {
+                long mask = complete.getCaseMask(w);
+                complete.getInputWords(w, inputs);
+                s.process(inputs, outputs);
+                for (int o=0; o<outputs.length; o++)
+                    solved &= ((outputs[o] ^ complete.targetWords[w*outputs.length + o]) & mask) == 0L;
+                cases += Long.bitCount(mask)*outputs.length;
+            }
+            VERIFICATION_TIMER.stop(start);
+            CASES_COUNTER.add(cases);
+            caseEvaluations += cases;
+            if (solved)
+                return;
+        }
+        s.failVerification();
+    }
+    
+    /**
+     * Returns the number of test cases run by the regime, including those run to
+     * verify solutions to a mini-batch on the complete problem
+     * 
+     * @return number of test cases run
+     */
+    long getCaseEvaluations() {
+        return caseEvaluations;
+    }
+    
+    /**
+     * @InheritDoc
+     */
+    @Override
+    public void reevaluate(HashMap<Integer, ArraySolution> pop) {
+        clear();
+        for (int i=0; i<pop.size(); i++)
+            evaluateFitness(pop, pop.get(i));
+    }
+    
+    /**
+     * Clears the internal maintenance state, before the population is re-evaluated
+     */
+    void clear() {
+        bestFitnessSolution = null;
+        wordFailures = null; // failure counts are of the words of the previous test cases
+        wordOrder = null;
+        racedEvaluations = 0;
+    }
+    
+    /*
+     * Sets up the racing order of words of test cases and the tracked failures on each
+     */
+    private void initialiseWordOrder() {
+        wordFailures = new int[problem.getNumberOfWords()];
+        wordOrder = new int[problem.getNumberOfWords()];
+        for (int i=0; i<wordOrder.length; i++)
+            wordOrder[i] = i;
+    }
+    
+    /*
+     * Re-sorts the racing order so that most failed words come first. Only done
+     * once every population size evaluations, as the failure counts change slowly
+     */
+    private void updateWordOrder() {
+        racedEvaluations++;
+        if (racedEvaluations % parameters.POPULATION_SIZE != 0)
+            return;
+        // insertion sort, as the order is nearly sorted from last time
+        for (int i=1; i<wordOrder.length; i++) {
+            int w = wordOrder[i];
+            int j = i-1;
+            while ((j >= 0) && (wordFailures[wordOrder[j]] < wordFailures[w])) {
+                wordOrder[j+1] = wordOrder[j];
+                j--;
+            }
+            wordOrder[j+1] = w;
+        }
+    }
 
-        s.setTestsPassed(results);  
+    /**
+     * @InheritDoc
+     */
+    @Override
+    public void writeState(Checkpoint checkpoint) {
+        checkpoint.writeSolution(bestFitnessSolution);
+        checkpoint.writeInts(wordFailures);
+        checkpoint.writeInts(wordOrder);
+        checkpoint.writeInt(racedEvaluations);
+        checkpoint.writeLong(caseEvaluations);
+    }
+    
+    /**
+     * @InheritDoc
+     */
+    @Override
+    public void readState(Checkpoint checkpoint) {
+        bestFitnessSolution = checkpoint.readSolution();
+        wordFailures = checkpoint.readInts();
+        wordOrder = checkpoint.readInts();
+        racedEvaluations = checkpoint.readInt();
+        caseEvaluations = checkpoint.readLong();
     }
 
     /**
@@ -173,7 +474,7 @@ public class StandardMaintenance implements GPMaintenance
         HashMap<Integer,ArraySolution> combinedPopulation = new HashMap<>(pop);
         combinedPopulation.putAll(children);
 
-        Set<ArraySolution> setOfBestSolutions = new HashSet<>();
+        Set<ArraySolution> setOfBestSolutions = new LinkedHashSet<>();
         setOfBestSolutions.add(bestFitnessSolution); // always take best
         while (setOfBestSolutions.size() < parameters.POPULATION_SIZE) {
             setOfBestSolutions.add(tournamentWithParsimony(combinedPopulation));
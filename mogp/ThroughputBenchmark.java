@@ -0,0 +1,299 @@
+package mogp;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * ThroughputBenchmark runs whole optimisation runs with fixed seeds and a fixed budget
+ * of evaluations over a sweep of maintenance types, problems and population sizes,
+ * reporting the throughput of each configuration as JSON, and optionally comparing it
+ * against a stored baseline to flag regressions.
+ *
+ * Each configuration is first run for a number of warm-up folds, which are not recorded,
+ * and then for a number of measured folds (seeded by fold number, as in BooleanGP), whose
+ * evaluations per second, wall time, bytes allocated per second and per evaluation, and
+ * peak heap use are averaged. Runs which solve their problem stop early, so throughput
+ * is always relative to the evaluations actually undertaken.
+ *
+ * Arguments are optional, given as name=value:
+ * <p>
+ * types, comma separated maintenance types (default B,BP,F,FP,L,LP,S,SP,D,DP,E,EP);
+ * <p>
+ * problems, comma separated problem numbers, as used by BooleanGP (default 2,4,8,16,106,206);
+ * <p>
+ * populations, comma separated population sizes (default 100);
+ * <p>
+ * engine, steady, generational or both (default steady);
+ * <p>
+ * budget, evaluations per run (default 20000);
+ * <p>
+ * warmup, number of warm-up folds (default 1);
+ * <p>
+ * folds, number of measured folds (default 3);
+ * <p>
+ * output, JSON file to write (default throughput.json);
+ * <p>
+ * baseline, JSON file written by an earlier run to compare against (default none);
+ * <p>
+ * threshold, fractional change beyond which a difference from the baseline is flagged
+ * as a regression (default 0.1).
+ * <p>
+ * Exits with status 2 if any regression is flagged.
+ *
+ * @author Jonathan Fieldsend
+ * @version 1.0
+ */
+class ThroughputBenchmark
+{
+    private static final int MAX_LENGTH = 10000; // maximum tree size, as used in the GECCO paper
+    private static final HashMap<String,Problem> problems = new HashMap<>(); // problems are immutable, so built once and shared by all runs
+    private static final Pattern FIELD = Pattern.compile("\"(\\w+)\":\\s*(?:\"([^\"]*)\"|([-+0-9.eE]+))");
+
+    /*
+     * Measurements of a configuration, averaged over its measured folds
+     */
+    private static class Measurement {
+        String engine, type, problem;
+        int population;
+        double evaluations, wallSeconds, evaluationsPerSecond, allocatedBytesPerSecond, allocatedBytesPerEvaluation, peakHeapBytes;
+
+        String key() {
+            return engine + " " + type + " problem=" + problem + " pop=" + population;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        HashMap<String,String> options = new HashMap<>();
+        for (String arg : args) {
+            int split = arg.indexOf('=');
+            if (split < 0) {
+                System.out.println("Arguments must be given as name=value: " + arg);
+                System.exit(1);
+            }
+            options.put(arg.substring(0, split), arg.substring(split+1));
+        }
+        String[] types = options.getOrDefault("types", "B,BP,F,FP,L,LP,S,SP,D,DP,E,EP").split(",");
+        String[] problems = options.getOrDefault("problems", "2,4,8,16,106,206").split(",");
+        String[] populations = options.getOrDefault("populations", "100").split(",");
+        String engineOption = options.getOrDefault("engine", "steady");
+        String[] engines = engineOption.equals("both") ? new String[] {"steady", "generational"} : new String[] {engineOption};
+        int budget = Integer.parseInt(options.getOrDefault("budget", "20000"));
+        int warmup = Integer.parseInt(options.getOrDefault("warmup", "1"));
+        int folds = Integer.parseInt(options.getOrDefault("folds", "3"));
+        String output = options.getOrDefault("output", "throughput.json");
+        double threshold = Double.parseDouble(options.getOrDefault("threshold", "0.1"));
+
+        List<Measurement> measurements = new ArrayList<>();
+        for (String engine : engines)
+            for (String problem : problems)
+                for (String population : populations)
+                    for (String type : types) {
+                        Measurement m = measure(engine, type.trim(), problem.trim(), Integer.parseInt(population.trim()), budget, warmup, folds);
+                        measurements.add(m);
+                        System.out.println(String.format(Locale.ROOT, "%-40s %12.0f evals/s %10.3f s %14.0f B/eval %8.1f MB peak heap",
+                            m.key(), m.evaluationsPerSecond, m.wallSeconds, m.allocatedBytesPerEvaluation, m.peakHeapBytes/1048576));
+                    }
+        writeJson(measurements, budget, warmup, folds, output);
+        System.out.println("Results written to " + output);
+
+        if (options.containsKey("baseline")) {
+            int regressions = compare(measurements, readJson(options.get("baseline")), threshold);
+            if (regressions > 0) {
+                System.out.println(regressions + " regressions beyond threshold of " + threshold);
+                System.exit(2);
+            }
+            System.out.println("No regressions beyond threshold of " + threshold);
+        }
+    }
+
+    /*
+     * Runs the warm-up and measured folds of a configuration, returning the averaged measurements
+     */
+    private static Measurement measure(String engine, String type, String problem, int population, int budget, int warmup, int folds) throws IOException {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        Measurement m = new Measurement();
+        m.engine = engine;
+        m.type = type;
+        m.problem = problem;
+        m.population = population;
+        double allocated = 0.0;
+        for (int fold=1; fold<=warmup+folds; fold++) {
+            resetPeakHeap();
+            long bytes = threads.getThreadAllocatedBytes(thread);
+            long start = System.nanoTime();
+            int evaluations = run(engine, type, problem, population, budget, fold);
+            double seconds = (System.nanoTime() - start)/1e9;
+            bytes = threads.getThreadAllocatedBytes(thread) - bytes;
+            if (fold > warmup) {
+                m.evaluations += evaluations;
+                m.wallSeconds += seconds;
+                allocated += bytes;
+                m.peakHeapBytes = Math.max(m.peakHeapBytes, peakHeap());
+            }
+        }
+        m.evaluationsPerSecond = m.evaluations/m.wallSeconds;
+        m.allocatedBytesPerSecond = allocated/m.wallSeconds;
+        m.allocatedBytesPerEvaluation = allocated/m.evaluations;
+        m.evaluations /= folds;
+        m.wallSeconds /= folds;
+        return m;
+    }
+
+    /*
+     * Runs one fold of a configuration, with its output suppressed, returning the number of
+     * evaluations undertaken
+     */
+    private static int run(String engine, String type, String problemNumber, int population, int budget, int fold) throws IOException {
+        PrintStream out = System.out;
+        File resultsFile = File.createTempFile("throughput", ".txt");
+        try {
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            Problem problem = problems.get(problemNumber);
+            if (problem == null) {
+                problem = BooleanGP.createProblem(problemNumber);
+                problems.put(problemNumber, problem);
+            }
+            Parameters parameters = new Parameters(MAX_LENGTH, population, Math.max(budget/population, 2), 2, 0.05, 0.9);
+            Problem evaluated = BooleanGP.createEvaluatedProblem(type, problem, parameters);
+            GPMaintenance maintenance = BooleanGP.createMaintenance(type, evaluated, parameters);
+            Results results = new Results(resultsFile.getPath());
+            BooleanGP gp = engine.equals("generational")
+                ? new GenerationalBooleanGP((long) fold, evaluated, parameters, maintenance, results)
+                : new BooleanGP((long) fold, evaluated, parameters, maintenance, results);
+            gp.evolve();
+            gp.writeResultsFile();
+            return gp.evaluations;
+        } finally {
+            System.setOut(out);
+            resultsFile.delete();
+        }
+    }
+
+    /*
+     * Resets the tracked peak use of the heap memory pools
+     */
+    private static void resetPeakHeap() {
+        System.gc();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+            if (pool.getType() == MemoryType.HEAP)
+                pool.resetPeakUsage();
+    }
+
+    /*
+     * Returns the sum of the peak use of the heap memory pools since they were last reset
+     */
+    private static long peakHeap() {
+        long peak = 0L;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+            if (pool.getType() == MemoryType.HEAP)
+                peak += pool.getPeakUsage().getUsed();
+        return peak;
+    }
+
+    /*
+     * Compares measurements against a baseline, printing and returning the number of
+     * configurations whose throughput fell, or whose allocation per evaluation or peak heap
+     * rose, by more than the threshold
+     */
+    private static int compare(List<Measurement> measurements, List<Measurement> baseline, double threshold) {
+        HashMap<String,Measurement> previous = new HashMap<>();
+        for (Measurement b : baseline)
+            previous.put(b.key(), b);
+        int regressions = 0;
+        for (Measurement m : measurements) {
+            Measurement b = previous.get(m.key());
+            if (b == null) {
+                System.out.println("not in baseline: " + m.key());
+                continue;
+            }
+            boolean regressed = false;
+            regressed |= flag(m.key(), "evaluations per second", m.evaluationsPerSecond, b.evaluationsPerSecond, -threshold);
+            regressed |= flag(m.key(), "bytes allocated per evaluation", m.allocatedBytesPerEvaluation, b.allocatedBytesPerEvaluation, threshold);
+            regressed |= flag(m.key(), "peak heap bytes", m.peakHeapBytes, b.peakHeapBytes, threshold);
+            if (regressed)
+                regressions++;
+        }
+        return regressions;
+    }
+
+    /*
+     * Prints and returns true if value has changed from the baseline by more than the
+     * threshold, in the direction of its sign
+     */
+    private static boolean flag(String key, String name, double value, double baseline, double threshold) {
+        double change = (value - baseline)/baseline;
+        if ((threshold < 0) ? (change < threshold) : (change > threshold)) {
+            System.out.println(String.format(Locale.ROOT, "REGRESSION %s: %s %.1f (baseline %.1f, %+.1f%%)",
+                key, name, value, baseline, 100*change));
+            return true;
+        }
+        return false;
+    }
+
+    /*
+     * Writes the measurements as JSON, one configuration per line of the results array
+     */
+    private static void writeJson(List<Measurement> measurements, int budget, int warmup, int folds, String fileName) throws IOException {
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(Paths.get(fileName)))) {
+            out.println("{");
+            out.println("  \"budget\": " + budget + ",");
+            out.println("  \"warmupFolds\": " + warmup + ",");
+            out.println("  \"folds\": " + folds + ",");
+            out.println("  \"javaVersion\": \"" + System.getProperty("java.version") + "\",");
+            out.println("  \"results\": [");
+            for (int i=0; i<measurements.size(); i++) {
+                Measurement m = measurements.get(i);
+                out.println(String.format(Locale.ROOT, "    {\"engine\": \"%s\", \"type\": \"%s\", \"problem\": \"%s\", \"population\": %d, "
+                    + "\"evaluations\": %.1f, \"wallSeconds\": %.6f, \"evaluationsPerSecond\": %.3f, \"allocatedBytesPerSecond\": %.1f, "
+                    + "\"allocatedBytesPerEvaluation\": %.1f, \"peakHeapBytes\": %.0f}%s",
+                    m.engine, m.type, m.problem, m.population, m.evaluations, m.wallSeconds, m.evaluationsPerSecond,
+                    m.allocatedBytesPerSecond, m.allocatedBytesPerEvaluation, m.peakHeapBytes, (i < measurements.size()-1) ? "," : ""));
+            }
+            out.println("  ]");
+            out.println("}");
+        }
+    }
+
+    /*
+     * Reads the measurements of a JSON file written by writeJson
+     */
+    private static List<Measurement> readJson(String fileName) throws IOException {
+        List<Measurement> measurements = new ArrayList<>();
+        for (String line : Files.readAllLines(Paths.get(fileName))) {
+            if (!line.contains("\"engine\""))
+                continue;
+            HashMap<String,String> fields = new HashMap<>();
+            Matcher matcher = FIELD.matcher(line);
+            while (matcher.find())
+                fields.put(matcher.group(1), (matcher.group(2) != null) ? matcher.group(2) : matcher.group(3));
+            Measurement m = new Measurement();
+            m.engine = fields.get("engine");
+            m.type = fields.get("type");
+            m.problem = fields.get("problem");
+            m.population = Integer.parseInt(fields.get("population"));
+            m.evaluations = Double.parseDouble(fields.get("evaluations"));
+            m.wallSeconds = Double.parseDouble(fields.get("wallSeconds"));
+            m.evaluationsPerSecond = Double.parseDouble(fields.get("evaluationsPerSecond"));
+            m.allocatedBytesPerSecond = Double.parseDouble(fields.get("allocatedBytesPerSecond"));
+            m.allocatedBytesPerEvaluation = Double.parseDouble(fields.get("allocatedBytesPerEvaluation"));
+            m.peakHeapBytes = Double.parseDouble(fields.get("peakHeapBytes"));
+            measurements.add(m);
+        }
+        return measurements;
+    }
+}
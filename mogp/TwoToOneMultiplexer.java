@@ -5,7 +5,7 @@ package mogp;
  * multiplexer problem class.
  * 
  * @author Jonathan Fieldsend
- * @version 1.0
+ * @version 1.1
  */
 class TwoToOneMultiplexer extends Problem
 {
@@ -17,24 +17,25 @@ class TwoToOneMultiplexer extends Problem
     {
         super.variableNumber = 3;
         super.fitnessCases = 8;
-        super.inputs = new boolean[super.fitnessCases][variableNumber];
-        super.targets = new boolean[super.fitnessCases];
+        boolean[][] inputs = new boolean[super.fitnessCases][super.variableNumber];
+        boolean[] targets = new boolean[super.fitnessCases];
         
-        super.inputs[0] = new boolean[]{true, false, false};
-        super.targets[0] = false;
-        super.inputs[1] = new boolean[]{false, false, false};
-        super.targets[1] = false;
-        super.inputs[2] = new boolean[]{true, true, false};
-        super.targets[2] = true;
-        super.inputs[3] = new boolean[]{false, true, false};
-        super.targets[3] = true;
-        super.inputs[4] = new boolean[]{true, true, true};
-        super.targets[4] = true;
-        super.inputs[5] = new boolean[]{true, false, true};
-        super.targets[5] = true;
-        super.inputs[6] = new boolean[]{false, true, true};
-        super.targets[6] = false;
-        super.inputs[7] = new boolean[]{false, false, true};
-        super.targets[7] = false;
+        inputs[0] = new boolean[]{true, false, false};
+        targets[0] = false;
+        inputs[1] = new boolean[]{false, false, false};
+        targets[1] = false;
+        inputs[2] = new boolean[]{true, true, false};
+        targets[2] = true;
+        inputs[3] = new boolean[]{false, true, false};
+        targets[3] = true;
+        inputs[4] = new boolean[]{true, true, true};
+        targets[4] = true;
+        inputs[5] = new boolean[]{true, false, true};
+        targets[5] = true;
+        inputs[6] = new boolean[]{false, true, true};
+        targets[6] = false;
+        inputs[7] = new boolean[]{false, false, true};
+        targets[7] = false;
+        setCases(inputs, targets);
     }
 }
@@ -0,0 +1,359 @@
+package mogp;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * WorkQueue shares the folds of an experiment grid between any number of worker processes,
+ * on one host or many, through a directory on shared storage, with no central service.
+ *
+ * Each fold is a task file, of name=value lines, held in the pending, claimed, done or failed
+ * subdirectory of the queue directory. A worker claims a task by renaming it from pending to
+ * claimed, adding its worker name to the file name, so that of the workers racing for a task
+ * exactly one succeeds. Tasks are named so that they are claimed longest expected first.
+ *
+ * The last modified time of a claimed task is its lease, which the worker holding it renews
+ * every third of the lease while the fold runs. A claimed task whose lease has expired, as
+ * its worker died or hung, is renamed back to pending by the first worker to see it. When a
+ * fold completes, its task is renamed to done and the evaluations it took to solve its
+ * problem and its time are appended. A fold which fails is released back to pending, with
+ * the failure appended, or moved to failed once it has failed MAX_FAILURES times. A fold
+ * stopped through its management interface (see RunControl) is also released back to
+ * pending, but without counting as a failure. Leases are compared with the clock of each
+ * worker, so the clocks of the hosts must agree to well within a lease.
+ *
+ * A lease may be taken from a worker which is merely slow, even one renewing it as it is
+ * taken, so the holder is fenced: its fold checks that its claimed file still exists at the
+ * end of each generation, just before writing the results of the generation, and once it
+ * is gone stops without writing any more of its files, leaving the task to the worker now
+ * holding it. Until it notices, both workers run the fold: the results file is rewritten
+ * by the new holder as it starts or resumes the fold, metrics and checkpoint files are
+ * written under names unique to the worker (see OutputFile) and renamed into place once
+ * complete, and the log of the fold holds the output of both.
+ *
+ * Folds are run as by ExperimentGrid, writing their files to the working directory of the
+ * worker, as BooleanGP does, so workers on separate hosts should share a working directory.
+ * With mogp.checkpoint set, a fold whose lease expired resumes from its checkpoint.
+ *
+ * Run with a queue directory, created if it does not exist, and a command:
+ * <p>
+ * submit, followed by grid options as given to ExperimentGrid (types, problems, populations,
+ * folds, engine, maxTreeElements or spec), adds a task for each fold of the grid not already
+ * in the queue;
+ * <p>
+ * work, optionally followed by threads=n (default the number of processors) and lease=seconds
+ * (default 60), claims and runs tasks until none are pending or claimed;
+ * <p>
+ * status, counts the tasks in each state, listing those which failed.
+ *
+ * @author Jonathan Fieldsend
+ * @version 1.4
+ */
+class WorkQueue
+{
+    static final int MAX_FAILURES = 3; // failures of a task before it is moved to failed
+    private static final String SUFFIX = ".task";
+
+    private final Path pending, claimed, done, failed; // directories of tasks in each state
+    private final Set<Path> held = ConcurrentHashMap.newKeySet(); // claimed tasks whose leases this process renews
+    private long leaseMillis = 60000L; // duration of a lease unless renewed
+
+    public static void main(String[] args) throws IOException {
+        if (args.length<2){
+            System.out.println("Insufficient arguments, requires: queue directory, command (submit, work or status) and its options");
+            System.exit(1);
+        }
+        WorkQueue queue = new WorkQueue(Paths.get(args[0]));
+        HashMap<String,String> options = ExperimentGrid.readOptions(args, 2);
+        if (args[1].equals("submit")) {
+            int added = queue.submit(ExperimentGrid.createFolds(options));
+            System.out.println("Added " + added + " tasks to " + args[0]);
+        } else if (args[1].equals("work")) {
+            queue.leaseMillis = 1000L*Integer.parseInt(options.getOrDefault("lease", "60"));
+            int threads = Integer.parseInt(options.getOrDefault("threads", Integer.toString(Runtime.getRuntime().availableProcessors())));
+            int completed = queue.work(threads);
+            System.out.println("Completed " + completed + " tasks");
+        } else if (args[1].equals("status")) {
+            queue.printStatus();
+        } else {
+            System.out.println("Unknown command, must be submit, work or status: " + args[1]);
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Opens the work queue in a directory, creating its subdirectories if they do not exist
+     *
+     * @param directory queue directory
+     */
+    WorkQueue(Path directory) throws IOException {
+        pending = Files.createDirectories(directory.resolve("pending"));
+        claimed = Files.createDirectories(directory.resolve("claimed"));
+        done = Files.createDirectories(directory.resolve("done"));
+        failed = Files.createDirectories(directory.resolve("failed"));
+    }
+
+    /**
+     * Adds a task for each fold not already in the queue, in any state. Tasks are numbered
+     * after those already in the queue, longest expected first
+     *
+     * @param folds folds to add
+     * @return number of tasks added
+     */
+    int submit(List<ExperimentGrid.Fold> folds) throws IOException {
+        Set<String> queued = new HashSet<>();
+        int number = 0;
+        for (Path directory : new Path[] {pending, claimed, done, failed})
+            for (String name : list(directory)) {
+                queued.add(foldName(name));
+                number = Math.max(number, Integer.parseInt(name.substring(0, name.indexOf('_'))));
+            }
+        List<ExperimentGrid.Fold> added = new ArrayList<>();
+        for (ExperimentGrid.Fold f : folds)
+            if (!queued.contains(f.fileStem()))
+                added.add(f);
+        new ExperimentGrid(null).estimateTimes(added);
+        added.sort(Comparator.comparingDouble((ExperimentGrid.Fold f) -> f.expectedTime).reversed());
+        for (ExperimentGrid.Fold f : added) {
+            String task = "engine=" + f.engine + "\ntype=" + f.type + "\nproblem=" + f.problem + "\npopulation=" + f.population
+                + "\nfold=" + f.fold + "\nmaxTreeElements=" + f.maxTreeElements + "\n";
+            // written under another name and renamed, so a worker never claims a partly written task
+            Path temporary = pending.resolve(f.fileStem() + ".tmp");
+            Files.write(temporary, task.getBytes());
+            Files.move(temporary, pending.resolve(String.format("%06d_%s%s", ++number, f.fileStem(), SUFFIX)), StandardCopyOption.ATOMIC_MOVE);
+        }
+        return added.size();
+    }
+
+    /**
+     * Claims and runs tasks on the given number of threads, renewing the leases of those
+     * claimed, until no task is pending or claimed
+     *
+     * @param threads number of tasks to run at once
+     * @return number of tasks completed by this process
+     */
+    int work(int threads) throws IOException {
+        String process = ManagementFactory.getRuntimeMXBean().getName(); // pid@host
+        ExperimentGrid grid = new ExperimentGrid(null);
+        ScheduledExecutorService heartbeat = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "lease renewal");
+            t.setDaemon(true);
+            return t;
+        });
+        heartbeat.scheduleAtFixedRate(this::renewLeases, leaseMillis/3, leaseMillis/3, TimeUnit.MILLISECONDS);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<Integer>> workers = new ArrayList<>();
+        grid.routeOutput();
+        int completed = 0;
+        try {
+            for (int t=0; t<threads; t++) {
+                String worker = process.replace('@', '-') + "-" + t;
+                workers.add(pool.submit(() -> work(grid, worker)));
+            }
+            for (Future<Integer> w : workers)
+                completed += w.get();
+        } catch (Exception e) {
+            throw new IOException("Worker failed", e);
+        } finally {
+            pool.shutdownNow();
+            heartbeat.shutdownNow();
+            grid.restoreOutput();
+        }
+        return completed;
+    }
+
+    /*
+     * Claims and runs tasks as the named worker until no task is pending or claimed,
+     * returning the number of tasks completed
+     */
+    private int work(ExperimentGrid grid, String worker) throws IOException, InterruptedException {
+        int completed = 0;
+        while (true) {
+            Path task = claim(worker);
+            if (task == null) {
+                if (list(claimed).isEmpty() && list(pending).isEmpty())
+                    return completed;
+                Thread.sleep(leaseMillis/3); // tasks held by other workers may yet be released
+                continue;
+            }
+            held.add(task);
+            String name = pendingName(task.getFileName().toString());
+            ExperimentGrid.Fold f = readFold(task);
+            System.out.println(worker + " claimed " + name);
+            long start = System.nanoTime();
+            try {
+                int evals = grid.runFold(f, task);
+                held.remove(task);
+                if (evals == -1) {
+                    Files.write(task, ("stopped=" + worker + "\n").getBytes(), StandardOpenOption.APPEND);
+                    Files.setLastModifiedTime(task, FileTime.fromMillis(System.currentTimeMillis()));
+                    Files.move(task, pending.resolve(name), StandardCopyOption.ATOMIC_MOVE);
+                    System.out.println(worker + " stopped " + name + ", which is released back to pending");
+                    continue;
+                }
+                Path result = done.resolve(name);
+                Files.move(task, result, StandardCopyOption.ATOMIC_MOVE);
+                Files.write(result, ("evaluations=" + evals + "\nmilliseconds=" + (System.nanoTime() - start)/1000000
+                    + "\nworker=" + worker + "\n").getBytes(), StandardOpenOption.APPEND);
+                System.out.println(worker + " completed " + name);
+                completed++;
+            } catch (NoSuchFileException e) {
+                held.remove(task);
+                if (Files.exists(task)) // a missing file of the fold, e.g. its problem, rather than a lost lease
+                    release(task, name, worker, e);
+                else
+                    System.out.println(worker + " lost the lease of " + name + ", which is left to the worker now holding it");
+            } catch (Exception e) {
+                held.remove(task);
+                release(task, name, worker, e);
+            }
+        }
+    }
+
+    /*
+     * Claims the first pending task, releasing any claimed task whose lease has expired
+     * first, returning the claimed file, or null if no task is pending. A lease renewed
+     * between its expiry being seen and its task being released is still taken, and its
+     * holder fenced
+     */
+    private Path claim(String worker) throws IOException {
+        long expiry = System.currentTimeMillis() - leaseMillis;
+        for (String name : list(claimed)) {
+            Path task = claimed.resolve(name);
+            try {
+                if (Files.getLastModifiedTime(task).toMillis() < expiry) {
+                    Files.move(task, pending.resolve(pendingName(name)), StandardCopyOption.ATOMIC_MOVE);
+                    System.out.println(worker + " released " + name + " as its lease expired");
+                }
+            } catch (NoSuchFileException e) { // completed, or released by another worker
+            }
+        }
+        for (String name : list(pending)) {
+            Path task = pending.resolve(name);
+            try {
+                // the lease starts with the rename, which keeps the time modified
+                Files.setLastModifiedTime(task, FileTime.fromMillis(System.currentTimeMillis()));
+                Path claim = claimed.resolve(name + "@" + worker);
+                Files.move(task, claim, StandardCopyOption.ATOMIC_MOVE);
+                return claim;
+            } catch (NoSuchFileException e) { // claimed by another worker first
+            }
+        }
+        return null;
+    }
+
+    /*
+     * Releases a claimed task whose fold failed, back to pending, or to failed if it has
+     * failed MAX_FAILURES times, appending the failure to it
+     */
+    private void release(Path task, String name, String worker, Exception failure) throws IOException {
+        try {
+            Files.write(task, ("failure=" + worker + ": " + failure + "\n").getBytes(), StandardOpenOption.APPEND);
+            long failures = Files.readAllLines(task).stream().filter(line -> line.startsWith("failure=")).count();
+            boolean abandoned = failures >= MAX_FAILURES;
+            if (!abandoned) // released tasks are claimed at once, so start a fresh lease
+                Files.setLastModifiedTime(task, FileTime.fromMillis(System.currentTimeMillis()));
+            Files.move(task, (abandoned ? failed : pending).resolve(name), StandardCopyOption.ATOMIC_MOVE);
+            System.out.println(worker + " failed " + name + ": " + failure + (abandoned ? ", giving up after " + failures + " failures" : ""));
+        } catch (NoSuchFileException e) {
+            System.out.println(worker + " lost the lease of " + name + ", which failed: " + failure);
+        }
+    }
+
+    /*
+     * Renews the lease of each task held by this process, forgetting those whose leases
+     * have been taken
+     */
+    private void renewLeases() {
+        FileTime now = FileTime.fromMillis(System.currentTimeMillis());
+        for (Path task : held) {
+            try {
+                Files.setLastModifiedTime(task, now);
+            } catch (IOException e) {
+                held.remove(task);
+            }
+        }
+    }
+
+    /**
+     * Displays the number of tasks in each state to window, and the failures of those which failed
+     */
+    void printStatus() throws IOException {
+        System.out.println("pending: " + list(pending).size());
+        System.out.println("claimed: " + list(claimed).size());
+        System.out.println("done: " + list(done).size());
+        System.out.println("failed: " + list(failed).size());
+        for (String name : list(failed))
+            for (String line : Files.readAllLines(failed.resolve(name)))
+                if (line.startsWith("failure="))
+                    System.out.println(name + " " + line);
+    }
+
+    /*
+     * Reads the fold of a task file
+     */
+    private static ExperimentGrid.Fold readFold(Path task) throws IOException {
+        HashMap<String,String> fields = new HashMap<>();
+        for (String line : Files.readAllLines(task)) {
+            int split = line.indexOf('=');
+            if (split > 0)
+                fields.putIfAbsent(line.substring(0, split), line.substring(split+1));
+        }
+        ExperimentGrid.Fold f = new ExperimentGrid.Fold();
+        f.engine = fields.get("engine");
+        f.type = fields.get("type");
+        f.problem = fields.get("problem");
+        f.population = Integer.parseInt(fields.get("population"));
+        f.fold = Integer.parseInt(fields.get("fold"));
+        f.maxTreeElements = Integer.parseInt(fields.get("maxTreeElements"));
+        return f;
+    }
+
+    /*
+     * Returns the names of the task files in a directory, in order of task number
+     */
+    private static List<String> list(Path directory) throws IOException {
+        List<String> names = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SUFFIX + "*")) {
+            for (Path task : stream)
+                names.add(task.getFileName().toString());
+        }
+        Collections.sort(names);
+        return names;
+    }
+
+    /*
+     * Returns the name of a task when pending, removing the worker from a claimed task's name
+     */
+    private static String pendingName(String name) {
+        return name.substring(0, name.indexOf(SUFFIX) + SUFFIX.length());
+    }
+
+    /*
+     * Returns the file stem of the fold of a task, from the name of its file in any state
+     */
+    private static String foldName(String name) {
+        return name.substring(name.indexOf('_') + 1, name.indexOf(SUFFIX));
+    }
+}